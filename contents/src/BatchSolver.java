@@ -0,0 +1,444 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Solves circuit files without a display, for regression runs over many layouts. The files are
+ * split among a work-stealing pool, one circuit per task, so a few large boards do not hold up the
+ * rest. For each circuit a summary of its element currents, field maxima, solve time and number of
+ * relaxation sweeps is written to <tt><i>name</i>.summary.txt</tt> in the output directory, and
+ * optionally a PNG of its gradient and circuit to <tt><i>name</i>.png</tt>. The <i>name</i> is the
+ * circuit's path from the deepest directory holding every circuit, so circuits of the same name in
+ * different directories are written to matching subdirectories of the output directory.
+ *
+ * <p>Circuits are named by files, directories (every circuit directly inside), or glob patterns such
+ * as <tt>circuits/*.txt</tt>; other files found in a directory or by a pattern are skipped. One
+ * line per circuit is printed as it finishes; the exit status is 1 if any circuit failed and 2 if
+ * the arguments were wrong.
+ *
+ * @author Noah Morris
+ */
+public class BatchSolver {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int DEFAULT_SCALE_FACTOR = 4;
+	private static final String USAGE =
+			"Usage: java BatchSolver [options] (file | directory | glob)...\n"
+			+ "  -out DIR       write the summaries and renders to DIR (default: the current directory)\n"
+			+ "  -png           also render each calculated board to a PNG\n"
+			+ "  -field NAME    the field to render: potential, electric, magnetic or poynting (default: potential)\n"
+			+ "  -scale N       the scale factor of the renders; each point is N + 1 pixels (default: "
+			+ DEFAULT_SCALE_FACTOR + ")\n"
+			+ "  -threads N     solve N circuits at a time (default: one per processor)\n"
+			+ "  -nocache       solve every circuit, neither reading nor writing the field cache\n";
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final List<File> files;
+	private final String[] names; // of the outputs for each file, relative to the output directory
+	private final File outDir;
+	private final boolean pngFlag;
+	private final Colormap colormap;
+	private final int scaleFactor;
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public BatchSolver(List<File> files, File outDir, boolean png, Colormap colormap, int scaleFactor) {
+		this.files = files;
+		this.names = outputNames(files);
+		this.outDir = outDir;
+		this.pngFlag = png;
+		this.colormap = colormap;
+		this.scaleFactor = scaleFactor;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Solves every circuit on a pool of the specified number of threads and waits for them all.
+	 *
+	 * @return the number of circuits that could not be read, solved, or written out
+	 */
+	public int run(int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new SolveTask(0, files.size()));
+		} finally {
+			pool.shutdown();
+		}
+		return failures.get();
+	}
+
+	/**
+	 * Reads, solves and writes out one circuit, naming its outputs <tt>name</tt> plus a suffix.
+	 *
+	 * @return the line printed for it
+	 */
+	public String solve(File file, String name) throws IllegalCircuitException, IOException {
+		long start = System.nanoTime();
+		CircuitBoard board = new CircuitBoard(file);
+		long parsed = System.nanoTime();
+		board.calculateCircuit();
+		long solved = System.nanoTime();
+
+		File summary = new File(outDir, name + ".summary.txt");
+		File parent = summary.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Could not create the directory " + parent + ".");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(summary), "UTF-8"));
+		try {
+			writeSummary(out, board, name, (parsed - start) / 1e6, (solved - parsed) / 1e6);
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) throw new IOException("Could not write the summary of " + name + ".");
+
+		if (pngFlag) {
+			BoardRenderer renderer = new BoardRenderer(board);
+			renderer.setScaleFactor(scaleFactor);
+			if (!ImageIO.write(render(renderer, colormap), "png", new File(outDir, name + ".png")))
+				throw new IOException("No PNG writer is available.");
+		}
+		return String.format(Locale.ROOT, "%s: %d x %d, %d loops, solved in %.1f ms, %s", name,
+				board.getWidth(), board.getHeight(), board.getLoops(), (solved - parsed) / 1e6,
+				board.getIterations() > 0 ? board.getIterations() + " iterations" : "from the cache");
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Draws the gradient of the specified field, the circuit and its labels onto a new image the size
+	 * of the whole board at its scale factor.
+	 */
+	public static BufferedImage render(BoardRenderer renderer, Colormap colormap) {
+		CircuitBoard board = renderer.getBoard();
+		int scaleFactor = renderer.getScaleFactor();
+		int width = board.getWidth() * (scaleFactor + 1), height = board.getHeight() * (scaleFactor + 1);
+		BufferedImage gradient = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		renderer.drawGradient(gradient, scaleFactor / 2, scaleFactor / 2, colormap);
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		g.drawImage(gradient, 0, 0, null);
+		g.translate(scaleFactor / 2, scaleFactor / 2); // point (0, 0)'s square at the corner of the image
+		renderer.drawCircuit(g);
+		renderer.drawCircuitLabels(g);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Returns the circuit files named by a file, a directory, or a glob pattern, in order of name.
+	 * Files found in a directory or by a pattern that are not circuits, such as a directory's
+	 * <tt>contents.txt</tt>, are left out; a file named outright is always kept.
+	 */
+	public static List<File> expand(String arg) {
+		List<File> found = new ArrayList<File>();
+		File file = new File(arg);
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null)
+				for (File child : children)
+					if (child.isFile() && isCircuit(child)) found.add(child);
+		} else if (file.exists() || !isGlob(arg)) {
+			found.add(file); // a missing file fails when it is read, and is reported then
+		} else {
+			// the directories leading up to the first wildcard are walked from; the rest is matched
+			int wildcard = 0;
+			while (!isGlob(arg.substring(0, wildcard + 1)))
+				wildcard++;
+			int separator = Math.max(arg.lastIndexOf('/', wildcard), arg.lastIndexOf(File.separatorChar, wildcard));
+			File root = new File(separator < 0 ? "." : separator == 0 ? File.separator : arg.substring(0, separator));
+			String pattern = arg.substring(separator + 1);
+			addMatches(root, "", FileSystems.getDefault().getPathMatcher("glob:" + pattern),
+					pattern.contains("**") ? Integer.MAX_VALUE : countSeparators(pattern), found);
+		}
+		Collections.sort(found, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return f1.getPath().compareTo(f2.getPath());
+			}
+		});
+		return found;
+	}
+
+	/**
+	 * Writes a summary of a calculated board: its size, how long it took, its field maxima, and the
+	 * current through each of its elements.
+	 */
+	public static void writeSummary(PrintWriter out, CircuitBoard board, String name, double parseTime, double solveTime) {
+		Poynt max = board.getMax();
+		out.println("circuit " + name);
+		out.println("size " + board.getWidth() + " " + board.getHeight());
+		out.println("loops " + board.getLoops());
+		out.println(String.format(Locale.ROOT, "parse time %.3f ms", parseTime));
+		out.println(String.format(Locale.ROOT, "solve time %.3f ms", solveTime));
+		out.println("iterations " + board.getIterations() + (board.getIterations() == 0 ? " (cached)" : ""));
+		out.println(String.format(Locale.ROOT, "max potential %.9g", max.potential));
+		out.println(String.format(Locale.ROOT, "max electric field %.9g", max.eFieldMag()));
+		out.println(String.format(Locale.ROOT, "max magnetic field %.9g", max.bFieldZ));
+		out.println(String.format(Locale.ROOT, "max poynting vector %.9g", max.poyntMag()));
+		out.println();
+		writeCurrents(out, board);
+	}
+
+	/**
+	 * Writes the current through each element of a calculated board, one element a line as in the
+	 * circuit file followed by its current. Elements are in order of their endpoints, so summaries
+	 * can be diffed.
+	 */
+	public static void writeCurrents(PrintWriter out, CircuitBoard board) {
+		List<Element> elements = new ArrayList<Element>(board.elements());
+		final PoyntComparator points = new PoyntComparator();
+		Collections.sort(elements, new Comparator<Element>() {
+			public int compare(Element e1, Element e2) {
+				int c = points.compare(e1.start, e2.start);
+				return c != 0 ? c : points.compare(e1.end, e2.end);
+			}
+		});
+		out.println("element current");
+		for (Element elt : elements) {
+			out.print(elt.getChar() + " " + elt.start.x + "," + elt.start.y + " " + elt.end.x + "," + elt.end.y);
+			if (!elt.isWire())
+				out.print(" " + ((NotWire) elt).getValue());
+			out.println(String.format(Locale.ROOT, " %.9g", elt.getCurrent()));
+		}
+	}
+
+	/**
+	 * Solves the circuits named on the command line; see <tt>USAGE</tt>.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		List<File> files = new ArrayList<File>();
+		File outDir = new File(".");
+		boolean png = false;
+		Colormap colormap = Colormap.POTENTIAL;
+		int scaleFactor = DEFAULT_SCALE_FACTOR, threads = Runtime.getRuntime().availableProcessors();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-out"))
+					outDir = new File(args[++i]);
+				else if (arg.equals("-png"))
+					png = true;
+				else if (arg.equals("-field"))
+					colormap = Colormap.forName(args[++i]);
+				else if (arg.equals("-scale"))
+					scaleFactor = positive(args[++i], 0);
+				else if (arg.equals("-threads"))
+					threads = positive(args[++i], 1);
+				else if (arg.equals("-nocache"))
+					System.setProperty("circuitsurveyor.cache", "");
+				else if (arg.startsWith("-"))
+					throw new IllegalArgumentException("Unknown option " + arg + ".");
+				else
+					files.addAll(expand(arg));
+			}
+			if (files.isEmpty())
+				throw new IllegalArgumentException(args.length == 0 ? "No circuits given." : "No circuits found.");
+		} catch (RuntimeException e) { // a missing value, bad number, or unknown field or option
+			System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Option " + args[args.length - 1]
+					+ " needs a value." : e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			System.err.println("Could not create the output directory " + outDir + ".");
+			System.exit(2);
+		}
+
+		long start = System.nanoTime();
+		int failed = new BatchSolver(files, outDir, png, colormap, scaleFactor).run(threads);
+		System.out.println(String.format(Locale.ROOT, "%d of %d circuits solved in %.1f s.", files.size() - failed,
+				files.size(), (System.nanoTime() - start) / 1e9));
+		System.exit(failed > 0 ? 1 : 0);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void report(int index) {
+		File file = files.get(index);
+		String name = names[index], line;
+		boolean failed = false;
+		try {
+			line = solve(file, name);
+		} catch (IllegalCircuitException e) {
+			line = name + ": FAILED: " + e.getMessage();
+			failed = true;
+		} catch (IOException e) {
+			line = name + ": FAILED: " + e.getMessage();
+			failed = true;
+		} catch (RuntimeException e) { // a circuit the solver cannot handle, e.g. DirException
+			line = name + ": FAILED: " + e;
+			failed = true;
+		}
+		if (failed) {
+			failures.incrementAndGet();
+			System.err.println(line);
+		} else
+			System.out.println(line);
+	}
+
+	/**
+	 * Returns whether a file looks like a circuit: a binary circuit, or text whose first line,
+	 * ignoring blank lines and comments, is a pair of bounds such as <tt>150,99</tt>. A file that
+	 * cannot be read is assumed to be one, so that the failure is reported.
+	 */
+	private static boolean isCircuit(File file) {
+		byte[] head = new byte[4096];
+		int n = 0;
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				for (int r; n < head.length && (r = in.read(head, n, head.length - n)) > 0;)
+					n += r;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return true;
+		}
+		if (BinaryCircuit.isBinary(ByteBuffer.wrap(head, 0, n).slice())) return true;
+
+		int i = 0, commas = 0, digits = 0;
+		boolean comment = false;
+		for (; i < n; i++) {
+			char c = (char) head[i];
+			if (c == '\n' || c == '\r') {
+				if (digits > 0 || commas > 0) break; // the end of the first line with content
+				comment = false;
+			} else if (comment || c == ' ' || c == '\t')
+				continue;
+			else if (c == '#')
+				comment = true;
+			else if (c == ',' && digits > 0 && commas == 0)
+				commas++;
+			else if (c >= '0' && c <= '9')
+				digits++;
+			else
+				return false;
+		}
+		return commas == 1 && digits >= 2 && head[i - 1] != ',';
+	}
+
+	/**
+	 * Returns the names of the outputs for the specified files: their paths relative to the
+	 * deepest directory holding all of them, so files of the same name in different directories
+	 * do not overwrite each other's results.
+	 */
+	private static String[] outputNames(List<File> files) {
+		Path base = null;
+		for (File file : files) {
+			Path dir = file.getAbsoluteFile().toPath().normalize().getParent();
+			if (base == null)
+				base = dir;
+			else
+				while (base != null && !dir.startsWith(base))
+					base = base.getParent();
+			if (base == null) break; // on different drives
+		}
+		String[] names = new String[files.size()];
+		for (int i = 0; i < names.length; i++) {
+			Path path = files.get(i).getAbsoluteFile().toPath().normalize();
+			names[i] = (base != null ? base.relativize(path) : path.subpath(0, path.getNameCount())).toString();
+		}
+		return names;
+	}
+
+	private static boolean isGlob(String s) {
+		for (int i = 0; i < s.length(); i++)
+			if ("*?[{".indexOf(s.charAt(i)) >= 0) return true;
+		return false;
+	}
+
+	private static int countSeparators(String pattern) {
+		int count = 0;
+		for (int i = 0; i < pattern.length(); i++)
+			if (pattern.charAt(i) == '/' || pattern.charAt(i) == File.separatorChar) count++;
+		return count;
+	}
+
+	/**
+	 * Adds the files under a directory, at most <tt>depth</tt> directories down, whose paths
+	 * relative to where the walk began match the pattern.
+	 */
+	private static void addMatches(File dir, String relative, PathMatcher matcher, int depth, List<File> found) {
+		File[] children = dir.listFiles();
+		if (children == null) return;
+		for (File child : children) {
+			String path = relative + child.getName();
+			if (child.isFile() && matcher.matches(Paths.get(path)) && isCircuit(child))
+				found.add(child);
+			else if (child.isDirectory() && depth > 0)
+				addMatches(child, path + File.separator, matcher, depth - 1, found);
+		}
+	}
+
+	private static int positive(String value, int min) {
+		int n;
+		try {
+			n = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(value + " is not a whole number.");
+		}
+		if (n < min) throw new IllegalArgumentException(value + " is too small; it must be at least " + min + ".");
+		return n;
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * Solves a range of the circuits, halving it for other workers to steal until only one is left.
+	 */
+	private class SolveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		public SolveTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1)
+				report(from);
+			else if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SolveTask(from, middle), new SolveTask(middle, to));
+			}
+		}
+	}
+}
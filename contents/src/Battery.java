@@ -3,10 +3,6 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Graphics;
-import java.awt.Point;
-import java.util.Iterator;
-
 public class Battery extends NotWire {
 
 	/*  *************** DATA MEMBERS *************** */
@@ -27,6 +23,13 @@ public class Battery extends NotWire {
 		return value;
 	}
 	
+	/**
+	 * Returns whether the positive terminal is the end further down or to the right.
+	 */
+	public boolean isForward() {
+		return isForward;
+	}
+
 	public Dir batteryDirection() {
 		if (isHorizontal()) {
 			if (isForward) return Dir.EAST;
@@ -54,45 +57,8 @@ public class Battery extends NotWire {
 		int sign = getDirection(loop).signum() * (isForward ? 1 : -1);
 		double voltageChange = value * sign;
 		double newVoltage = oldVoltage + voltageChange;
-		double increment = voltageChange / (poynts.size() - 1);
-				for (Iterator<Poynt> it = iterateClockwise(loop); it.hasNext();) {
-			it.next().potential = oldVoltage;
-			oldVoltage += increment;
-		}
+		double increment = voltageChange / (size() - 1);
+		setPotentials(oldVoltage, increment, loop);
 		return newVoltage;
 	}
-
-	@Override
-	public void draw(Graphics g, int sF) {
-		Point s = (isForward ? start : end).toPixel(sF);
-		s.translate(sF / 2, sF / 2);
-		Point e = (isForward ? end : start).toPixel(sF);
-		e.translate(sF / 2, sF / 2);
-		int k = (sF + 2) / 3;
-
-		if (isHorizontal()) {
-			int x0 = s.x;
-			int x1 = (2 * s.x + e.x) / 3;
-			int x2 = (s.x + 2 * e.x) / 3;
-			int x3 = e.x;
-			int y = s.y;
-
-			g.drawLine(x0, y - k, x0, y + k);
-			g.drawLine(x1, y - 3 * k, x1, y + 3 * k);
-			g.drawLine(x2, y - k, x2, y + k);
-			g.drawLine(x3, y - 3 * k, x3, y + 3 * k);
-
-		} else {
-			int y0 = s.y;
-			int y1 = (2 * s.y + e.y) / 3;
-			int y2 = (s.y + 2 * e.y) / 3;
-			int y3 = e.y;
-			int x = s.x;
-
-			g.drawLine(x - k, y0, x + k, y0);
-			g.drawLine(x - 3 * k, y1, x + 3 * k, y1);
-			g.drawLine(x - k, y2, x + k, y2);
-			g.drawLine(x - 3 * k, y3, x + 3 * k, y3);
-		}
-	}
 }
@@ -0,0 +1,165 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes circuits in a compact binary format, for circuits too large to parse quickly
+ * from text. All values are big-endian. A 20-byte header
+ *
+ * <pre>
+ *   int    magic    'C' 'S' 'B' '1'
+ *   int    width    board width in points (maximum x-bound + 1)
+ *   int    height   board height in points (maximum y-bound + 1)
+ *   int    count    number of elements
+ *   int    reserved 0
+ * </pre>
+ *
+ * is followed by <tt>count</tt> 28-byte element records
+ *
+ * <pre>
+ *   byte   type     'w', 'r' or 'b'
+ *   byte*3 padding  0
+ *   int    x1, y1   first endpoint
+ *   int    x2, y2   second endpoint (the order of the endpoints fixes a battery's orientation)
+ *   double value    resistance in ohms, voltage in volts, or 0 for a wire
+ * </pre>
+ *
+ * Records are read straight out of the mapped file into <tt>Element</tt>s; only the checks needed
+ * to build a board safely are made.
+ *
+ * @author Noah Morris
+ */
+public class BinaryCircuit {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int MAGIC = ('C' << 24) | ('S' << 16) | ('B' << 8) | '1';
+	public static final int HEADER_SIZE = 20, RECORD_SIZE = 28;
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns whether the specified bytes begin with the binary circuit header.
+	 */
+	public static boolean isBinary(ByteBuffer bytes) {
+		return bytes.limit() >= HEADER_SIZE && bytes.order(ByteOrder.BIG_ENDIAN).getInt(0) == MAGIC;
+	}
+
+	/**
+	 * Sets up the specified empty board and adds the elements recorded in the specified bytes.
+	 *
+	 * @throws IllegalCircuitException if the bytes are not a well-formed binary circuit
+	 */
+	public static void read(ByteBuffer bytes, CircuitBoard board) throws IllegalCircuitException {
+		bytes.order(ByteOrder.BIG_ENDIAN);
+		if (!isBinary(bytes))
+			throw new IllegalCircuitException("Not a binary circuit file.");
+		int width = bytes.getInt(4);
+		int height = bytes.getInt(8);
+		int count = bytes.getInt(12);
+		if (width < 2 || height < 2)
+			throw new IllegalCircuitException("Board size must be positive. Found: " + width + "x" + height);
+		if (count <= 0)
+			throw new IllegalCircuitException("File contains no circuit elements.");
+		if (bytes.limit() != HEADER_SIZE + (long) count * RECORD_SIZE)
+			throw new IllegalCircuitException("File is " + bytes.limit() + " bytes long; expected "
+					+ (HEADER_SIZE + (long) count * RECORD_SIZE) + " for " + count + " elements.");
+
+		board.setUpBoard(width, height);
+		for (int i = 0, pos = HEADER_SIZE; i < count; i++, pos += RECORD_SIZE) {
+			char type = (char) bytes.get(pos);
+			int x1 = bytes.getInt(pos + 4), y1 = bytes.getInt(pos + 8);
+			int x2 = bytes.getInt(pos + 12), y2 = bytes.getInt(pos + 16);
+			double value = bytes.getDouble(pos + 20);
+			try {
+				if (x1 < 0 || x1 >= width || y1 < 0 || y1 >= height || x2 < 0 || x2 >= width || y2 < 0 || y2 >= height)
+					throw new IllegalCircuitException("Coordinates out of bounds: (" + x1 + "," + y1 + ") (" + x2 + "," + y2 + ")");
+				Poynt start = board.get(x1, y1);
+				Poynt end = board.get(x2, y2);
+				Element elt;
+				if (type == 'w')
+					elt = new Wire(start, end, board);
+				else if (type == 'r')
+					elt = new Resistor(start, end, value);
+				else if (type == 'b')
+					elt = new Battery(start, end, value);
+				else
+					throw new IllegalCircuitException("Unknown element type: " + (int) type);
+				board.addElement(elt);
+			} catch (IllegalCircuitException e) {
+				throw new IllegalCircuitException("Error in element " + i + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes the circuit on the specified board in the binary format.
+	 */
+	public static void write(CircuitBoard board, OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(board.getWidth());
+		out.writeInt(board.getHeight());
+		out.writeInt(board.elements().size());
+		out.writeInt(0);
+		for (Element elt : board.elements()) {
+			Poynt a = elt.start, b = elt.end;
+			if (elt instanceof Battery && ((Battery) elt).batteryDirection().signum() < 0) {
+				a = elt.end;
+				b = elt.start;
+			}
+			out.writeByte(elt.getChar());
+			out.writeByte(0);
+			out.writeShort(0);
+			out.writeInt(a.x);
+			out.writeInt(a.y);
+			out.writeInt(b.x);
+			out.writeInt(b.y);
+			out.writeDouble(elt.isWire() ? 0.0 : ((NotWire) elt).getValue());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Converts a circuit file in the text format to the binary format.
+	 *
+	 * @throws IllegalCircuitException if the text file contains errors
+	 */
+	public static void convert(File textFile, File binaryFile) throws IOException {
+		CircuitBoard board = new CircuitBoard(textFile);
+		OutputStream os = new FileOutputStream(binaryFile);
+		try {
+			write(board, os);
+		} finally {
+			os.close();
+		}
+	}
+
+	/*  *************** MAIN METHOD *************** */
+
+	/**
+	 * Converts text circuit files to binary: <tt>BinaryCircuit in.txt out.csb</tt>.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: BinaryCircuit <text circuit file> <binary circuit file>");
+			System.exit(1);
+		}
+		try {
+			convert(new File(args[0]), new File(args[1]));
+		} catch (IllegalCircuitException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
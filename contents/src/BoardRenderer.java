@@ -0,0 +1,305 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import static java.lang.Math.*;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws a <tt>CircuitBoard</tt> and its fields with AWT, at the board's scale factor: each point is
+ * a square of <tt>scaleFactor + 1</tt> pixels, and board point (0, 0) is drawn at the origin. The
+ * lines and textures traced from a calculated board are kept here, so they are traced once each.
+ *
+ * <p>The board itself knows nothing of drawing; only this class, and the layers built on it, need
+ * AWT.
+ *
+ * @author Noah Morris
+ */
+public class BoardRenderer {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int MAX_NO_OF_REGIONS = 31; // for drawing flow lines
+	private static final int MAX_CACHED_ISOLINES = 8; // sets of isolines kept per board
+	private static final Color CIRCUIT_COLOR = Color.RED,
+							   SLOPE_FIELD_COLOR = new Color(64, 0, 128),  // deep violet
+							   FLOW_LINES_COLOR = new Color(255, 100, 0),  // orange
+							   ISOLINES_COLOR = new Color(0, 128, 128),  // teal
+							   STREAMLINES_COLOR = new Color(153, 76, 0);  // brown
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final CircuitBoard board;
+	private int scaleFactor;
+	private FlowLines flowLines; // traced once calculated
+	private Streamlines streamlines; // traced once calculated
+	private BufferedImage slopeTexture; // drawn once calculated
+	private final Map<String, Isolines> isolines = new LinkedHashMap<String, Isolines>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Isolines> eldest) {
+			return size() > MAX_CACHED_ISOLINES;
+		}
+	};
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public BoardRenderer(CircuitBoard board) {
+		this.board = board;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public CircuitBoard getBoard() {
+		return board;
+	}
+
+	public int getScaleFactor() {
+		return scaleFactor;
+	}
+
+	public void setScaleFactor(int scaleFactor) {
+		this.scaleFactor = scaleFactor;
+	}
+
+	public void drawCircuit(Graphics g) {
+		g.setColor(CIRCUIT_COLOR);
+		for (Element e : board.elements())
+			drawElement(g, e);
+	}
+
+	public void drawCircuitLabels(Graphics g) {
+		g.setColor(CIRCUIT_COLOR);
+		for (Element e : board.elements())
+			if (!e.isWire()) {
+				Point startCoord = toPixel(e.start, scaleFactor);
+				Point endCoord = toPixel(e.end, scaleFactor);
+
+				String label = ((NotWire) e).getValue() + " " + ((NotWire) e).getUnit();
+				g.setFont(new Font(g.getFont().getName(), Font.BOLD, g.getFont().getSize()));
+				FontMetrics fm = g.getFontMetrics();
+				Point coord = startCoord;
+
+				if (e.isHorizontal()) {
+					coord.x += (endCoord.x - startCoord.x - fm.stringWidth(label)) / 2;
+					if (e.start.y > board.getHeight() / 2)
+						coord.y -= scaleFactor + 3;
+					else
+						coord.y += fm.getAscent() + scaleFactor + 5;
+				} else {
+					coord.y += (endCoord.y - startCoord.y + fm.getAscent()) / 2;
+					if (e.start.x > board.getWidth() / 2)
+						coord.x -= fm.stringWidth(label) + scaleFactor + 3;
+					else
+						coord.x += scaleFactor + 5;
+				}
+
+				g.drawString(label, coord.x, coord.y);
+			}
+	}
+
+	/**
+	 * Draws the gradient of the specified field straight onto the pixels of the specified image,
+	 * replacing whatever was there.
+	 *
+	 * @param offsetX the x-coordinate in the image of board point (0, 0)
+	 * @param offsetY the y-coordinate in the image of board point (0, 0)
+	 */
+	public void drawGradient(BufferedImage image, int offsetX, int offsetY, Colormap colormap) {
+		GradientRenderer.render(board, image, offsetX, offsetY, scaleFactor, colormap);
+	}
+
+	public void drawSlopeField(Graphics g) {
+		g.setColor(SLOPE_FIELD_COLOR);
+		for (Poynt p : board)
+			if (p.x % 2 == 1 && p.y % 2 == 1 && p.getLoopCount() > 0 && !p.isOnCircuit()) {
+
+				int h, k;
+				if (abs(p.poyntX) > abs(p.poyntY)) {
+					h = (int) (scaleFactor * signum(p.poyntX));
+					k = (int) (p.poyntY / abs(p.poyntX) * scaleFactor);
+				} else {
+					k = (int) (scaleFactor * signum(p.poyntY));
+					h = (int) (p.poyntX / abs(p.poyntY) * scaleFactor );
+				}
+
+				if (h != 0 || k != 0) {
+					Point pt = toPixel(p, scaleFactor);
+					g.drawLine(pt.x, pt.y, pt.x + h, pt.y + k);
+					g.fillOval(pt.x + h - 2, pt.y + k - 2, 3, 3);
+				}
+			}
+	}
+
+	/**
+	 * Draws the direction of the Poynting vector as a streaked texture, in place of the arrows of
+	 * <tt>drawSlopeField</tt>. The board must be calculated.
+	 */
+	public void drawSlopeTexture(Graphics g) {
+		BufferedImage texture = getSlopeTexture();
+		double scale = (double) (scaleFactor + 1) * board.getWidth() / texture.getWidth();
+		// The texture starts at the edge of point (0, 0)'s pixels, which toPixel puts here
+		AffineTransform transform = AffineTransform.getTranslateInstance(-(scaleFactor / 2), -(scaleFactor / 2));
+		transform.scale(scale, scale);
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(texture, transform, null);
+	}
+
+	/**
+	 * Returns the line integral convolution texture of the board at its scale factor, drawing it
+	 * the first time it is asked for. The board must be calculated.
+	 */
+	public synchronized BufferedImage getSlopeTexture() {
+		if (slopeTexture == null)
+			slopeTexture = LicRenderer.render(board, LicRenderer.resolutionFor(board, scaleFactor), SLOPE_FIELD_COLOR);
+		return slopeTexture;
+	}
+
+	public void drawFlowLines(Graphics g) {
+		g.setColor(FLOW_LINES_COLOR);
+		getFlowLines().draw((Graphics2D) g, scaleFactor + 1);
+	}
+
+	/**
+	 * Returns the flow lines of the board, tracing them the first time they are asked for once the
+	 * board is calculated. Before then (when previewing) they are traced afresh every time.
+	 */
+	public synchronized FlowLines getFlowLines() {
+		if (flowLines != null) return flowLines;
+		FlowLines lines = FlowLines.trace(board.loops(), board.getMax().current, MAX_NO_OF_REGIONS);
+		if (board.isCalculated()) flowLines = lines;
+		return lines;
+	}
+
+	public void drawStreamlines(Graphics g) {
+		g.setColor(STREAMLINES_COLOR);
+		getStreamlines().draw((Graphics2D) g, scaleFactor + 1);
+	}
+
+	/**
+	 * Returns the lines of energy flow of the board, tracing them the first time they are asked for.
+	 * The board must be calculated.
+	 */
+	public synchronized Streamlines getStreamlines() {
+		if (streamlines == null)
+			streamlines = Streamlines.trace(board, Streamlines.defaultSpacing(board));
+		return streamlines;
+	}
+
+	public void drawIsolines(Graphics g, Colormap field, double[] levels) {
+		g.setColor(ISOLINES_COLOR);
+		getIsolines(field, levels).draw((Graphics2D) g, scaleFactor + 1);
+	}
+
+	/**
+	 * Returns the contours of the specified field at the specified levels, finding them if they are
+	 * not among the last few asked for. The board must be calculated.
+	 */
+	public synchronized Isolines getIsolines(Colormap field, double[] levels) {
+		String key = field.name() + Arrays.toString(levels);
+		Isolines lines = isolines.get(key);
+		if (lines == null) {
+			lines = Isolines.trace(board, field, levels);
+			isolines.put(key, lines);
+		}
+		return lines;
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the top left pixel of the square a Poynt is drawn as, at the specified scale factor.
+	 */
+	public static Point toPixel(Poynt p, int scaleFactor) {
+		int x = p.x * (scaleFactor + 1) - scaleFactor / 2;
+		int y = p.y * (scaleFactor + 1) - scaleFactor / 2;
+		return new Point(x, y);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void drawElement(Graphics g, Element e) {
+		if (e instanceof Battery)
+			drawBattery(g, (Battery) e, scaleFactor);
+		else if (e instanceof Resistor)
+			drawResistor(g, (Resistor) e, scaleFactor);
+		else
+			drawWire(g, e, scaleFactor);
+	}
+
+	private static void drawWire(Graphics g, Element wire, int sF) {
+		Point s = toPixel(wire.start, sF);
+		s.translate(sF / 2, sF / 2);
+		Point e = toPixel(wire.end, sF);
+		e.translate(sF / 2, sF / 2);
+		g.drawLine(s.x, s.y, e.x, e.y);
+	}
+
+	private static void drawResistor(Graphics g, Resistor resistor, int sF) {
+
+		Point s = toPixel(resistor.start, sF);
+		s.translate(sF / 2, sF / 2);
+
+		for (int i = 0; i < resistor.size() - 1; i++)
+			if (resistor.isHorizontal()) {
+				int sign = i % 2 == 0 ? 1 : -1;
+				int x = s.x + i * (sF + 1), y = s.y;
+				g.drawLine(x, y, x + sF / 2 + 1, y + sign * sF);
+				g.drawLine(x + sF / 2 + 1, y + sign * sF, x + sF + 1, y);
+
+			} else {
+				int sign = i % 2 == 0 ? 1 : -1;
+				int x = s.x, y = s.y + i * (sF + 1);
+				g.drawLine(x, y, x + sign * sF, y + sF / 2 + 1);
+				g.drawLine(x + sign * sF, y + sF / 2 + 1, x, y + sF + 1);
+			}
+	}
+
+	private static void drawBattery(Graphics g, Battery battery, int sF) {
+		boolean isForward = battery.isForward();
+		Point s = toPixel(isForward ? battery.start : battery.end, sF);
+		s.translate(sF / 2, sF / 2);
+		Point e = toPixel(isForward ? battery.end : battery.start, sF);
+		e.translate(sF / 2, sF / 2);
+		int k = (sF + 2) / 3;
+
+		if (battery.isHorizontal()) {
+			int x0 = s.x;
+			int x1 = (2 * s.x + e.x) / 3;
+			int x2 = (s.x + 2 * e.x) / 3;
+			int x3 = e.x;
+			int y = s.y;
+
+			g.drawLine(x0, y - k, x0, y + k);
+			g.drawLine(x1, y - 3 * k, x1, y + 3 * k);
+			g.drawLine(x2, y - k, x2, y + k);
+			g.drawLine(x3, y - 3 * k, x3, y + 3 * k);
+
+		} else {
+			int y0 = s.y;
+			int y1 = (2 * s.y + e.y) / 3;
+			int y2 = (s.y + 2 * e.y) / 3;
+			int y3 = e.y;
+			int x = s.x;
+
+			g.drawLine(x - k, y0, x + k, y0);
+			g.drawLine(x - 3 * k, y1, x + 3 * k, y1);
+			g.drawLine(x - k, y2, x + k, y2);
+			g.drawLine(x - 3 * k, y3, x + 3 * k, y3);
+		}
+	}
+}
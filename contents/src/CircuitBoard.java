@@ -4,21 +4,27 @@
  */
 
 import static java.lang.Math.*;
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Font;
-import java.awt.FontMetrics;
-import java.awt.Graphics;
-import java.awt.Point;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-
+import java.util.concurrent.CancellationException;
+
+/**
+ * A circuit read from a file, and the solver that finds its currents and fields. The board, its
+ * Poynts and elements, and the solver use nothing from AWT, so they can be loaded and run without a
+ * display; drawing is left to <tt>BoardRenderer</tt>.
+ *
+ * @author Noah Morris
+ */
 public class CircuitBoard implements Iterable<Poynt> {
 
 	/* *************** CLASS CONSTANTS *************** */
@@ -27,20 +33,29 @@ public class CircuitBoard implements Iterable<Poynt> {
 							    MU_NAUGHT = 4 * PI * pow(10, -7), // _0 = 4 E-7 H/m
 							    WIRE_THICKNESS = 0.001; // 1 mm
 	private static final int MAX_ITERATIONS = 2477; // of potential relaxation method
-	private static final int MAX_NO_OF_REGIONS = 31; // for drawing flow lines
-	private static final Color CIRCUIT_COLOR = Color.RED,
-							   GRADIENT_COLOR = new Color(55, 55, 55),  // dark grey
-							   SLOPE_FIELD_COLOR = new Color(64, 0, 128),  // deep violet
-							   FLOW_LINES_COLOR = new Color(255, 100, 0);  // orange
+	private static final int TOLERANCE_DIVISOR = 500; // relaxation stops within 1/500 of the smallest element voltage
+	private static final int[] COARSE_FACTORS = { 8, 4 }; // coarse grids solved before the full board
+	private static final int MIN_COARSE_SIZE = 8; // nodes per side, below which a coarse grid is skipped
+
+	/**
+	 * Every setting that affects the computed fields; part of the key under which results are cached.
+	 */
+	static final String SOLVER_SETTINGS = "H=" + H + ";MU_NAUGHT=" + MU_NAUGHT + ";WIRE_THICKNESS="
+			+ WIRE_THICKNESS + ";MAX_ITERATIONS=" + MAX_ITERATIONS + ";TOLERANCE_DIVISOR=" + TOLERANCE_DIVISOR
+			+ ";COARSE_FACTORS=" + Arrays.toString(COARSE_FACTORS) + ";MIN_COARSE_SIZE=" + MIN_COARSE_SIZE;
 
 	/* *************** DATA MEMBERS *************** */
 
 	private String fileName;
+	private String contentKey; // hash of the circuit file and solver settings, for FieldCache
 	private Poynt[][] board;
 	private Poynt maximum;
-	private Dimension size;
-	private int scaleFactor;
+	private int width, height;
 	private boolean calculatedFlag;
+	private PoyntingFlux poyntingFlux;
+	private FieldStatistics fieldStatistics;
+	private boolean currentsFilledFlag; // currents and perimeter potentials are done; only the relaxation may need redoing
+	private int iterations; // sweeps of the full-size relaxation; 0 if the fields came from the cache
 	
 	private Set<Loop> loops = new HashSet<Loop>();
 	private HashMap<Set<Poynt>, Element> elements = new HashMap<Set<Poynt>, Element>();
@@ -49,188 +64,70 @@ public class CircuitBoard implements Iterable<Poynt> {
 	/* *************** CONSTRUCTOR *************** */
 
 	public CircuitBoard(BufferedReader br, String fileName) throws IOException {
-		this.fileName = fileName;
-		calculatedFlag = false;
-		readCircuitFromFile(br);
-		buildCircuit();
+		this(CircuitParser.read(br), fileName);
 	}
 
-	/* *************** PRIVATE METHODS *************** */
-
-	 private void readCircuitFromFile(BufferedReader file) throws IllegalCircuitException {
-		String line = "";
-	 	
-		try {
-			for (int lineCount = 1; (line = file.readLine()) != null; lineCount++) {
-				if (line.length() == 0) continue;
-				else if (line.charAt(0) == '#') continue;
-				else if (size == null) {
-					try {
-						readSizesFromFile(line);
-					} catch (IllegalCircuitException e) {
-						e.setLine(lineCount, line);
-						throw e;
-					}
-				} else {
-					try {
-						readElementFromFile(line);
-					} catch (IllegalCircuitException e) {
-						e.setLine(lineCount, line);
-						throw e;
-					}
-				}
-			}
-		} catch (IOException e) {
-			throw new IllegalCircuitException("Cannot read file " + fileName);
+	/**
+	 * Constructor. Reads the circuit from the specified file, which is mapped into memory rather
+	 * than read through a stream. The file may be in either the text format or the binary format
+	 * written by <tt>BinaryCircuit</tt>.
+	 */
+	public CircuitBoard(File file) throws IllegalCircuitException {
+		this.fileName = file.getName();
+		calculatedFlag = false;
+		ByteBuffer bytes = CircuitParser.map(file);
+		if (BinaryCircuit.isBinary(bytes)) {
+			contentKey = FieldCache.key(bytes);
+			BinaryCircuit.read(bytes, this);
+		} else {
+			CharSequence text = CircuitParser.decode(bytes);
+			contentKey = FieldCache.key(text); // as for the same text read any other way
+			new CircuitParser(this, fileName).parse(text);
 		}
-		
-		if (size == null)
-			throw new IllegalCircuitException("File " + fileName + " is empty.");
-		if (elements.size() == 0)
-			throw new IllegalCircuitException("File " + fileName + " contains no circuit elements.");
+		buildCircuit();
 	}
 
-	private void readSizesFromFile(String str) throws IllegalCircuitException {
-		int sizeX, sizeY;
-		
-		str = str.split("#")[0];
-		String[] strArr = str.split(",");
-		if (strArr.length < 2) throw new IllegalCircuitException("Expected: Maximum y-bound. Found: End of line");
-		if (strArr.length > 2) throw new IllegalCircuitException("Expected: End of line. Found: ," + strArr[2]);
-
-		try { 
-			sizeX = Integer.parseInt(strArr[0].trim());
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("Maximum x-bound must be an integer. Found: " + strArr[0].trim());
-		}
-		try { 
-			sizeY = Integer.parseInt(strArr[1].trim());
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("Maximum y-bound must be an integer. Found: " + strArr[1].trim());
-		}		
-
-		if (sizeX < 0) throw new IllegalCircuitException("Maximum x-bound must be positive. Found: " + sizeX);
-		if (sizeX == 0) throw new IllegalCircuitException("Maximum x-bound may not be zero. Found: " + sizeX);
-		if (sizeY < 0) throw new IllegalCircuitException("Maximum y-bound must be positive. Found: " + sizeY);
-		if (sizeY == 0) throw new IllegalCircuitException("Maximum y-bound may not be zero. Found: " + sizeY);
-		
-		size = new Dimension(sizeX + 1, sizeY + 1);
-		
-		setUpBoard();
+	/**
+	 * Constructor. Reads the circuit from the text of a circuit file.
+	 */
+	public CircuitBoard(CharSequence contents, String fileName) throws IllegalCircuitException {
+		this.fileName = fileName;
+		calculatedFlag = false;
+		contentKey = FieldCache.key(contents);
+		new CircuitParser(this, fileName).parse(contents);
+		buildCircuit();
 	}
 
-	private void readElementFromFile(String str) throws IllegalCircuitException {
-		String letter;
-		int startX, startY, endX, endY;
-		double value;
-		Element elt = null;
-
-		str = str.split("#")[0];
-		String[] strArr = str.split("\\p{Blank}+", 0);
-		
-		// Parse initial character
-		if (strArr[0].length() < 1) throw new IllegalCircuitException("Expected: Element type ('w', 'r', or 'b').");
-		if (strArr[0].length() > 1) throw new IllegalCircuitException("Expected: Element type ('w', 'r', or 'b'). Found: " + strArr[0]);
-		letter = strArr[0].toLowerCase();
-		if (!letter.matches("[wrb]")) throw new IllegalCircuitException("Expected: Element type ('w', 'r', or 'b'). Found: " + strArr[0]);
-
-		// Parse line length
-		if (strArr.length < 2) throw new IllegalCircuitException("Expected: Start x-coordinate. Found: End of line");
-		if (strArr.length < 3) throw new IllegalCircuitException("Expected: End x-coordinate. Found: End of line");
-		if (letter.equals("r"))
-			if (strArr.length < 4) throw new IllegalCircuitException("Expected: Resistance in ohms. Found: End of line");
-		if (letter.equals("b"))
-			if (strArr.length < 4) throw new IllegalCircuitException("Expected: Voltage in volts. Found: End of line");
-		
-		// Parse start coordinate
-		String[] startArr = strArr[1].split(",");
-		if (startArr.length < 2) throw new IllegalCircuitException("Expected: Start y-coordinate. Found: " + strArr[2]);
-		if (startArr.length > 2) throw new IllegalCircuitException("Expected: End coordinate. Found: ," + startArr[2]);
-		
-		try { 
-			startX = Integer.parseInt(startArr[0]);
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("Start x-coordinate must be an integer. Found: " + startArr[0]);
-		}
-		try { 
-			startY = Integer.parseInt(startArr[1]);
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("Start y-coordinate must be an integer. Found: " + startArr[1]);
-		}		
-
-		if (startX < 0) throw new IllegalCircuitException("Start x-coordinate must be positive. Found: " + startX);
-		if (startX >= size.width) throw new IllegalCircuitException("Start coordinates out of bounds. Coordinate: (" + strArr[1] + "), Bounds: (" + size.width + "," + size.height + ")");
-		if (startY < 0) throw new IllegalCircuitException("Start y-coordinate must be positive. Found: " + startY);
-		if (startY >= size.height) throw new IllegalCircuitException("Start coordinates out of bounds. Coordinate: (" + strArr[1] + "), Bounds: (" + size.width + "," + size.height + ")");
-
-		Poynt start = get(startX, startY);
-		
-		// Parse end coordinate
-		String[] endArr = strArr[2].split(",");
-		if (endArr.length < 2) throw new IllegalCircuitException("Expected: End y-coordinate. Found: " + strArr[2]);
-		if (endArr.length > 2) 
-			if (letter.equals("w")) throw new IllegalCircuitException("Expected: End of line. Found: ," + endArr[2]);
-			else throw new IllegalCircuitException("Expected: " + (letter.equals("r") ? "resistance" : "voltage") + ". Found: ," + endArr[2]);
-		
-		try { 
-			endX = Integer.parseInt(endArr[0]);
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("End x-coordinate must be an integer. Found: " + endArr[0]);
-		}
-		try {
-			endY = Integer.parseInt(endArr[1]);
-		} catch (NumberFormatException e) {
-			throw new IllegalCircuitException("End y-coordinate must be an integer. Found: " + endArr[1]);
-		}		
+	/* *************** PACKAGE METHODS *************** */
 
-		if (endX < 0) throw new IllegalCircuitException("End x-coordinate must be positive. Found: " + startX);
-		if (endX >= size.width) throw new IllegalCircuitException("End coordinates out of bounds. Coordinate: (" + strArr[2] + "), Bounds: (" + size.width + "," + size.height + ")");
-		if (endY < 0) throw new IllegalCircuitException("End y-coordinate must be positive. Found: " + startY);
-		if (endY >= size.height) throw new IllegalCircuitException("End coordinates out of bounds. Coordinate: (" + strArr[2] + "), Bounds: (" + size.width + "," + size.height + ")");
-
-		Poynt end = get(endX, endY);
-		
-		// Parse value, build element
-		if (letter.equals("w")) {
-			if (strArr.length > 3) throw new IllegalCircuitException("Expected: End of line. Found: " + strArr[3]);
-			elt = new Wire(start, end, this);
-			
-		} else if (letter.equals("r")) {
-			if (strArr.length > 4) throw new IllegalCircuitException("Expected: End of line. Found: " + strArr[4]);
-			
-			try { 
-				value = Double.parseDouble(strArr[3]);
-			} catch (NumberFormatException e) {
-				throw new IllegalCircuitException("Resistance must be an integer or decimal. Found: " + strArr[3]);
-			}
-			if (value < 0) throw new IllegalCircuitException("Resistance may not be negative. Found: " + strArr[3]);
-			
-			elt = new Resistor(start, end, value);
-			
-		} else if (letter.equals("b")) {
-			if (strArr.length > 4) throw new IllegalCircuitException("Expected: End of line. Found: " + strArr[4]);
+	/**
+	 * Creates an empty board of the specified size. Called once, by the parser, before any elements
+	 * are added.
+	 */
+	void setUpBoard(int width, int height) {
+		this.width = width;
+		this.height = height;
+		setUpBoard();
+	}
 
-			try { 
-				value = Double.parseDouble(strArr[3]);
-			} catch (NumberFormatException e) {
-				throw new IllegalCircuitException("Voltage must be an integer or decimal. Found: " + strArr[3]);
-			}
-			
-			elt = new Battery(start, end, value);
-		}
-		
-		assert elt != null;
-		
+	/**
+	 * Adds an element built on this board.
+	 * 
+	 * @throws IllegalCircuitException if an element with the same endpoints has already been added
+	 */
+	void addElement(Element elt) throws IllegalCircuitException {
 		Set<Poynt> set = new HashSet<Poynt>();
-		set.add(start); set.add(end);
+		set.add(elt.start); set.add(elt.end);
 		Element oldElt = elements.put(set, elt);
 		if (oldElt != null) throw new IllegalCircuitException("Elements " + oldElt + " and " + elt + " overlap.");
 	}
 
+	/* *************** PRIVATE METHODS *************** */
+
 	private void setUpBoard() {
-		board = new Poynt[size.width][size.height];
-		for (int i = 0; i < size.width; i++)
-			for (int j = 0; j < size.height; j++)
+		board = new Poynt[width][height];
+		for (int i = 0; i < width; i++)
+			for (int j = 0; j < height; j++)
 				board[i][j] = new Poynt(i, j, this);
 
 		maximum = new Poynt(-1, -1, this);
@@ -259,30 +156,43 @@ public class CircuitBoard implements Iterable<Poynt> {
 				Loop loop = new Loop(loopCount++);
 				int loopTurns = 0;
 				Poynt pt = neighbor;
-				Poynt prev = node;
 				Poynt latestEndPt = node;
+				Dir heading = Dir.getDirection(node, pt);
 				while (!pt.isMarked(loopCount)) {
 					pt.mark(loopCount);
 					loop.addPoynt(pt);
-					Set<Poynt> pts = new HashSet<Poynt>();
-					pts.add(latestEndPt); pts.add(pt);
-					if (elements.containsKey(pts)) {
-						Element elt = elements.get(pts);
-						try { elt.addLoop(loop, Dir.getDirection(prev, pt)); }
+					Element elt = getElement(latestEndPt, pt);
+					if (elt != null) {
+						try { elt.addLoop(loop, heading); }
 						catch (DirException e) { break; }  // Duplicate loop exception
-						loop.addElement(elements.get(pts));
+						loop.addElement(elt);
 						latestEndPt = pt;
 					}
-					Poynt newPt = pt.getRightmostNeighbor(Dir.getDirection(prev, pt));
-					loopTurns += Dir.getTurn(prev, pt, newPt);
-					prev = pt;
-					pt = newPt;
+					Dir newHeading = pt.getRightmostDirection(heading);
+					loopTurns += Dir.getTurn(heading, newHeading);
+					heading = newHeading;
+					pt = pt.get(heading);
 				}
 				if (loopTurns > 0) loops.add(loop);
 				else loop.setIndex(-1);
 			}
 	}
 
+	/**
+	 * Returns the element running between the two specified endpoints, or null if there is none.
+	 * Equivalent to looking the pair up in <tt>elements</tt>, but without building a key set.
+	 */
+	private Element getElement(Poynt a, Poynt b) {
+		List<Element> elts = b.elements();
+		if (elts == null) return null;
+		for (int i = 0; i < elts.size(); i++) {
+			Element elt = elts.get(i);
+			if (elt.isEndPoint(a) && elt.isEndPoint(b))
+				return elt;
+		}
+		return null;
+	}
+
 	private int getInOrOut(Element elt, Poynt node) {		
 		if (node.equals(elt.start)) {
 			if (elt.getAssignedDirection().equals(Dir.EAST) || elt.getAssignedDirection().equals(Dir.SOUTH))
@@ -363,7 +273,7 @@ public class CircuitBoard implements Iterable<Poynt> {
 		firstLoop.fillPotential(0.0, firstLoop.getElements().getFirst());
 	}
 
-	private void fillInteriorPotentials() {
+	private void fillInteriorPotentials(SolveProgress progress) {
 				
 		// Find average, min, max exterior potentials
 		double minPotential = Double.POSITIVE_INFINITY;
@@ -391,11 +301,31 @@ public class CircuitBoard implements Iterable<Poynt> {
 			else
 				p.potential = potentialAverage;
 		
+		// Relax coarse copies of the board first, each starting from the one before, and start the
+		// interior from the finest of them
+		double tolerance = getMinimumVoltage() / TOLERANCE_DIVISOR;
+		CoarseGrid coarse = null;
+		for (int factor : COARSE_FACTORS) {
+			if (!CoarseGrid.fits(this, factor, MIN_COARSE_SIZE)) continue;
+			checkCancelled(progress);
+			CoarseGrid grid = new CoarseGrid(this, factor, potentialAverage);
+			if (coarse != null) grid.seed(coarse);
+			int iterations = grid.relax(tolerance, MAX_ITERATIONS / factor); // a smaller grid settles sooner
+			coarse = grid;
+			fillInteriorFrom(coarse, potentialAverage);
+			if (progress != null) {
+				progress.update("Relaxing potential at 1/" + factor + " size", iterations, 0);
+				preview(progress, factor);
+			}
+		}
+		
 		// Relaxation method to find the true interior potentials
-		double tolerance = getMinimumVoltage() / 500;
 		int iteration = 0;
 		double error = 0;
+		iterations = 0;
 		do {
+			checkCancelled(progress);
+			if (progress != null) progress.update("Relaxing potential", iteration, error);
 			error = 0;
 			for (Poynt p : this) {
 				if (p.getLoopCount() > 0 && !p.isOnCircuit()) {
@@ -410,9 +340,48 @@ public class CircuitBoard implements Iterable<Poynt> {
 						error = abs(newPotential - oldPotential);
 				}
 			}
+			iterations++;
 		} while (error > tolerance && iteration++ < MAX_ITERATIONS);
 		// System.out.println(iteration + " ITERATIONS!");
 	}
+
+	private void fillInteriorFrom(CoarseGrid coarse, double potentialAverage) {
+		for (Poynt p : this)
+			if (p.getLoopCount() > 0 && !p.isOnCircuit())
+				p.potential = coarse.interpolate(p.x, p.y, potentialAverage);
+	}
+
+	/**
+	 * Finds and normalizes the fields from the interior potentials as they stand, hands the board to
+	 * the specified listener to draw, and then puts the potentials back so relaxation can continue.
+	 */
+	private void preview(SolveProgress progress, int factor) {
+		double[] potentials = new double[width * height];
+		int k = 0;
+		for (Poynt p : this)
+			potentials[k++] = p.potential;
+		double maxPotential = maximum.potential;
+		try {
+			fillFields();
+			normalize();
+			progress.preview(factor);
+		} finally {
+			k = 0;
+			for (Poynt p : this)
+				p.potential = potentials[k++];
+			maximum.potential = maxPotential;
+			maximum.eFieldX = 0.0; // as the constructor left them, for the final fillFields()
+			maximum.eFieldY = 0.0;
+			maximum.bFieldZ = Double.NEGATIVE_INFINITY;
+			maximum.poyntX = 0.0;
+			maximum.poyntY = 0.0;
+		}
+	}
+
+	private void checkCancelled(SolveProgress progress) throws CancellationException {
+		if (progress != null && progress.isCancelled())
+			throw new CancellationException("Calculation of " + fileName + " cancelled.");
+	}
 	
 	private double getMinimumVoltage() {
 		double minV = Double.POSITIVE_INFINITY;
@@ -430,7 +399,7 @@ public class CircuitBoard implements Iterable<Poynt> {
 		for (Poynt p : this) {
 			if (p.x == 0)
 				p.eFieldX = -(p.get(Dir.EAST).potential - p.potential) / H;
-			else if (p.x == size.width - 1)
+			else if (p.x == width - 1)
 				p.eFieldX = -(p.potential - p.get(Dir.WEST).potential) / H;
 			else {
 				double mx1 = (p.potential - p.get(Dir.WEST).potential) / H;
@@ -441,7 +410,7 @@ public class CircuitBoard implements Iterable<Poynt> {
 			
 			if (p.y == 0)
 				p.eFieldY = -(p.get(Dir.SOUTH).potential - p.potential) / H;
-			else if (p.y == size.height - 1)
+			else if (p.y == height - 1)
 				p.eFieldY = -(p.potential - p.get(Dir.NORTH).potential) / H;
 			else {
 				double my1 = (p.potential - p.get(Dir.NORTH).potential) / H;
@@ -494,134 +463,94 @@ public class CircuitBoard implements Iterable<Poynt> {
 	/* *************** PUBLIC METHODS *************** */
 
 	public void calculateCircuit() {
-		fillCurrents();
-		fillExteriorPotentials();
-		fillInteriorPotentials();
-		fillFields();
-		normalize();
+		calculateCircuit(null);
+	}
+
+	/**
+	 * Calculates the currents and fields of this board, reporting progress to and checking for
+	 * cancellation with the specified listener, which may be null.
+	 * 
+	 * @throws CancellationException if the listener cancels the calculation; the board may be
+	 *             calculated again later
+	 */
+	public void calculateCircuit(SolveProgress progress) throws CancellationException {
+		if (calculatedFlag) return;
+		if (!currentsFilledFlag) {
+			if (progress != null) progress.update("Finding currents", 0, 0);
+			fillCurrents();
+			fillExteriorPotentials();
+			currentsFilledFlag = true;
+		}
+		iterations = 0;
+		if (!FieldCache.load(this)) {
+			fillInteriorPotentials(progress);
+			if (progress != null) progress.update("Finding fields", 0, 0);
+			fillFields();
+			normalize();
+			FieldCache.store(this);
+		}
 		calculatedFlag = true;
 	}
 	
 	public boolean isCalculated() {
 		return calculatedFlag;
 	}
-	
-	public void drawCircuit(Graphics g) {
-		g.setColor(CIRCUIT_COLOR);
-		for (Element e : elements())
-			e.draw(g, scaleFactor);
-	}
-
-	public void drawCircuitLabels(Graphics g) {
-		g.setColor(CIRCUIT_COLOR);
-		for (Element e : elements())
-			if (!e.isWire()) {
-				Point startCoord = e.start.toPixel(scaleFactor);
-				Point endCoord = e.end.toPixel(scaleFactor);
-
-				String label = ((NotWire) e).getValue() + " " + ((NotWire) e).getUnit();
-				g.setFont(new Font(g.getFont().getName(), Font.BOLD, g.getFont().getSize()));
-				FontMetrics fm = g.getFontMetrics();
-				Point coord = startCoord;
-					
-				if (e.isHorizontal()) {
-					coord.x += (endCoord.x - startCoord.x - fm.stringWidth(label)) / 2;
-					if (e.start.y > size.height / 2)
-						coord.y -= scaleFactor + 3;
-					else
-						coord.y += fm.getAscent() + scaleFactor + 5;
-				} else {
-					coord.y += (endCoord.y - startCoord.y + fm.getAscent()) / 2;
-					if (e.start.x > size.width / 2)
-						coord.x -= fm.stringWidth(label) + scaleFactor + 3;
-					else
-						coord.x += scaleFactor + 5;
-				}
-				
-				g.drawString(label, coord.x, coord.y);
-			}
-	}
 
-	public void drawGradient(Graphics g) {
-		for (Poynt p : this) {
-			if (p.getLoopCount() > 0) {
-				int red   = (int) (255 - abs(p.potential) * (255 - GRADIENT_COLOR.getRed()));
-				int green = (int) (255 - abs(p.potential) * (255 - GRADIENT_COLOR.getGreen()));
-				int blue  = (int) (255 - abs(p.potential) * (255 - GRADIENT_COLOR.getBlue()));
-				g.setColor(new Color(red, green, blue));
-				Point pt = p.toPixel(scaleFactor);
-				g.fillRect(pt.x, pt.y, scaleFactor + 1, scaleFactor + 1);
-			}
-		}
-	}
-
-	public void drawSlopeField(Graphics g) {
-		g.setColor(SLOPE_FIELD_COLOR);
-		for (Poynt p : this)
-			if (p.x % 2 == 1 && p.y % 2 == 1 && p.getLoopCount() > 0 && !p.isOnCircuit()) {
-
-				int h, k;
-				if (abs(p.poyntX) > abs(p.poyntY)) {
-					h = (int) (scaleFactor * signum(p.poyntX));
-					k = (int) (p.poyntY / abs(p.poyntX) * scaleFactor);
-				} else {
-					k = (int) (scaleFactor * signum(p.poyntY));
-					h = (int) (p.poyntX / abs(p.poyntY) * scaleFactor );
-				}
-				
-				if (h != 0 || k != 0) {
-					Point pt = p.toPixel(scaleFactor);
-					g.drawLine(pt.x, pt.y, pt.x + h, pt.y + k);
-					g.fillOval(pt.x + h - 2, pt.y + k - 2, 3, 3);
-				}
-			}
+	/**
+	 * Returns the number of sweeps the relaxation of the full-size board took when this board was
+	 * calculated, or 0 if its fields were loaded from the <tt>FieldCache</tt>.
+	 */
+	public int getIterations() {
+		return iterations;
 	}
 	
-	public void drawFlowLines(Graphics g) {
-		g.setColor(FLOW_LINES_COLOR);
-		for(Loop loop : loops) {
-			loop.setPotentialExtremes();
-			int noOfRegions = (int) (abs(loop.getCurrent()) * MAX_NO_OF_REGIONS / maximum.current + 0.5);
-			System.out.println("Loop" + loop.getIndex() + ": current = " + loop.getCurrent() + " ; noOfRegions = " + noOfRegions);
-			loop.drawFlowLines(g, noOfRegions, scaleFactor);
-		}
+	public Poynt get(int x, int y) {
+		return board[x][y];
 	}
 
-	public int getScaleFactor() {
-		return scaleFactor;
+	public Poynt getMax() {
+		return maximum;
 	}
 
-	public void setScaleFactor(int scaleFactor) {
-		this.scaleFactor = scaleFactor;
+	/**
+	 * Returns the distance between neighboring points, in meters.
+	 */
+	public double getSpacing() {
+		return H;
 	}
 
-	public Poynt get(int x, int y) {
-		return board[x][y];
+	/**
+	 * Returns the running sums of the Poynting vector that power flux integrals are taken from,
+	 * taking them the first time they are asked for. The board must be calculated.
+	 */
+	public synchronized PoyntingFlux getPoyntingFlux() {
+		if (poyntingFlux == null)
+			poyntingFlux = new PoyntingFlux(this);
+		return poyntingFlux;
 	}
 
-	public Poynt get(Point p) {
-		return board[p.x][p.y];
+	/**
+	 * Returns the summed-area tables that region statistics are taken from, building them the first
+	 * time they are asked for. The board must be calculated.
+	 */
+	public synchronized FieldStatistics getFieldStatistics() {
+		if (fieldStatistics == null)
+			fieldStatistics = new FieldStatistics(this);
+		return fieldStatistics;
 	}
 
-	public Poynt getMax() {
-		return maximum;
+	public int getWidth() {
+		return width;
 	}
 
-	public Dimension size() {
-		return size;
+	public int getHeight() {
+		return height;
 	}
 
 	public Collection<Element> elements() {
 		return elements.values();
 	}
 
-	public Point toPoint(String str) {
-		String[] arr = str.split(",");
-		int x = Integer.parseInt(arr[0]);
-		int y = Integer.parseInt(arr[1]);
-		return new Point(x, y);
-	}
-
 	public Iterator<Poynt> iterator() {
 		return new Iterator<Poynt>() {
 			int i = 0, j = 0;
@@ -633,10 +562,10 @@ public class CircuitBoard implements Iterable<Poynt> {
 
 			public Poynt next() {
 				Poynt p = board[i][j];
-				if (j < size.height - 1) {
+				if (j < height - 1) {
 					j++;
 					hasNext = true;
-				} else if (i < size.width - 1) {
+				} else if (i < width - 1) {
 					i++;
 					j = 0;
 					hasNext = true;
@@ -664,8 +593,12 @@ public class CircuitBoard implements Iterable<Poynt> {
 		return fileName.hashCode();
 	}
 	
-	public Dimension getBoardSize() {
-		return new Dimension(board.length, board[0].length);
+	/**
+	 * Returns a hash of this board's circuit file and the solver settings, which identifies its
+	 * computed fields.
+	 */
+	public String getContentKey() {
+		return contentKey;
 	}
 
 	public void addNode(Poynt p) {
@@ -679,4 +612,8 @@ public class CircuitBoard implements Iterable<Poynt> {
 	public int getLoops() {
 		return loops.size();
 	}
+
+	public Collection<Loop> loops() {
+		return loops;
+	}
 }
@@ -0,0 +1,442 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a circuit file into a <tt>CircuitBoard</tt> in a single pass over its characters. Lines are
+ * tokenized in place, so no <tt>String</tt>s are built and no regular expressions are run unless a
+ * line is in error. Every error in the file is collected rather than only the first; if there are
+ * any, they are thrown together once the whole file has been read.
+ *
+ * <p>The format is the one described in the help file: comment lines beginning with '#', a line
+ * giving the maximum x- and y-bounds, then one element per line, e.g. <tt>r 35,0 40,0 1.0</tt>.
+ * Leading blanks and blank-only lines are ignored.
+ *
+ * @author Noah Morris
+ */
+public class CircuitParser {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int MAX_TOKENS = 5; // type, start, end, value, and one more for the error message
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private CircuitBoard board;
+	private String fileName;
+	private List<IllegalCircuitException> errors = new ArrayList<IllegalCircuitException>();
+	private boolean sizeRead; // whether the bounds line has been seen, whether or not it was valid
+	private int width, height; // 0 until a valid bounds line has been read
+	private int elementCount;
+
+	// The line currently being parsed
+	private CharSequence in;
+	private int lineNo, lineStart, lineEnd, contentEnd;
+	private int tokenCount;
+	private int[] tokenStart = new int[MAX_TOKENS];
+	private int[] tokenEnd = new int[MAX_TOKENS];
+
+	// Results of the most recent number parse
+	private boolean parsed;
+	private int x, y;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Constructor. Creates a parser that will add what it reads to the specified board.
+	 *
+	 * @param board the (empty) board to fill
+	 * @param fileName the name of the file being read, for error messages
+	 */
+	public CircuitParser(CircuitBoard board, String fileName) {
+		this.board = board;
+		this.fileName = fileName;
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Reads all of the characters from the specified reader.
+	 */
+	public static CharSequence read(Reader reader) throws IllegalCircuitException {
+		char[] buf = new char[8192];
+		int n = 0;
+		try {
+			for (int r; (r = reader.read(buf, n, buf.length - n)) >= 0;) {
+				n += r;
+				if (n == buf.length) {
+					char[] bigger = new char[buf.length * 2];
+					System.arraycopy(buf, 0, bigger, 0, n);
+					buf = bigger;
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalCircuitException("Cannot read circuit file: " + e.getMessage());
+		}
+		return CharBuffer.wrap(buf, 0, n);
+	}
+
+	/**
+	 * Maps the specified file into memory.
+	 */
+	public static ByteBuffer map(File file) throws IllegalCircuitException {
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				in.close(); // the mapping stays valid after the channel is closed
+			}
+		} catch (IOException e) {
+			throw new IllegalCircuitException("Cannot read file " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns a view of the specified bytes as characters. Circuit files are plain ASCII, so each
+	 * byte is taken to be one character.
+	 */
+	public static CharSequence decode(ByteBuffer bytes) {
+		return new ByteSequence(bytes);
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Parses the specified circuit file contents, setting up the board and adding every element.
+	 *
+	 * @throws IllegalCircuitException if the file contains any errors; if there is more than one,
+	 *             the exception lists all of them
+	 */
+	public void parse(CharSequence text) throws IllegalCircuitException {
+		in = text;
+		int length = text.length();
+		lineNo = 0;
+		for (int pos = 0; pos < length;) {
+			lineNo++;
+			lineStart = pos;
+			while (pos < length && text.charAt(pos) != '\n' && text.charAt(pos) != '\r')
+				pos++;
+			lineEnd = pos;
+			if (pos < length && text.charAt(pos) == '\r') pos++;
+			if (pos < length && text.charAt(pos) == '\n') pos++;
+			parseLine();
+		}
+
+		if (!sizeRead)
+			errors.add(new IllegalCircuitException("File " + fileName + " is empty."));
+		else if (errors.isEmpty() && elementCount == 0)
+			errors.add(new IllegalCircuitException("File " + fileName + " contains no circuit elements."));
+
+		if (errors.size() == 1)
+			throw errors.get(0);
+		else if (!errors.isEmpty())
+			throw new IllegalCircuitException(errors);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void parseLine() {
+		int start = lineStart;
+		while (start < lineEnd && isBlank(in.charAt(start)))
+			start++;
+		contentEnd = start;
+		while (contentEnd < lineEnd && in.charAt(contentEnd) != '#')
+			contentEnd++;
+		if (start == contentEnd) return; // blank or comment line
+
+		try {
+			if (!sizeRead) {
+				sizeRead = true;
+				parseSize(start);
+			} else
+				parseElement(start);
+		} catch (IllegalCircuitException e) {
+			e.setLine(lineNo, in.subSequence(lineStart, lineEnd).toString());
+			errors.add(e);
+		}
+	}
+
+	private void parseSize(int start) {
+		int comma = indexOf(',', start, contentEnd);
+		if (comma < 0) throw new IllegalCircuitException("Expected: Maximum y-bound. Found: End of line");
+		int comma2 = indexOf(',', comma + 1, contentEnd);
+		if (comma2 >= 0)
+			throw new IllegalCircuitException("Expected: End of line. Found: " + text(comma2, contentEnd));
+
+		int sizeX = parseBound(start, comma, "x");
+		int sizeY = parseBound(comma + 1, contentEnd, "y");
+
+		board.setUpBoard(sizeX + 1, sizeY + 1);
+		width = sizeX + 1;
+		height = sizeY + 1;
+	}
+
+	private int parseBound(int from, int to, String axis) {
+		while (from < to && isBlank(in.charAt(from))) from++;
+		while (to > from && isBlank(in.charAt(to - 1))) to--;
+		int n = parseInt(from, to);
+		if (!parsed)
+			throw new IllegalCircuitException("Maximum " + axis + "-bound must be an integer. Found: " + text(from, to));
+		if (n < 0) throw new IllegalCircuitException("Maximum " + axis + "-bound must be positive. Found: " + n);
+		if (n == 0) throw new IllegalCircuitException("Maximum " + axis + "-bound may not be zero. Found: " + n);
+		return n;
+	}
+
+	private void parseElement(int from) {
+		tokenize(from);
+
+		// Parse initial character
+		char letter = Character.toLowerCase(in.charAt(tokenStart[0]));
+		if (tokenEnd[0] - tokenStart[0] > 1 || (letter != 'w' && letter != 'r' && letter != 'b'))
+			throw new IllegalCircuitException("Expected: Element type ('w', 'r', or 'b'). Found: " + token(0));
+
+		// Parse line length
+		if (tokenCount < 2) throw new IllegalCircuitException("Expected: Start x-coordinate. Found: End of line");
+		if (tokenCount < 3) throw new IllegalCircuitException("Expected: End x-coordinate. Found: End of line");
+		if (letter == 'r' && tokenCount < 4) throw new IllegalCircuitException("Expected: Resistance in ohms. Found: End of line");
+		if (letter == 'b' && tokenCount < 4) throw new IllegalCircuitException("Expected: Voltage in volts. Found: End of line");
+
+		// Parse coordinates
+		parseCoordinate(1, "Start", "End coordinate");
+		int startX = x, startY = y;
+		parseCoordinate(2, "End", letter == 'w' ? "End of line" : (letter == 'r' ? "resistance" : "voltage"));
+		int endX = x, endY = y;
+
+		// Parse value
+		int expected = letter == 'w' ? 3 : 4;
+		if (tokenCount > expected)
+			throw new IllegalCircuitException("Expected: End of line. Found: " + token(expected));
+		double value = 0.0;
+		if (letter == 'r') {
+			value = parseDouble(3);
+			if (!parsed) throw new IllegalCircuitException("Resistance must be an integer or decimal. Found: " + token(3));
+			if (value < 0) throw new IllegalCircuitException("Resistance may not be negative. Found: " + token(3));
+		} else if (letter == 'b') {
+			value = parseDouble(3);
+			if (!parsed) throw new IllegalCircuitException("Voltage must be an integer or decimal. Found: " + token(3));
+		}
+
+		if (width == 0) return; // no board to build on; keep checking syntax only
+
+		// Build element
+		Poynt start = board.get(startX, startY);
+		Poynt end = board.get(endX, endY);
+		Element elt;
+		if (letter == 'w')
+			elt = new Wire(start, end, board);
+		else if (letter == 'r')
+			elt = new Resistor(start, end, value);
+		else
+			elt = new Battery(start, end, value);
+		board.addElement(elt);
+		elementCount++;
+	}
+
+	/**
+	 * Finds the blank-separated tokens on the current line, recording the bounds of the first
+	 * <tt>MAX_TOKENS</tt> of them and counting all of them.
+	 */
+	private void tokenize(int pos) {
+		tokenCount = 0;
+		while (pos < contentEnd) {
+			int start = pos;
+			while (pos < contentEnd && !isBlank(in.charAt(pos)))
+				pos++;
+			if (tokenCount < MAX_TOKENS) {
+				tokenStart[tokenCount] = start;
+				tokenEnd[tokenCount] = pos;
+			}
+			tokenCount++;
+			while (pos < contentEnd && isBlank(in.charAt(pos)))
+				pos++;
+		}
+	}
+
+	/**
+	 * Parses token <tt>i</tt> as an "x,y" coordinate within the board's bounds, leaving the result
+	 * in <tt>x</tt> and <tt>y</tt>.
+	 */
+	private void parseCoordinate(int i, String which, String next) {
+		int from = tokenStart[i], to = tokenEnd[i];
+		int comma = indexOf(',', from, to);
+		if (comma < 0 || comma == to - 1)
+			throw new IllegalCircuitException("Expected: " + which + " y-coordinate. Found: " + token(i));
+		int comma2 = indexOf(',', comma + 1, to);
+		if (comma2 >= 0)
+			throw new IllegalCircuitException("Expected: " + next + ". Found: " + text(comma2, to));
+
+		x = parseInt(from, comma);
+		if (!parsed)
+			throw new IllegalCircuitException(which + " x-coordinate must be an integer. Found: " + text(from, comma));
+		y = parseInt(comma + 1, to);
+		if (!parsed)
+			throw new IllegalCircuitException(which + " y-coordinate must be an integer. Found: " + text(comma + 1, to));
+
+		if (width == 0) return; // bounds unknown
+		if (x < 0) throw new IllegalCircuitException(which + " x-coordinate must be positive. Found: " + x);
+		if (x >= width) throw outOfBounds(i, which);
+		if (y < 0) throw new IllegalCircuitException(which + " y-coordinate must be positive. Found: " + y);
+		if (y >= height) throw outOfBounds(i, which);
+	}
+
+	private IllegalCircuitException outOfBounds(int i, String which) {
+		return new IllegalCircuitException(which + " coordinates out of bounds. Coordinate: (" + token(i)
+				+ "), Bounds: (" + width + "," + height + ")");
+	}
+
+	/**
+	 * Parses the characters in [from, to) as a decimal integer, with an optional sign. Sets
+	 * <tt>parsed</tt> to whether they form a valid <tt>int</tt>.
+	 */
+	private int parseInt(int from, int to) {
+		parsed = false;
+		if (from >= to) return 0;
+		boolean negative = false;
+		char c = in.charAt(from);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			if (++from == to) return 0;
+		}
+		long n = 0;
+		for (int i = from; i < to; i++) {
+			int digit = in.charAt(i) - '0';
+			if (digit < 0 || digit > 9) return 0;
+			n = n * 10 + digit;
+			if (n > (long) Integer.MAX_VALUE + 1) return 0;
+		}
+		if (negative) n = -n;
+		if (n > Integer.MAX_VALUE) return 0;
+		parsed = true;
+		return (int) n;
+	}
+
+	/**
+	 * Parses token <tt>i</tt> as a decimal number. Plain decimals of up to 18 significant digits and
+	 * small exponents are converted directly, which is exact; anything else falls back to
+	 * <tt>Double.parseDouble</tt>. Sets <tt>parsed</tt> to whether the token is a valid number.
+	 */
+	private double parseDouble(int i) {
+		int from = tokenStart[i], to = tokenEnd[i];
+		int pos = from;
+		boolean negative = false;
+		if (pos < to && (in.charAt(pos) == '-' || in.charAt(pos) == '+'))
+			negative = in.charAt(pos++) == '-';
+
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean fast = true, anyDigits = false, point = false;
+		for (; pos < to; pos++) {
+			char c = in.charAt(pos);
+			if (c >= '0' && c <= '9') {
+				anyDigits = true;
+				if (mantissa == 0 && c == '0') {
+					if (point) exponent--;
+					continue;
+				}
+				if (digits++ == 18) fast = false;
+				mantissa = mantissa * 10 + (c - '0');
+				if (point) exponent--;
+			} else if (c == '.' && !point)
+				point = true;
+			else
+				break;
+		}
+		if (pos < to && (in.charAt(pos) == 'e' || in.charAt(pos) == 'E') && anyDigits) {
+			int n = parseInt(pos + 1, to);
+			if (parsed && Math.abs(n) < 1000) {
+				exponent += n;
+				pos = to;
+			}
+		}
+
+		if (pos == to && anyDigits && fast && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+			parsed = true;
+			double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+
+		try {
+			double value = Double.parseDouble(text(from, to));
+			parsed = true;
+			return value;
+		} catch (NumberFormatException e) {
+			parsed = false;
+			return 0.0;
+		}
+	}
+
+	private int indexOf(char c, int from, int to) {
+		for (int i = from; i < to; i++)
+			if (in.charAt(i) == c)
+				return i;
+		return -1;
+	}
+
+	private String token(int i) {
+		return text(tokenStart[i], tokenEnd[i]);
+	}
+
+	private String text(int from, int to) {
+		return in.subSequence(from, to).toString();
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * A read-only view of a buffer of single-byte characters.
+	 */
+	private static class ByteSequence implements CharSequence {
+		private final ByteBuffer bytes;
+		private final int offset, length;
+
+		public ByteSequence(ByteBuffer bytes) {
+			this(bytes, 0, bytes.limit());
+		}
+
+		private ByteSequence(ByteBuffer bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public char charAt(int index) {
+			return (char) (bytes.get(offset + index) & 0xff);
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new ByteSequence(bytes, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++)
+				chars[i] = charAt(i);
+			return new String(chars);
+		}
+	}
+}
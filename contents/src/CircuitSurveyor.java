@@ -4,32 +4,53 @@
  */
 
 import static java.lang.Math.*;
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.Insets;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 import javax.swing.event.MouseInputAdapter;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.SwingUtilities;
 import javax.jnlp.BasicService;
 import javax.jnlp.ServiceManager;
@@ -42,46 +63,96 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 
 	/*  *************** CLASS CONSTANTS *************** */
 
-	private static final int NO_OF_LAYERS = 7;
-	private static final int GRADIENT = 0, FLOW_LINES = 1, SLOPE_FIELD = 2, CIRCUIT = 3,
-			CIRCUIT_LABELS = 4, CLICKED_ARROWS = 5, ROVING_ARROWS = 6;
+	private static final int NO_OF_LAYERS = 10;
+	private static final int GRADIENT = 0, FLOW_LINES = 1, ISOLINES = 2, STREAMLINES = 3, SLOPE_FIELD = 4,
+			CIRCUIT = 5, CIRCUIT_LABELS = 6, PARTICLES = 7, CLICKED_ARROWS = 8, ROVING_ARROWS = 9;
 
 	private static final int INSET = 10, DIGITS = 3;
+	private static final String SLOPE_ARROWS = "Slope field as arrows", SLOPE_TEXTURE = "Slope field as texture";
 	private static final String NEW_LINE = "\n",
 			DIR_NAME = "/circuits/", // where circuit files are stored
 			CIRCUIT_FILE_NAME = DIR_NAME + "contents.txt", // listing of included circuits
 			LIST_BOX_TEXT = "-- Select a circuit --",
-			HELP_FILE_NAME = "http://www.oberlin.edu/physics/dstyer/CircuitSurveyor/help.html";
+			HELP_FILE_NAME = "http://www.oberlin.edu/physics/dstyer/CircuitSurveyor/help.html",
+			REGION_HINT = "  Shift-drag to select a region";
 
 	private static final Color ELECTRIC_COLOR = Color.BLUE, // blue
 			MAGNETIC_COLOR = new Color(0, 128, 0), // dark green
 			POYNTING_COLOR = new Color(255, 165, 0); // yellow-orange
 
+	private static final BasicStroke ARROW_STROKE = new BasicStroke(2.0f), // extra-thick
+			PLAIN_STROKE = new BasicStroke(),
+			SELECTION_STROKE = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f,
+					new float[] { 4.0f, 4.0f }, 0.0f); // dashed
+
+	private static final int ZOOM_OUT_STEPS = 2; // how far the view can zoom out past fitting the board
+	private static final double MAX_POINT_SIZE = 64; // pixels; how far the view can zoom in
+	private static final int DRAG_THRESHOLD = 3; // pixels the mouse must move before a press becomes a drag
+	private static final int RESIZE_DELAY = 150; // milliseconds the window must rest before the layers are redrawn
+
+	private static final long PROGRESS_INTERVAL = 50; // milliseconds between progress bar updates
+
+	/**
+	 * Runs one solve at a time, off the event dispatch thread.
+	 */
+	private static final ExecutorService SOLVER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "CircuitSurveyor solver");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
 	/*  *************** DATA MEMBERS *************** */
 
-	private Dimension size;
-	private Dimension offset;
-	private int scaleFactor;
+	private Dimension size; // of the layers, in image pixels
+	private double pixelScale = 1; // image pixels per screen pixel when the layers were sized
+	private Dimension offset; // pixel of board point (0, 0)
+	private int scaleFactor; // the board's drawing scale factor
+	private double fitPointSize; // pixels per board point when the whole board just fits
+	private int zoom; // the view shows fitPointSize * 2^zoom pixels per board point
+	private volatile int viewVersion; // increased whenever the view or the board changes
+	private int dragX, dragY;
+	private boolean draggingFlag;
+	private int selectX, selectY; // where the region being selected was started, in image pixels
+	private boolean selectingFlag;
+	private Timer resizeTimer;
 
 	private JPanel mainFrame;
-	private JLayeredPane layeredPane;
-	private JPanel[] frames;
-	private BufferedImage[] images;
+	private LayerCanvas canvas;
+	private BufferedImage[] images; // null until first drawn on
 	private Graphics2D[] graphics;
+	private Rectangle rovingBounds = new Rectangle(0, 0, -1, -1), // last drawn roving arrows, in image pixels; empty if none
+			dirtyBounds = new Rectangle();
 
 	private JPanel sideFrame;
 	private JComboBox listBox;
-	private JButton okayButton, addButton, clearButton, helpButton;
+	private JButton okayButton, addButton, clearButton, exportButton, helpButton;
 	private JPanel topFrame, checkFrame, textFrame;
 	private JCheckBox circuitCheck, circuitLabelCheck, gradientCheck, slopeFieldCheck,
-			flowLinesCheck;
+			flowLinesCheck, isolinesCheck, streamlinesCheck, animateCurrentCheck, animateEnergyCheck;
 	private JCheckBox[] checkboxes;
-	private JTextArea electricText, magneticText, poyntingText;
+	private JComboBox<Colormap> gradientBox, isolineBox;
+	private JComboBox<String> slopeFieldBox;
+	private JTextField isolineText;
+	private JProgressBar progressBar;
+	private JTextArea electricText, magneticText, poyntingText, regionText;
 
 	private boolean arrowsAllowedFlag;
 	private Hashtable<String, BufferedReader> addedFiles;
 	private CircuitBoard board;
-	private Hashtable<String, CircuitBoard> boards;
+	private BoardRenderer renderer; // draws the board, keeping the lines traced from it
+	private Hashtable<String, BoardRenderer> boards;
+	private SolveWorker solveWorker; // the solve in progress, if any
+	private FieldTiles tiles; // gradient tiles of the calculated board; null until it is calculated
+	private FieldTiles.Listener tileListener;
+	private CurrentAnimation animation; // running while either animation check box is selected
+	private BufferedImage animationFrame; // the newest frame, waiting to be shown
+	private CurrentAnimation frameSource; // the animation that drew it
+	private Runnable showFrame;
+	private Colormap isolineField = Colormap.POTENTIAL; // the isolines drawn, as last entered
+	private double[] isolineLevels = Isolines.evenLevels(Isolines.DEFAULT_NO_OF_LEVELS);
+	private boolean slopeTextureFlag; // draw the slope field as a texture rather than arrows
 
 	/*  *************** CONSTRUCTOR *************** */
 
@@ -96,15 +167,16 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		createMainFrame();
 		createSideFrame();
 		createMouseListener();
+		createResizeListener();
 		performLayout();
-		boards = new Hashtable<String, CircuitBoard>();
+		boards = new Hashtable<String, BoardRenderer>();
 		addedFiles = new Hashtable<String, BufferedReader>();
 	}
 
 	/*  *************** PRIVATE METHODS *************** */
 
 	/**
-	 * 
+	 * Sets the starting size of the main frame, to be adjusted once it is showing.
 	 */
 	private void determineSize() {
 		int width = Toolkit.getDefaultToolkit().getScreenSize().width - 300; // 200 for sidebar
@@ -116,45 +188,17 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 	private void createMainFrame() {
 
 		// Create a Panel for the main image frame.
-		mainFrame = new JPanel();
+		mainFrame = new JPanel(new BorderLayout());
 		mainFrame.setPreferredSize(size);
 		mainFrame.setBorder(new EtchedBorder(EtchedBorder.LOWERED));
 
-		// Create a LayeredPane in the main frame.
-		layeredPane = new JLayeredPane();
-		layeredPane.setPreferredSize(size);
-		mainFrame.add(layeredPane);
+		// Create a canvas in the main frame to show the layers.
+		canvas = new LayerCanvas(NO_OF_LAYERS, size);
+		mainFrame.add(canvas);
 
-		// Create arrays of Panels, Images, and Graphics.
-		frames = new JPanel[NO_OF_LAYERS];
+		// Create arrays of Images and Graphics; each layer's is created when it is first drawn on.
 		images = new BufferedImage[NO_OF_LAYERS];
 		graphics = new Graphics2D[NO_OF_LAYERS];
-
-		// Create a Panel for a frame to house an Image (with a Graphics) for each layer in the
-		// LayeredPane.
-		for (int layer = 0; layer < NO_OF_LAYERS; layer++) {
-
-			// Create frame.
-			JPanel frame = new JPanel();
-			frame.setPreferredSize(size);
-			frame.setOpaque(false);
-			frame.setBounds(0, 0, size.width, size.height);
-			frames[layer] = frame;
-
-			// Create image and add to frame.
-			BufferedImage img =
-					new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
-			images[layer] = img;
-			frame.add(new JLabel(new ImageIcon(img)));
-			frame.setVisible(false);
-
-			// Add frame to layered pane.
-			layeredPane.add(frame, new Integer(layer));
-
-			// Create graphics for image.
-			Graphics2D gr = img.createGraphics();
-			graphics[layer] = gr;
-		}
 	}
 
 	private void createSideFrame() {
@@ -166,13 +210,13 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 
 		// Create the side panel top frame.
 		topFrame = new JPanel();
-		topFrame.setPreferredSize(new Dimension(200, size.height - 160));
+		topFrame.setPreferredSize(new Dimension(200, size.height - 245));
 		topFrame.setLayout(new BoxLayout(topFrame, BoxLayout.Y_AXIS));
 		topFrame.setBorder(new EtchedBorder(EtchedBorder.LOWERED));
 
 		// Create a frame for the text areas.
 		textFrame = new JPanel();
-		textFrame.setPreferredSize(new Dimension(200, 150));
+		textFrame.setPreferredSize(new Dimension(200, 235));
 		textFrame.setLayout(new BoxLayout(textFrame, BoxLayout.Y_AXIS));
 		textFrame.setBorder(new EtchedBorder(EtchedBorder.LOWERED));
 
@@ -187,6 +231,12 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		okayButton.setMaximumSize(new Dimension(200, 50));
 		okayButton.addActionListener(this);
 
+		// Create the progress bar shown while a circuit is being solved.
+		progressBar = new JProgressBar();
+		progressBar.setMaximumSize(new Dimension(200, 25));
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+
 		// Create the add button for the side panel.
 		addButton = new JButton("Add new...");
 		addButton.setMaximumSize(new Dimension(200, 50));
@@ -200,6 +250,11 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		clearButton.setVerticalTextPosition(SwingConstants.CENTER);
 		clearButton.addActionListener(this);
 
+		// Create the export button for the side panel.
+		exportButton = new JButton("Export...");
+		exportButton.setMaximumSize(new Dimension(200, 50));
+		exportButton.addActionListener(this);
+
 		// Create the help button for the side panel.
 		helpButton = new JButton("Help");
 		helpButton.setMaximumSize(new Dimension(200, 50));
@@ -211,8 +266,12 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		gradientCheck = new JCheckBox("Gradient");
 		slopeFieldCheck = new JCheckBox("Slope field");
 		flowLinesCheck = new JCheckBox("Flow lines");
+		isolinesCheck = new JCheckBox("Isolines");
+		streamlinesCheck = new JCheckBox("Energy flow");
+		animateCurrentCheck = new JCheckBox("Animate current");
+		animateEnergyCheck = new JCheckBox("Animate energy flow");
 		JCheckBox[] temp = {circuitCheck, circuitLabelCheck, gradientCheck, slopeFieldCheck,
-				flowLinesCheck};
+				flowLinesCheck, isolinesCheck, streamlinesCheck, animateCurrentCheck, animateEnergyCheck};
 		checkboxes = temp;
 		for (JCheckBox checkbox : checkboxes) {
 			checkbox.addItemListener(this);
@@ -221,9 +280,32 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		circuitCheck.doClick();
 		circuitLabelCheck.doClick();
 
+		// Create the drop-down menu of fields the gradient can show.
+		gradientBox = new JComboBox<Colormap>(Colormap.values());
+		gradientBox.setMaximumSize(new Dimension(200, 25));
+		gradientBox.addActionListener(this);
+		gradientBox.setEnabled(false);
+
+		// Create the drop-down menu of ways to draw the slope field.
+		slopeFieldBox = new JComboBox<String>(new String[] { SLOPE_ARROWS, SLOPE_TEXTURE });
+		slopeFieldBox.setMaximumSize(new Dimension(200, 25));
+		slopeFieldBox.addActionListener(this);
+		slopeFieldBox.setEnabled(false);
+
+		// Create the drop-down menu of fields and the box of levels for the isolines.
+		isolineBox = new JComboBox<Colormap>(Colormap.values());
+		isolineBox.setMaximumSize(new Dimension(200, 25));
+		isolineBox.addActionListener(this);
+		isolineBox.setEnabled(false);
+		isolineText = new JTextField(String.valueOf(Isolines.DEFAULT_NO_OF_LEVELS));
+		isolineText.setMaximumSize(new Dimension(200, 25));
+		isolineText.setToolTipText("Isoline levels: a number of evenly spaced levels, or levels from 0 to 1 separated by commas");
+		isolineText.addActionListener(this);
+		isolineText.setEnabled(false);
+
 		// Create a frame for the check boxes.
 		checkFrame = new JPanel(new GridLayout(0, 1));
-		checkFrame.setMaximumSize(new Dimension(200, 125));
+		checkFrame.setMaximumSize(new Dimension(200, 225));
 		for (JCheckBox checkbox : checkboxes)
 			checkFrame.add(checkbox);
 
@@ -243,6 +325,10 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		poyntingText.setOpaque(false);
 		poyntingText.setForeground(POYNTING_COLOR);
 		poyntingText.setEditable(false);
+		regionText = new JTextArea();
+		regionText.setMaximumSize(new Dimension(200, 80));
+		regionText.setOpaque(false);
+		regionText.setEditable(false);
 	}
 
 	private void performLayout() {
@@ -251,10 +337,16 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		topFrame.add(Box.createRigidArea(new Dimension(200, 3)));
 		topFrame.add(listBox);
 		topFrame.add(okayButton);
+		topFrame.add(progressBar);
 		topFrame.add(addButton);
 		topFrame.add(checkFrame);
+		topFrame.add(gradientBox);
+		topFrame.add(slopeFieldBox);
+		topFrame.add(isolineBox);
+		topFrame.add(isolineText);
 		topFrame.add(Box.createRigidArea(new Dimension(0, 30)));
 		topFrame.add(clearButton);
+		topFrame.add(exportButton);
 		topFrame.add(helpButton);
 		topFrame.add(Box.createVerticalGlue());
 
@@ -262,16 +354,18 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		textFrame.add(electricText);
 		textFrame.add(magneticText);
 		textFrame.add(poyntingText);
+		textFrame.add(regionText);
 		textFrame.add(Box.createRigidArea(new Dimension(207, 5)));
 
 		// Lay out the side panel.
+		setLayout(new BorderLayout());
 		sideFrame.add(topFrame);
 		sideFrame.add(Box.createRigidArea(new Dimension(0, 5)));
 		sideFrame.add(textFrame);
-		add(sideFrame);
+		add(sideFrame, BorderLayout.WEST);
 
 		// Lay out the main panel.
-		add(mainFrame);
+		add(mainFrame, BorderLayout.CENTER);
 	}
 
 	private void createMouseListener() {
@@ -287,43 +381,200 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 			public void mouseMoved(MouseEvent e) {
 				if (arrowsAllowedFlag) { // If arrows are currently allowed
 											 // Should not do anything if no board is currently loaded
-					mouseExited(e);
-					try {
-						Point pt = e.getPoint();
-						pt.translate(-8, -8);
-						Poynt p = board.get(pixelToPoint(pt));
-						if (!p.isOnCircuit()) {
-							setText(p);
-							drawArrows(pt, graphics[ROVING_ARROWS]);
-							frames[ROVING_ARROWS].repaint();
-						}
-					} catch (IndexOutOfBoundsException ex) {}
+					Point pixel = canvas.toLayer(e.getPoint());
+					int x = pixel.x, y = pixel.y;
+					Poynt p = pixelToPoynt(x, y);
+					if (p != null && !p.isOnCircuit()) {
+						clearText();
+						setText(p);
+						moveRovingArrows(x, y);
+					} else
+						mouseExited(e);
 				}
 			}
 
 			public void mouseExited(MouseEvent e) {
-				clearLayer(ROVING_ARROWS);
-				electricText.setText("");
-				magneticText.setText("");
-				poyntingText.setText("");
+				eraseRovingArrows();
+				clearText();
 			}
 
 			public void mousePressed(MouseEvent e) {
-				if (arrowsAllowedFlag) { // Should not do anything if no board has been loaded yet
-					try {
-						Point pt = e.getPoint();
-						pt.translate(-8, -8);
-						Poynt p = board.get(pixelToPoint(pt));
-						if (!p.isOnCircuit()) {
-							drawArrows(pt, graphics[CLICKED_ARROWS]);
-							frames[CLICKED_ARROWS].repaint();
-						}
-					} catch (IndexOutOfBoundsException ex) { }
+				Point pixel = canvas.toLayer(e.getPoint());
+				dragX = selectX = pixel.x;
+				dragY = selectY = pixel.y;
+				draggingFlag = false;
+				selectingFlag = arrowsAllowedFlag && e.isShiftDown();
+			}
+
+			/**
+			 * Pans the view, or with the shift key held, selects a region of it.
+			 */
+			public void mouseDragged(MouseEvent e) {
+				if (board == null) return;
+				Point pixel = canvas.toLayer(e.getPoint());
+				if (selectingFlag) {
+					moveSelection(pixel.x, pixel.y);
+					return;
+				}
+				int dx = pixel.x - dragX, dy = pixel.y - dragY;
+				if (!draggingFlag && abs(dx) + abs(dy) < DRAG_THRESHOLD * canvas.getPixelScale()) return;
+				draggingFlag = true;
+				dragX = pixel.x;
+				dragY = pixel.y;
+				offset.width += dx;
+				offset.height += dy;
+				viewChanged();
+			}
+
+			/**
+			 * Leaves the field arrows where the mouse was clicked, unless it was dragged, or shows
+			 * the statistics of the region selected.
+			 */
+			public void mouseReleased(MouseEvent e) {
+				if (selectingFlag) {
+					Point pixel = canvas.toLayer(e.getPoint());
+					selectRegion(pixel.x, pixel.y);
+					selectingFlag = false;
+				} else if (arrowsAllowedFlag && !draggingFlag) { // Should not do anything if no board has been loaded yet
+					Point pixel = canvas.toLayer(e.getPoint());
+					int x = pixel.x, y = pixel.y;
+					Poynt p = pixelToPoynt(x, y);
+					if (p != null && !p.isOnCircuit()) {
+						drawArrows(x, y, layerGraphics(CLICKED_ARROWS), dirtyBounds);
+						canvas.layerChanged(CLICKED_ARROWS, dirtyBounds);
+					}
+				}
+				draggingFlag = false;
+			}
+
+			/**
+			 * Zooms the view in or out about the mouse cursor.
+			 */
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (board != null) {
+					Point pixel = canvas.toLayer(e.getPoint());
+					zoomTo(zoom - e.getWheelRotation(), pixel.x, pixel.y);
 				}
 			}
 		};
-		layeredPane.addMouseListener(listener);
-		layeredPane.addMouseMotionListener(listener);
+		canvas.addMouseListener(listener);
+		canvas.addMouseMotionListener(listener);
+		canvas.addMouseWheelListener(listener);
+
+		showFrame = new Runnable() {
+			public void run() {
+				showAnimationFrame();
+			}
+		};
+
+		tileListener = new FieldTiles.Listener() {
+			public void tileReady(final FieldTiles source, final Colormap colormap, final double pointSize,
+					final int tx, final int ty, final BufferedImage tile) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (source == tiles && colormap == gradientBox.getSelectedItem() && pointSize == pointSize())
+							drawTile(tile, tx, ty);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Refits the layers once the canvas has stopped changing size, or has moved to a display of
+	 * another resolution.
+	 */
+	private void createResizeListener() {
+		resizeTimer = new Timer(RESIZE_DELAY, this);
+		resizeTimer.setRepeats(false);
+		canvas.addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				resizeTimer.restart();
+			}
+		});
+		canvas.addPropertyChangeListener("graphicsConfiguration", new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				resizeTimer.restart();
+			}
+		});
+	}
+
+	/**
+	 * Moves the roving arrows to the specified image pixel, erasing and repainting only the areas
+	 * they covered before and cover now. The layer's image is drawn into in place, so nothing is
+	 * allocated.
+	 */
+	private void moveRovingArrows(int x, int y) {
+		Graphics2D g = layerGraphics(ROVING_ARROWS);
+		dirtyBounds.setBounds(rovingBounds);
+		clearRect(g, rovingBounds);
+		drawArrows(x, y, g, rovingBounds);
+		dirtyBounds.add(rovingBounds);
+		canvas.layerChanged(ROVING_ARROWS, dirtyBounds);
+	}
+
+	/**
+	 * Moves the outline of the region being selected, from where the selection started to the
+	 * specified image pixel, on the roving arrows' layer.
+	 */
+	private void moveSelection(int x, int y) {
+		Graphics2D g = layerGraphics(ROVING_ARROWS);
+		dirtyBounds.setBounds(rovingBounds);
+		clearRect(g, rovingBounds);
+		drawSelection(x, y, g, rovingBounds);
+		dirtyBounds.add(rovingBounds);
+		canvas.layerChanged(ROVING_ARROWS, dirtyBounds);
+	}
+
+	/**
+	 * Leaves the outline of the region selected, which ends at the specified image pixel, with the
+	 * clicked arrows, and shows its statistics.
+	 */
+	private void selectRegion(int x, int y) {
+		eraseRovingArrows();
+		if (!arrowsAllowedFlag) return; // another circuit was chosen meanwhile
+		drawSelection(x, y, layerGraphics(CLICKED_ARROWS), dirtyBounds);
+		canvas.layerChanged(CLICKED_ARROWS, dirtyBounds);
+		Point start = pixelToPoint(selectX, selectY), end = pixelToPoint(x, y);
+		setRegionText(board.getFieldStatistics().query(start.x, start.y, end.x, end.y));
+	}
+
+	/**
+	 * Outlines the region from where the selection started to the specified image pixel, and sets
+	 * <tt>bounds</tt> to the area drawn, in image pixels.
+	 */
+	private void drawSelection(int x, int y, Graphics2D g, Rectangle bounds) {
+		bounds.setBounds(min(x, selectX), min(y, selectY), abs(x - selectX), abs(y - selectY));
+		g.setColor(Color.BLACK);
+		g.setStroke(SELECTION_STROKE);
+		g.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
+		g.setStroke(PLAIN_STROKE);
+		bounds.grow(1, 1);
+		bounds.width++;
+		bounds.height++;
+	}
+
+	private void eraseRovingArrows() {
+		if (rovingBounds.isEmpty()) return;
+		clearRect(graphics[ROVING_ARROWS], rovingBounds);
+		canvas.layerChanged(ROVING_ARROWS, rovingBounds);
+		rovingBounds.setBounds(0, 0, -1, -1);
+	}
+
+	/**
+	 * Makes the specified area, in image pixels, of the image drawn on by <tt>g</tt> transparent.
+	 */
+	private void clearRect(Graphics2D g, Rectangle r) {
+		if (r.isEmpty()) return;
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(r.x, r.y, r.width, r.height);
+		g.setComposite(AlphaComposite.SrcOver);
+	}
+
+	private void clearText() {
+		electricText.setText("");
+		magneticText.setText("");
+		poyntingText.setText("");
 	}
 
 	private void setText(Poynt p) {
@@ -340,15 +591,32 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		poyntingText.append("     y: " + trunc(-p.poyntY * max.poyntMag()) + " W/m^2");
 	}
 
+	private void setRegionText(FieldStatistics.Region r) {
+		if (r.left > r.right) {
+			regionText.setText("  The selection is off the board");
+			return;
+		}
+		regionText.setText("  Selection: " + (r.right - r.left + 1) + " x " + (r.bottom - r.top + 1) + " points" + NEW_LINE);
+		regionText.append("     E energy: " + String.format("%.3g", r.getTotal(FieldStatistics.ELECTRIC_ENERGY)) + " J/m" + NEW_LINE);
+		regionText.append("     B energy: " + String.format("%.3g", r.getTotal(FieldStatistics.MAGNETIC_ENERGY)) + " J/m" + NEW_LINE);
+		regionText.append("     |S| mean: " + String.format("%.3g", r.getMean(FieldStatistics.POYNTING)) + " W/m^2" + NEW_LINE);
+		regionText.append("     |S| s.d.: " + String.format("%.3g", r.getStandardDeviation(FieldStatistics.POYNTING)) + " W/m^2");
+	}
+
 	private double trunc(double no) {
 		return (int) (no * pow(10, DIGITS)) / pow(10, DIGITS);
 	}
 
-	private void drawArrows(Point mouseLoc, Graphics2D g) {
-		g.setStroke(new BasicStroke(2.0f)); // extra-thick
+	/**
+	 * Draws the field arrows for the Poynt under the specified image pixel, and sets
+	 * <tt>bounds</tt> to the area drawn, in image pixels.
+	 */
+	private void drawArrows(int x, int y, Graphics2D g, Rectangle bounds) {
+		g.setStroke(ARROW_STROKE);
 
-		Poynt p = board.get(pixelToPoint(mouseLoc));
-		mouseLoc.translate(-offset.width, -offset.height);
+		Poynt p = pixelToPoynt(x, y);
+		int cx = x, cy = y;
+		int minX = -8, minY = -8, maxX = 9, maxY = 9; // the magnetic field circle and its stroke
 
 		// Draw electric field vector
 		g.setColor(ELECTRIC_COLOR);
@@ -356,8 +624,10 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 				/ (p.eFieldMag() * p.eFieldMag()) * 15 * signum(p.eFieldX)));
 		int k = (int) (p.eFieldY * 100 + (p.eFieldMag() == 0 ? 0 : p.eFieldY * p.eFieldY
 				/ (p.eFieldMag() * p.eFieldMag()) * 15 * signum(p.eFieldY)));
-		g.drawLine(mouseLoc.x, mouseLoc.y, mouseLoc.x + h, mouseLoc.y + k); // arrow-body
-		g.fillOval(mouseLoc.x + h - 2, mouseLoc.y + k - 2, 5, 5); // arrow-head
+		g.drawLine(cx, cy, cx + h, cy + k); // arrow-body
+		g.fillOval(cx + h - 2, cy + k - 2, 5, 5); // arrow-head
+		minX = min(minX, h - 3); maxX = max(maxX, h + 4);
+		minY = min(minY, k - 3); maxY = max(maxY, k + 4);
 
 		// Draw Poynting vector
 		g.setColor(POYNTING_COLOR);
@@ -365,20 +635,23 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 				/ (p.poyntMag() * p.poyntMag()) * 15 * signum(p.poyntX)));
 		k = (int) (p.poyntY * 100 + (p.poyntMag() == 0 ? 0 : p.poyntY * p.poyntY
 				/ (p.poyntMag() * p.poyntMag()) * 15 * signum(p.poyntY)));
-		g.drawLine(mouseLoc.x, mouseLoc.y, mouseLoc.x + h, mouseLoc.y + k); // arrow-body
-		g.fillOval(mouseLoc.x + h - 2, mouseLoc.y + k - 2, 5, 5); // arrow-head
+		g.drawLine(cx, cy, cx + h, cy + k); // arrow-body
+		g.fillOval(cx + h - 2, cy + k - 2, 5, 5); // arrow-head
+		minX = min(minX, h - 3); maxX = max(maxX, h + 4);
+		minY = min(minY, k - 3); maxY = max(maxY, k + 4);
 
 		// Draw magnetic field
 		g.setColor(MAGNETIC_COLOR); // Dark green
-		g.drawOval(mouseLoc.x - 6, mouseLoc.y - 6, 13, 13); // enclosing circle
+		g.drawOval(cx - 6, cy - 6, 13, 13); // enclosing circle
 		if (p.bFieldZ != 0)
 			if (p.bFieldDir()) { // (x) for into screen
-				g.drawLine(mouseLoc.x - 3, mouseLoc.y - 3, mouseLoc.x + 3, mouseLoc.y + 3);
-				g.drawLine(mouseLoc.x - 3, mouseLoc.y + 3, mouseLoc.x + 3, mouseLoc.y - 3);
+				g.drawLine(cx - 3, cy - 3, cx + 3, cy + 3);
+				g.drawLine(cx - 3, cy + 3, cx + 3, cy - 3);
 			} else // (.) for out of screen
-				g.fillOval(mouseLoc.x - 2, mouseLoc.y - 2, 5, 5);
+				g.fillOval(cx - 2, cy - 2, 5, 5);
 
-		g.setStroke(new BasicStroke());
+		g.setStroke(PLAIN_STROKE);
+		bounds.setBounds(x + minX, y + minY, maxX - minX, maxY - minY);
 	}
 
 	private String[] populateDropDownList() {
@@ -397,29 +670,370 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		return list.toArray(new String[list.size()]);
 	}
 
+	/**
+	 * Finds the point size at which the whole board fits in the main frame, and resets the view to
+	 * it. Boards too large for one pixel a point are fitted at a power of two below one.
+	 * 
+	 * @return the scale factor with which the board should draw itself
+	 */
 	private int determineScaleFactor() {
-		int scaleFactorX = (size.width - 2 * INSET) / board.size().width - 1;
-		int scaleFactorY = (size.height - 2 * INSET) / board.size().height - 1;
-		scaleFactor = max(min(scaleFactorX, scaleFactorY), 2);
-
-		int offsetX = (size.width - board.size().width * (scaleFactor + 1)) / 2 - 3;
-		int offsetY = (size.height - board.size().height * (scaleFactor + 1)) / 2;
-		for (Graphics2D g : graphics) {
-			g.translate(-offset.width, -offset.height);
-			g.translate(offsetX, offsetY);
-		}
+		int scaleFactorX = (size.width - 2 * INSET) / board.getWidth() - 1;
+		int scaleFactorY = (size.height - 2 * INSET) / board.getHeight() - 1;
+		int fit = min(scaleFactorX, scaleFactorY);
+		scaleFactor = max(fit, 2);
+		if (fit >= 0)
+			fitPointSize = fit + 1;
+		else
+			for (fitPointSize = 0.5; board.getWidth() * fitPointSize > size.width - 2 * INSET
+					|| board.getHeight() * fitPointSize > size.height - 2 * INSET; fitPointSize /= 2);
+		zoom = 0;
+
+		int offsetX = (int) (size.width - board.getWidth() * fitPointSize) / 2 - 3;
+		int offsetY = (int) (size.height - board.getHeight() * fitPointSize) / 2;
 		offset = new Dimension(offsetX, offsetY);
 
 		return scaleFactor;
 	}
 
+	/**
+	 * Returns the width in pixels of a board point in the current view.
+	 */
+	private double pointSize() {
+		return zoom >= 0 ? fitPointSize * (1 << zoom) : fitPointSize / (1 << -zoom);
+	}
+
+	/**
+	 * Returns how much drawings made at the board's scale factor must be scaled for the current view.
+	 */
+	private double drawingScale() {
+		return pointSize() / (scaleFactor + 1);
+	}
+
+	/**
+	 * Zooms the view to the specified level, keeping the board point under the specified pixel where
+	 * it is.
+	 */
+	private void zoomTo(int newZoom, int x, int y) {
+		int maxZoom = 0;
+		while (fitPointSize * (2 << maxZoom) <= MAX_POINT_SIZE)
+			maxZoom++;
+		newZoom = max(-ZOOM_OUT_STEPS, min(newZoom, maxZoom));
+		if (newZoom == zoom) return;
+		double oldPointSize = pointSize();
+		zoom = newZoom;
+		double ratio = pointSize() / oldPointSize;
+		offset.width = (int) Math.round(x - (x - offset.width) * ratio);
+		offset.height = (int) Math.round(y - (y - offset.height) * ratio);
+		viewChanged();
+	}
+
+	/**
+	 * Redraws every layer for a new view. The circuit is redrawn at once, the gradient from whatever
+	 * tiles are ready, and the slope field and flow lines on the solver thread. Arrows are cleared.
+	 */
+	private void viewChanged() {
+		viewChanged(false);
+	}
+
+	/**
+	 * Redraws every layer for a new view, leaving the gradient and field layers as they are until
+	 * they have been redrawn if <tt>keepStale</tt> is set.
+	 */
+	private void viewChanged(boolean keepStale) {
+		viewVersion++;
+		eraseRovingArrows();
+		clearLayer(CLICKED_ARROWS);
+		drawCircuit();
+		composeGradient(keepStale);
+		redrawFieldLayers(keepStale, SLOPE_FIELD, FLOW_LINES, ISOLINES, STREAMLINES);
+		if (animation != null)
+			animation.setView(offset.width, offset.height, pointSize());
+	}
+
+	/**
+	 * Fits the layers to a new size, in image pixels, keeping the board point at the center of the
+	 * view where it is. If the display's resolution has changed, by <tt>ratio</tt>, the view is
+	 * scaled to keep the board the same size on the screen. Until they are redrawn from the
+	 * calculated fields, the old layers are shown moved and scaled to match.
+	 */
+	private void resizeView(Dimension newSize, double ratio) {
+		AffineTransform stale = new AffineTransform();
+		stale.translate(newSize.width / 2.0, newSize.height / 2.0);
+		stale.scale(ratio, ratio);
+		stale.translate(-size.width / 2.0, -size.height / 2.0);
+		Point2D.Double origin = new Point2D.Double(offset.width, offset.height);
+		stale.transform(origin, origin);
+		offset = new Dimension((int) Math.round(origin.x), (int) Math.round(origin.y));
+		fitPointSize *= ratio;
+		size = newSize;
+
+		clearLayer(ROVING_ARROWS);
+		clearLayer(CLICKED_ARROWS);
+		if (animation != null) { // restarted with frames of the new size
+			animation.stop();
+			animation = null;
+			clearLayer(PARTICLES);
+			updateAnimation();
+		}
+		if (board == null) {
+			for (int layer = 0; layer < NO_OF_LAYERS; layer++)
+				clearLayer(layer);
+			return;
+		}
+		for (int layer = 0; layer < NO_OF_LAYERS; layer++)
+			if (images[layer] != null && layer != PARTICLES)
+				installLayer(layer, transformedLayer(images[layer], stale));
+		viewChanged(true);
+	}
+
+	/**
+	 * Returns a copy of a layer, of the current size, drawn through the specified transform.
+	 */
+	private BufferedImage transformedLayer(BufferedImage img, AffineTransform transform) {
+		BufferedImage copy = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = copy.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, transform, null);
+		g.dispose();
+		return copy;
+	}
+
+	/**
+	 * Starts, stops or changes the animation to match the animation check boxes. Only a calculated
+	 * board is animated.
+	 */
+	private void updateAnimation() {
+		boolean charges = animateCurrentCheck.isSelected(), energy = animateEnergyCheck.isSelected();
+		if ((charges || energy) && tiles != null) {
+			if (animation == null) {
+				animation = new CurrentAnimation(board, size.width, size.height, new CurrentAnimation.Listener() {
+					public void frameReady(CurrentAnimation source, BufferedImage frame) {
+						synchronized (CircuitSurveyor.this) {
+							animationFrame = frame;
+							frameSource = source;
+						}
+						SwingUtilities.invokeLater(showFrame);
+					}
+				});
+				animation.setView(offset.width, offset.height, pointSize());
+				animation.start();
+			}
+			animation.setShowing(charges, energy);
+			canvas.setLayerVisible(PARTICLES, true);
+		} else if (animation != null) {
+			animation.stop();
+			animation = null;
+			canvas.setLayerVisible(PARTICLES, false);
+			clearLayer(PARTICLES);
+		}
+	}
+
+	/**
+	 * Shows the newest frame of the animation. The frame's graphics are never needed, so it is put
+	 * straight in the canvas rather than installed like the other layers.
+	 */
+	private void showAnimationFrame() {
+		CurrentAnimation source;
+		BufferedImage frame;
+		synchronized (this) {
+			source = frameSource;
+			frame = animationFrame;
+			animationFrame = null;
+		}
+		if (source != animation || frame == null) return;
+		images[PARTICLES] = frame;
+		canvas.setLayer(PARTICLES, frame);
+		canvas.layerChanged(PARTICLES);
+		source.frameShown();
+	}
+
+	private void drawCircuit() {
+		renderer.drawCircuit(resetLayer(CIRCUIT));
+		renderer.drawCircuitLabels(resetLayer(CIRCUIT_LABELS));
+		canvas.layerChanged(CIRCUIT);
+		canvas.layerChanged(CIRCUIT_LABELS);
+	}
+
+	/**
+	 * Redraws the gradient layer from the calculated board's tiles. Tiles not yet cached are drawn
+	 * on the worker pool and added as they arrive.
+	 */
+	private void composeGradient() {
+		composeGradient(false);
+	}
+
+	/**
+	 * Redraws the gradient layer, over what it showed before if <tt>keepStale</tt> is set.
+	 */
+	private void composeGradient(boolean keepStale) {
+		if (tiles == null) return;
+		Graphics2D g = keepStale ? layerGraphics(GRADIENT) : resetLayer(GRADIENT);
+		Colormap colormap = (Colormap) gradientBox.getSelectedItem();
+		double pointSize = pointSize();
+		int[] range = tiles.getTileRange(pointSize);
+		int firstX = max(range[0], FieldTiles.tileOf(-offset.width));
+		int firstY = max(range[1], FieldTiles.tileOf(-offset.height));
+		int lastX = min(range[2], FieldTiles.tileOf(size.width - 1 - offset.width));
+		int lastY = min(range[3], FieldTiles.tileOf(size.height - 1 - offset.height));
+		for (int tx = firstX; tx <= lastX; tx++)
+			for (int ty = firstY; ty <= lastY; ty++) {
+				BufferedImage tile = tiles.getTile(colormap, pointSize, tx, ty, tileListener);
+				if (tile != null)
+					g.drawImage(tile, offset.width + tx * FieldTiles.TILE_SIZE,
+							offset.height + ty * FieldTiles.TILE_SIZE, null);
+			}
+		canvas.layerChanged(GRADIENT);
+	}
+
+	private void drawTile(BufferedImage tile, int tx, int ty) {
+		int x = offset.width + tx * FieldTiles.TILE_SIZE, y = offset.height + ty * FieldTiles.TILE_SIZE;
+		layerGraphics(GRADIENT).drawImage(tile, x, y, null);
+		canvas.layerChanged(GRADIENT, new Rectangle(x, y, FieldTiles.TILE_SIZE, FieldTiles.TILE_SIZE));
+	}
+
+	/**
+	 * Redraws the slope field, flow lines, isolines and streamlines of the calculated board for the
+	 * current view on the solver thread.
+	 */
+	private void redrawFieldLayers() {
+		redrawFieldLayers(SLOPE_FIELD, FLOW_LINES, ISOLINES, STREAMLINES);
+	}
+
+	/**
+	 * Redraws the specified field layers of the calculated board for the current view on the solver
+	 * thread. Redraws overtaken by another change of view are abandoned.
+	 */
+	private void redrawFieldLayers(int... layers) {
+		redrawFieldLayers(false, layers);
+	}
+
+	/**
+	 * Redraws the specified field layers, leaving them as they are until they have been redrawn if
+	 * <tt>keepStale</tt> is set.
+	 */
+	private void redrawFieldLayers(boolean keepStale, final int... layers) {
+		if (tiles == null) return;
+		if (!keepStale)
+			for (int layer : layers)
+				clearLayer(layer);
+		final int version = viewVersion;
+		final Dimension size = new Dimension(this.size);
+		final BoardRenderer solved = renderer;
+		final Dimension origin = new Dimension(offset);
+		final double scale = drawingScale();
+		final Colormap field = isolineField;
+		final double[] levels = isolineLevels;
+		final boolean texture = slopeTextureFlag;
+		SOLVER.execute(new Runnable() {
+			public void run() {
+				final BufferedImage[] images = new BufferedImage[layers.length];
+				for (int n = 0; n < layers.length; n++) {
+					if (version != viewVersion) return;
+					images[n] = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+					Graphics2D g = boardGraphics(images[n], origin, scale);
+					drawFieldLayer(solved, layers[n], g, field, levels, texture);
+					g.dispose();
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (version != viewVersion) return;
+						for (int n = 0; n < layers.length; n++)
+							installLayer(layers[n], images[n]);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Draws the specified field layer of a board, whose isolines are those of the specified field
+	 * and levels, and whose slope field is a texture or arrows.
+	 */
+	private static void drawFieldLayer(BoardRenderer renderer, int layer, Graphics2D g, Colormap field,
+			double[] levels, boolean texture) {
+		if (layer == SLOPE_FIELD && texture)
+			renderer.drawSlopeTexture(g);
+		else if (layer == SLOPE_FIELD)
+			renderer.drawSlopeField(g);
+		else if (layer == FLOW_LINES)
+			renderer.drawFlowLines(g);
+		else if (layer == ISOLINES)
+			renderer.drawIsolines(g, field, levels);
+		else if (layer == STREAMLINES)
+			renderer.drawStreamlines(g);
+	}
+
+	/**
+	 * Returns graphics for drawing the board, at its own scale factor, on the specified image with
+	 * board point (0, 0) at <tt>origin</tt> and everything scaled by <tt>scale</tt>.
+	 */
+	private static Graphics2D boardGraphics(BufferedImage img, Dimension origin, double scale) {
+		Graphics2D g = img.createGraphics();
+		g.translate(origin.width, origin.height);
+		if (scale != 1)
+			g.scale(scale, scale);
+		return g;
+	}
+
+	private static boolean isBoardLayer(int layer) {
+		return layer == CIRCUIT || layer == CIRCUIT_LABELS || layer == SLOPE_FIELD || layer == FLOW_LINES
+				|| layer == ISOLINES || layer == STREAMLINES;
+	}
+
 	private void clearLayer(int layer) {
-		frames[layer].removeAll();
-		BufferedImage img = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+		installLayer(layer, null);
+	}
+
+	/**
+	 * Clears the specified layer in place for redrawing and returns graphics for drawing on it with
+	 * the current view.
+	 */
+	private Graphics2D resetLayer(int layer) {
+		BufferedImage img = images[layer];
+		if (img == null)
+			return layerGraphics(layer);
+		Graphics2D g = layerGraphics(layer);
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, img.getWidth(), img.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+		installLayer(layer, null);
+		installLayer(layer, img);
+		return graphics[layer];
+	}
+
+	/**
+	 * Returns the graphics for drawing on the specified layer, creating the layer's image if it has
+	 * none yet. Board layers are drawn on with the current view.
+	 */
+	private Graphics2D layerGraphics(int layer) {
+		if (images[layer] == null)
+			installLayer(layer, new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB));
+		return graphics[layer];
+	}
+
+	/**
+	 * Replaces the images shown in the layers for which the specified array holds one.
+	 */
+	private void installLayers(BufferedImage[] layers) {
+		for (int layer = 0; layer < NO_OF_LAYERS; layer++)
+			if (layers[layer] != null)
+				installLayer(layer, layers[layer]);
+	}
+
+	/**
+	 * Replaces the image shown in the specified layer, which may be null to clear it.
+	 */
+	private void installLayer(int layer, BufferedImage img) {
+		if (graphics[layer] != null)
+			graphics[layer].dispose();
 		images[layer] = img;
-		frames[layer].add(new JLabel(new ImageIcon(img)));
-		graphics[layer] = img.createGraphics();
-		graphics[layer].translate(offset.width, offset.height);
+		graphics[layer] = null;
+		if (img != null)
+			graphics[layer] = isBoardLayer(layer) ? boardGraphics(img, offset, drawingScale())
+					: img.createGraphics();
+		canvas.setLayer(layer, img);
+		if (layer == ROVING_ARROWS)
+			rovingBounds.setBounds(0, 0, -1, -1);
 	}
 
 	private static void createAndShowGUI() {
@@ -432,7 +1046,6 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 
 		// Display the window.
 		frame.pack();
-		frame.setResizable(false);
 		frame.setVisible(true);
 	}
 
@@ -450,6 +1063,7 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 					BufferedReader old = addedFiles.put(fileName, br);
 					if (old == null && !boards.containsKey(fileName))
 						listBox.addItem(fileName);
+					boards.remove(fileName); // the file may have changed since it was last loaded
 				}
 				listBox.setSelectedItem(fileContents[0].getName());
 			}
@@ -462,20 +1076,92 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		if (board == null)
 			JOptionPane.showMessageDialog(mainFrame, "Please select a circuit.",
 					"Illegal Circuit Exception", JOptionPane.ERROR_MESSAGE);
-		else {
-			if (!board.isCalculated()) // if board has not yet been calculated
-				board.calculateCircuit();
-			board.drawGradient(graphics[GRADIENT]);
-			board.drawSlopeField(graphics[SLOPE_FIELD]);
-			board.drawFlowLines(graphics[FLOW_LINES]);
-			
-			for (JCheckBox checkbox : checkboxes) checkbox.setEnabled(true);
-			frames[ROVING_ARROWS].setVisible(true);
-			frames[CLICKED_ARROWS].setVisible(true);
-			arrowsAllowedFlag = true;
+		else if (solveWorker == null) {
+			okayButton.setEnabled(false);
+			progressBar.setIndeterminate(true);
+			progressBar.setString("Solving...");
+			solveWorker = new SolveWorker(renderer, (Colormap) gradientBox.getSelectedItem(), tiles != null);
+			SOLVER.execute(solveWorker);
+		}
+	}
+
+	/**
+	 * Called on the event dispatch thread with the layers drawn from a coarse preview solution. The
+	 * layer check boxes are enabled so the preview can be looked at, but the field readouts are not,
+	 * since the fields are still changing.
+	 */
+	private void runSolvePreview(SolveWorker worker, BufferedImage[] layers) {
+		if (worker != solveWorker || worker.isCancelled() || worker.board != board
+				|| worker.version != viewVersion) return;
+		installLayers(layers);
+		for (JCheckBox checkbox : checkboxes) checkbox.setEnabled(true);
+	}
+
+	/**
+	 * Called on the event dispatch thread once a solve has finished, failed, or been cancelled.
+	 */
+	private void runSolveDone(SolveWorker worker) {
+		if (worker != solveWorker) return;
+		solveWorker = null;
+		okayButton.setEnabled(true);
+		progressBar.setIndeterminate(false);
+		progressBar.setString("");
+		if (worker.isCancelled() || worker.board != board) return;
+
+		BufferedImage[] layers;
+		try {
+			layers = worker.get();
+		} catch (InterruptedException e) {
+			return;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			JOptionPane.showMessageDialog(mainFrame, "Unable to solve circuit: " + e.getCause(),
+					"Calculation Error", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		tiles = worker.tiles;
+		updateAnimation();
+		if (worker.version == viewVersion)
+			installLayers(layers);
+		else { // the view has changed since the layers were drawn
+			composeGradient();
+			redrawFieldLayers();
 		}
+
+		for (JCheckBox checkbox : checkboxes) checkbox.setEnabled(true);
+		gradientBox.setEnabled(true);
+		slopeFieldBox.setEnabled(true);
+		isolineBox.setEnabled(true);
+		isolineText.setEnabled(true);
+		canvas.setLayerVisible(ROVING_ARROWS, true);
+		canvas.setLayerVisible(CLICKED_ARROWS, true);
+		arrowsAllowedFlag = true;
+		regionText.setText(REGION_HINT);
 	}
 	
+	/**
+	 * Called once the canvas has stopped changing size or resolution.
+	 */
+	private void runResize() {
+		Dimension newSize = canvas.getLayerSize();
+		double newScale = canvas.getPixelScale();
+		if (newSize.width <= 0 || newSize.height <= 0 || newSize.equals(size) && newScale == pixelScale) return;
+		resizeView(newSize, newScale / pixelScale);
+		pixelScale = newScale;
+	}
+
+	private void runIsolineChange() {
+		try {
+			isolineLevels = Isolines.parseLevels(isolineText.getText());
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(mainFrame, "Please enter a number of levels, or levels from 0 to 1 separated by commas.",
+					"Illegal Isoline Levels", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		isolineField = (Colormap) isolineBox.getSelectedItem();
+		redrawFieldLayers(ISOLINES);
+	}
+
 	private void runListChange() {
 		// unselect and disable checkboxes
 		for (JCheckBox checkbox : checkboxes) {
@@ -484,18 +1170,33 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 			checkbox.setEnabled(false);
 		}
 		
+		gradientBox.setEnabled(false);
+		slopeFieldBox.setEnabled(false);
+		isolineBox.setEnabled(false);
+		isolineText.setEnabled(false);
+		
 		// disable roving arrows
 		arrowsAllowedFlag = false;
+		regionText.setText("");
+		
+		// abandon any solve in progress; the board keeps its currents for next time
+		if (solveWorker != null)
+			solveWorker.cancel(false);
+		tiles = null;
+		viewVersion++;
+		updateAnimation();
 		
 		for (int layer = 0; layer < NO_OF_LAYERS; layer++)
 			clearLayer(layer);
 		
 		String fileName = (String) listBox.getSelectedItem();
-		if (fileName.equals(LIST_BOX_TEXT))
+		if (fileName.equals(LIST_BOX_TEXT)) {
 			board = null;
-		
-		else {
-			board = boards.get(fileName);
+			renderer = null;
+
+		} else {
+			renderer = boards.get(fileName);
+			board = renderer != null ? renderer.getBoard() : null;
 			
 			if (board == null) {
 				BufferedReader br;
@@ -513,7 +1214,8 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 					}
 					try {
 						board = new CircuitBoard(br, fileName);
-						boards.put(fileName, board);
+						renderer = new BoardRenderer(board);
+						boards.put(fileName, renderer);
 	
 					} catch (IllegalCircuitException e) {
 						JOptionPane.showMessageDialog(mainFrame, e.getMessage(),
@@ -526,11 +1228,10 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 							JOptionPane.ERROR_MESSAGE);
 				}
 			}
-			board.setScaleFactor(determineScaleFactor());
-			scaleFactor = board.getScaleFactor();
+			renderer.setScaleFactor(determineScaleFactor());
+			scaleFactor = renderer.getScaleFactor();
 	
-			board.drawCircuit(graphics[CIRCUIT]);
-			board.drawCircuitLabels(graphics[CIRCUIT_LABELS]);
+			drawCircuit();
 		}
 		
 		circuitCheck.setEnabled(true);
@@ -541,9 +1242,97 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 
 	private void runClearButton() {
 		clearLayer(CLICKED_ARROWS);
-		frames[CLICKED_ARROWS].repaint();
+		canvas.layerChanged(CLICKED_ARROWS);
+		regionText.setText(arrowsAllowedFlag ? REGION_HINT : "");
 	}
 	
+	/**
+	 * Exports the circuit and field layers now shown as an SVG or PDF document, on the solver thread.
+	 */
+	private void runExportButton() {
+		if (board == null) {
+			JOptionPane.showMessageDialog(mainFrame, "Please select a circuit.",
+					"Illegal Circuit Exception", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		JFileChooser chooser = new JFileChooser();
+		FileNameExtensionFilter svg = new FileNameExtensionFilter("SVG image (*.svg)", "svg");
+		FileNameExtensionFilter pdf = new FileNameExtensionFilter("PDF document (*.pdf)", "pdf");
+		chooser.addChoosableFileFilter(svg);
+		chooser.addChoosableFileFilter(pdf);
+		chooser.setFileFilter(svg);
+		chooser.setSelectedFile(new File(((String) listBox.getSelectedItem()).replaceFirst("\\.txt$", "") + ".svg"));
+		if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) return;
+
+		File chosen = chooser.getSelectedFile();
+		String name = chosen.getName().toLowerCase();
+		final boolean pdfFlag = name.endsWith(".pdf") || !name.endsWith(".svg") && chooser.getFileFilter() == pdf;
+		if (!name.endsWith(".pdf") && !name.endsWith(".svg"))
+			chosen = new File(chosen.getPath() + (pdfFlag ? ".pdf" : ".svg"));
+		final File file = chosen;
+
+		// the field layers only once the board is calculated
+		final boolean[] layers = new boolean[NO_OF_LAYERS];
+		for (int layer : new int[] { CIRCUIT, CIRCUIT_LABELS, GRADIENT, SLOPE_FIELD, FLOW_LINES, ISOLINES, STREAMLINES })
+			layers[layer] = canvas.isLayerVisible(layer) && (layer == CIRCUIT || layer == CIRCUIT_LABELS || tiles != null);
+		final BoardRenderer exported = renderer;
+		final Colormap colormap = (Colormap) gradientBox.getSelectedItem();
+		final Colormap field = isolineField;
+		final double[] levels = isolineLevels;
+		final boolean texture = slopeTextureFlag;
+		SOLVER.execute(new Runnable() {
+			public void run() {
+				try {
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+					try {
+						exportLayers(exported, out, pdfFlag, layers, colormap, field, levels, texture);
+					} finally {
+						out.close();
+					}
+				} catch (final IOException e) {
+					e.printStackTrace();
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							JOptionPane.showMessageDialog(mainFrame, "Unable to export: " + e.getMessage(),
+									"I/O Exception", JOptionPane.ERROR_MESSAGE);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the specified layers of a board to a stream as an SVG or PDF document, the whole board
+	 * at its own scale factor. Lines and text are written as vectors, and the gradient as one image
+	 * of a pixel a point.
+	 */
+	private static void exportLayers(BoardRenderer renderer, OutputStream out, boolean pdf, boolean[] layers,
+			Colormap colormap, Colormap field, double[] levels, boolean texture) throws IOException {
+		CircuitBoard board = renderer.getBoard();
+		int scaleFactor = renderer.getScaleFactor();
+		double width = board.getWidth() * (scaleFactor + 1), height = board.getHeight() * (scaleFactor + 1);
+		VectorWriter writer = pdf ? new PdfWriter(out, width, height) : new SvgWriter(out, width, height);
+		VectorGraphics g = new VectorGraphics(writer);
+		g.translate(scaleFactor / 2, scaleFactor / 2); // point (0, 0)'s square at the corner of the page
+		for (int layer = 0; layer < NO_OF_LAYERS; layer++) {
+			if (!layers[layer]) continue;
+			if (layer == GRADIENT) {
+				BufferedImage image = new BufferedImage(board.getWidth(), board.getHeight(), BufferedImage.TYPE_INT_ARGB);
+				GradientRenderer.render(board, image, 0, 0, 0, colormap);
+				AffineTransform transform = AffineTransform.getTranslateInstance(-(scaleFactor / 2), -(scaleFactor / 2));
+				transform.scale(scaleFactor + 1, scaleFactor + 1);
+				g.drawImage(image, transform, null);
+			} else if (layer == CIRCUIT)
+				renderer.drawCircuit(g);
+			else if (layer == CIRCUIT_LABELS)
+				renderer.drawCircuitLabels(g);
+			else
+				drawFieldLayer(renderer, layer, g, field, levels, texture);
+		}
+		writer.finish();
+	}
+
 	private void runHelpButton() {
 		try {
 			URL resource = new URL(HELP_FILE_NAME);
@@ -556,10 +1345,146 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		}
 	}
 
-	private Point pixelToPoint(Point point) {
-		int x = (point.x - offset.width  + scaleFactor / 2) / (scaleFactor + 1);
-		int y = (point.y - offset.height + scaleFactor / 2) / (scaleFactor + 1);
-		return new Point(x, y);
+	/**
+	 * Returns the Poynt under the specified image pixel, or null if it is off the board.
+	 */
+	private Poynt pixelToPoynt(int px, int py) {
+		double pointSize = pointSize();
+		double half = pointSize >= 1 ? Math.floor((pointSize - 1) / 2) : 0; // as in BoardRenderer.toPixel
+		int x = (int) Math.floor((px - offset.width  + half) / pointSize);
+		int y = (int) Math.floor((py - offset.height + half) / pointSize);
+		if (x < 0 || y < 0 || x >= board.getWidth() || y >= board.getHeight())
+			return null;
+		return board.get(x, y);
+	}
+
+	/**
+	 * Returns the board coordinates of the point under the specified image pixel, which may be off
+	 * the board. Unlike <tt>pixelToPoynt</tt> this allocates, so it is kept out of the hover path.
+	 */
+	private Point pixelToPoint(int px, int py) {
+		double pointSize = pointSize();
+		double half = pointSize >= 1 ? Math.floor((pointSize - 1) / 2) : 0; // as in BoardRenderer.toPixel
+		return new Point((int) Math.floor((px - offset.width  + half) / pointSize),
+				(int) Math.floor((py - offset.height + half) / pointSize));
+	}
+
+	/*  *************** INNER CLASSES *************** */
+
+	/**
+	 * Solves a board and draws its gradient, slope field and flow lines into fresh images, all on the
+	 * solver thread. The images are swapped into their layers on the event dispatch thread once they
+	 * are complete, so a half-drawn layer is never shown.
+	 */
+	private class SolveWorker extends SwingWorker<BufferedImage[], String> implements SolveProgress {
+
+		private final CircuitBoard board;
+		private final BoardRenderer renderer;
+		private final Colormap colormap;
+		private final Dimension size, origin; // the view the layers are drawn for
+		private final double pointSize, scale;
+		private final int version;
+		private final Colormap isolineField;
+		private final double[] isolineLevels;
+		private final boolean slopeTextureFlag;
+		private FieldTiles tiles; // of the calculated board
+		private long lastUpdate;
+
+		/**
+		 * @param calculated whether the board is already calculated, in which case no previews are
+		 *            drawn and the gradient tiles are created afresh
+		 */
+		SolveWorker(BoardRenderer renderer, Colormap colormap, boolean calculated) {
+			this.renderer = renderer;
+			this.board = renderer.getBoard();
+			this.colormap = colormap;
+			this.size = new Dimension(CircuitSurveyor.this.size);
+			this.origin = new Dimension(offset);
+			this.pointSize = pointSize();
+			this.scale = drawingScale();
+			this.version = viewVersion;
+			this.isolineField = CircuitSurveyor.this.isolineField;
+			this.isolineLevels = CircuitSurveyor.this.isolineLevels;
+			this.slopeTextureFlag = CircuitSurveyor.this.slopeTextureFlag;
+			if (calculated) tiles = CircuitSurveyor.this.tiles;
+		}
+
+		public void update(String phase, int iteration, double error) {
+			long now = System.currentTimeMillis();
+			if (iteration > 0 && now - lastUpdate < PROGRESS_INTERVAL) return;
+			lastUpdate = now;
+			publish(iteration > 0 ? phase + " (" + iteration + ", " + (float) error + ")" : phase);
+		}
+
+		public void preview(int factor) {
+			if (isCancelled()) return;
+			final BufferedImage[] layers = drawLayers();
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					runSolvePreview(SolveWorker.this, layers);
+				}
+			});
+		}
+
+		@Override
+		protected BufferedImage[] doInBackground() throws CancellationException {
+			board.calculateCircuit(this);
+			update("Drawing fields", 0, 0);
+			if (tiles == null)
+				tiles = new FieldTiles(board, FieldTiles.DEFAULT_CAPACITY);
+			return drawLayers();
+		}
+
+		@Override
+		protected void process(List<String> phases) {
+			if (this == solveWorker)
+				progressBar.setString(phases.get(phases.size() - 1));
+		}
+
+		@Override
+		protected void done() {
+			runSolveDone(this);
+		}
+
+		/**
+		 * Draws the gradient, slope field and flow lines of the board as it now stands, and the
+		 * isolines, streamlines and slope field texture once it is calculated.
+		 */
+		private BufferedImage[] drawLayers() {
+			BufferedImage[] layers = new BufferedImage[NO_OF_LAYERS];
+
+			layers[GRADIENT] = newLayer();
+			if (tiles != null) // calculated; draw the gradient from (and into) the tile cache
+				drawTiles(layers[GRADIENT]);
+			else
+				GradientRenderer.renderView(new FieldPyramid(board, colormap), layers[GRADIENT], 0, 0,
+						size.width, size.height, -origin.width, -origin.height, pointSize);
+
+			for (int layer : tiles != null ? new int[] { SLOPE_FIELD, FLOW_LINES, ISOLINES, STREAMLINES }
+					: new int[] { SLOPE_FIELD, FLOW_LINES }) {
+				layers[layer] = newLayer();
+				Graphics2D g = boardGraphics(layers[layer], origin, scale);
+				drawFieldLayer(renderer, layer, g, isolineField, isolineLevels, slopeTextureFlag && tiles != null);
+				g.dispose();
+			}
+			return layers;
+		}
+
+		private BufferedImage newLayer() {
+			return new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+		}
+
+		private void drawTiles(BufferedImage img) {
+			Graphics2D g = img.createGraphics();
+			int[] range = tiles.getTileRange(pointSize);
+			for (int tx = max(range[0], FieldTiles.tileOf(-origin.width)); tx <= min(range[2],
+					FieldTiles.tileOf(size.width - 1 - origin.width)); tx++)
+				for (int ty = max(range[1], FieldTiles.tileOf(-origin.height)); ty <= min(range[3],
+						FieldTiles.tileOf(size.height - 1 - origin.height)); ty++)
+					g.drawImage(tiles.getTile(colormap, pointSize, tx, ty), origin.width + tx
+							* FieldTiles.TILE_SIZE, origin.height + ty * FieldTiles.TILE_SIZE, null);
+			g.dispose();
+		}
 	}
 
 	/*  *************** PUBLIC METHODS *************** */
@@ -571,10 +1496,22 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 			runOkayButton();
 		else if (e.getSource() == clearButton)
 			runClearButton();
+		else if (e.getSource() == exportButton)
+			runExportButton();
 		else if (e.getSource() == helpButton)
 			runHelpButton();
 		else if (e.getSource() == listBox)
 			runListChange();
+		else if (e.getSource() == gradientBox && gradientBox.isEnabled())
+			composeGradient();
+		else if (e.getSource() == slopeFieldBox && slopeFieldBox.isEnabled()) {
+			slopeTextureFlag = slopeFieldBox.getSelectedItem() == SLOPE_TEXTURE;
+			redrawFieldLayers(SLOPE_FIELD);
+		}
+		else if ((e.getSource() == isolineBox || e.getSource() == isolineText) && isolineBox.isEnabled())
+			runIsolineChange();
+		else if (e.getSource() == resizeTimer)
+			runResize();
 	}
 
 	public void itemStateChanged(ItemEvent e) {
@@ -583,19 +1520,25 @@ public class CircuitSurveyor extends JPanel implements ActionListener, ItemListe
 		boolean selected = e.getStateChange() == ItemEvent.SELECTED;
 
 		if (source == circuitCheck) {
-			frames[CIRCUIT].setVisible(selected);
+			canvas.setLayerVisible(CIRCUIT, selected);
 			if (!selected && circuitLabelCheck.isSelected())
 				circuitLabelCheck.doClick();
 		}
 
 		else if (source == circuitLabelCheck)
-			frames[CIRCUIT_LABELS].setVisible(selected);
+			canvas.setLayerVisible(CIRCUIT_LABELS, selected);
 		else if (source == gradientCheck)
-			frames[GRADIENT].setVisible(selected);
+			canvas.setLayerVisible(GRADIENT, selected);
 		else if (source == slopeFieldCheck)
-			frames[SLOPE_FIELD].setVisible(selected);
+			canvas.setLayerVisible(SLOPE_FIELD, selected);
 		else if (source == flowLinesCheck)
-			frames[FLOW_LINES].setVisible(selected);
+			canvas.setLayerVisible(FLOW_LINES, selected);
+		else if (source == isolinesCheck)
+			canvas.setLayerVisible(ISOLINES, selected);
+		else if (source == streamlinesCheck)
+			canvas.setLayerVisible(STREAMLINES, selected);
+		else if (source == animateCurrentCheck || source == animateEnergyCheck)
+			updateAnimation();
 		}
 
 	/*  *************** MAIN METHOD *************** */
@@ -0,0 +1,138 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * A reduced-resolution copy of a <tt>CircuitBoard</tt>'s potential, used to find a good first guess
+ * for the full relaxation quickly. Each node stands for a <tt>factor</tt> x <tt>factor</tt> block of
+ * Poynts. A block containing any part of the circuit is held at the average potential of its circuit
+ * Poynts; a block lying wholly inside a loop is relaxed; a block wholly outside every loop is ignored.
+ *
+ * @author Noah Morris
+ */
+public class CoarseGrid {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final byte OUTSIDE = 0, FIXED = 1, FREE = 2;
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final int factor;
+	private final int width, height;
+	private final double[] potential; // column-major, like the board
+	private final byte[] state;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Creates a grid at 1/<tt>factor</tt> the resolution of the specified board, whose perimeter
+	 * potentials must already be filled. Free nodes start at the specified potential.
+	 */
+	public CoarseGrid(CircuitBoard board, int factor, double initialPotential) {
+		this.factor = factor;
+		int boardWidth = board.getWidth(), boardHeight = board.getHeight();
+		width = (boardWidth + factor - 1) / factor;
+		height = (boardHeight + factor - 1) / factor;
+		potential = new double[width * height];
+		state = new byte[width * height];
+
+		for (int i = 0, k = 0; i < width; i++)
+			for (int j = 0; j < height; j++, k++) {
+				double sum = 0;
+				int onCircuit = 0;
+				boolean inside = false;
+				for (int x = i * factor; x < Math.min(i * factor + factor, boardWidth); x++)
+					for (int y = j * factor; y < Math.min(j * factor + factor, boardHeight); y++) {
+						Poynt p = board.get(x, y);
+						if (p.isOnCircuit()) {
+							sum += p.potential;
+							onCircuit++;
+						} else if (p.getLoopCount() > 0)
+							inside = true;
+					}
+				if (onCircuit > 0) {
+					state[k] = FIXED;
+					potential[k] = sum / onCircuit;
+				} else if (inside && i > 0 && j > 0 && i < width - 1 && j < height - 1) {
+					state[k] = FREE;
+					potential[k] = initialPotential;
+				}
+			}
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns whether a grid at 1/<tt>factor</tt> the resolution of the specified board would have
+	 * at least <tt>minimumSize</tt> nodes on each side.
+	 */
+	public static boolean fits(CircuitBoard board, int factor, int minimumSize) {
+		return board.getWidth() >= factor * minimumSize && board.getHeight() >= factor * minimumSize;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public int getFactor() {
+		return factor;
+	}
+
+	/**
+	 * Starts every free node at the potential interpolated from the specified coarser grid.
+	 */
+	public void seed(CoarseGrid coarser) {
+		double center = (factor - 1) / 2.0;
+		for (int i = 0, k = 0; i < width; i++)
+			for (int j = 0; j < height; j++, k++)
+				if (state[k] == FREE)
+					potential[k] = coarser.interpolate(i * factor + center, j * factor + center, potential[k]);
+	}
+
+	/**
+	 * Relaxes the free nodes until no node changes by more than the specified tolerance.
+	 *
+	 * @return the number of iterations taken
+	 */
+	public int relax(double tolerance, int maxIterations) {
+		int iteration = 0;
+		double error;
+		do {
+			error = 0;
+			for (int k = 0; k < potential.length; k++)
+				if (state[k] == FREE) {
+					double oldPotential = potential[k];
+					double newPotential = (potential[k - height] + potential[k + height]
+							+ potential[k - 1] + potential[k + 1]) / 4;
+					potential[k] = newPotential;
+					if (Math.abs(newPotential - oldPotential) > error)
+						error = Math.abs(newPotential - oldPotential);
+				}
+		} while (error > tolerance && iteration++ < maxIterations);
+		return iteration;
+	}
+
+	/**
+	 * Returns the potential at the specified board coordinates, interpolated bilinearly from the
+	 * surrounding nodes that are not outside the circuit, or <tt>otherwise</tt> if there are none.
+	 */
+	public double interpolate(double x, double y, double otherwise) {
+		double u = (x - (factor - 1) / 2.0) / factor;
+		double v = (y - (factor - 1) / 2.0) / factor;
+		int i0 = (int) Math.floor(u), j0 = (int) Math.floor(v);
+		double s = u - i0, t = v - j0;
+
+		double sum = 0, weight = 0;
+		for (int di = 0; di < 2; di++)
+			for (int dj = 0; dj < 2; dj++) {
+				int i = i0 + di, j = j0 + dj;
+				if (i < 0 || j < 0 || i >= width || j >= height) continue;
+				int k = i * height + j;
+				if (state[k] == OUTSIDE) continue;
+				double w = (di == 0 ? 1 - s : s) * (dj == 0 ? 1 - t : t);
+				sum += w * potential[k];
+				weight += w;
+			}
+		return weight > 0 ? sum / weight : otherwise;
+	}
+}
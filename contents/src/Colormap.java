@@ -0,0 +1,99 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Color;
+
+/**
+ * The scalar fields that can be shown as a gradient, each with a precomputed lookup table of packed
+ * ARGB colors running from white at 0 to the field's own color at 1. Field values are read from
+ * Poynts after normalization, so they already lie between 0 and 1 in magnitude.
+ *
+ * @author Noah Morris
+ */
+public enum Colormap {
+
+	POTENTIAL("Potential", new Color(55, 55, 55)) { // dark grey
+		public double value(Poynt p) {
+			return Math.abs(p.potential);
+		}
+	},
+	ELECTRIC("Electric field |E|", Color.BLUE) {
+		public double value(Poynt p) {
+			return p.eFieldMag();
+		}
+	},
+	MAGNETIC("Magnetic field |Bz|", new Color(0, 128, 0)) { // dark green
+		public double value(Poynt p) {
+			return Math.abs(p.bFieldZ);
+		}
+	},
+	POYNTING("Poynting vector |S|", new Color(255, 165, 0)) { // yellow-orange
+		public double value(Poynt p) {
+			return p.poyntMag();
+		}
+	};
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int LUT_SIZE = 4096;
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final String name;
+	private final Color color;
+	private final int[] lut = new int[LUT_SIZE];
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	private Colormap(String name, Color color) {
+		this.name = name;
+		this.color = color;
+		for (int i = 0; i < LUT_SIZE; i++) {
+			double v = (double) i / (LUT_SIZE - 1);
+			int red   = (int) (255 - v * (255 - color.getRed()));
+			int green = (int) (255 - v * (255 - color.getGreen()));
+			int blue  = (int) (255 - v * (255 - color.getBlue()));
+			lut[i] = 0xff000000 | (red << 16) | (green << 8) | blue;
+		}
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the field with the specified name, ignoring case.
+	 *
+	 * @throws IllegalArgumentException if there is no such field
+	 */
+	public static Colormap forName(String name) {
+		for (Colormap colormap : values())
+			if (colormap.name().equalsIgnoreCase(name)) return colormap;
+		throw new IllegalArgumentException("Unknown field " + name + ".");
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Returns this field's normalized magnitude at the specified Poynt, between 0 and 1.
+	 */
+	public abstract double value(Poynt p);
+
+	/**
+	 * Returns the packed ARGB color for the specified value, which is clamped to [0, 1].
+	 */
+	public int argb(double value) {
+		if (!(value > 0)) return lut[0]; // also catches NaN
+		if (value >= 1) return lut[LUT_SIZE - 1];
+		return lut[(int) (value * (LUT_SIZE - 1) + 0.5)];
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Particles showing the flow of current along the elements of a calculated <tt>CircuitBoard</tt> and,
+ * optionally, the flow of energy through the loops' interiors. Charges move along each element at a
+ * speed in proportion to its current; energy particles follow the Poynting vector and are born
+ * again somewhere else after a while.
+ *
+ * <p>The simulation takes fixed steps at 60 a second on a thread of its own. Particles are kept in
+ * arrays of primitives, one array per property, and are drawn straight onto the pixels of two
+ * frames that are used in turn, so animating allocates nothing. A frame is only drawn over once the
+ * other has been shown, so a frame on screen is never changed.
+ *
+ * @author Noah Morris
+ */
+public class CurrentAnimation {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int FRAMES_PER_SECOND = 60;
+
+	private static final double STEP = 1.0 / FRAMES_PER_SECOND; // seconds
+	private static final double CHARGE_SPACING = 4; // board points between charges on an element
+	private static final double CHARGE_CROSSING_TIME = 12; // seconds for the fastest charges to cross the board
+	private static final double ENERGY_CROSSING_TIME = 8; // seconds for energy particles to cross the board
+	private static final int POINTS_PER_ENERGY_PARTICLE = 48;
+	private static final int MAX_ENERGY_PARTICLES = 4000;
+	private static final double MIN_LIFE = 1, MAX_LIFE = 3; // seconds
+	private static final int CHARGE_RADIUS = 1, ENERGY_RADIUS = 0; // pixels either side of the center
+	private static final Color CHARGE_COLOR = new Color(255, 215, 0), // gold
+			ENERGY_COLOR = new Color(153, 76, 0); // brown, like the streamlines
+
+	/**
+	 * Runs the animations, one step at a time.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "CircuitSurveyor animation");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/*  *************** INNER INTERFACES *************** */
+
+	/**
+	 * Told when a new frame is ready to be shown. Called on the animation thread; once the frame is
+	 * showing, <tt>frameShown</tt> must be called.
+	 */
+	public interface Listener {
+		void frameReady(CurrentAnimation animation, BufferedImage frame);
+	}
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final PoyntingField field;
+	private final Listener listener;
+	private final Random random = new Random(1);
+
+	// elements: charges move from (startX, startY) by t x (unitX, unitY), 0 <= t < length
+	private final float[] startX, startY, unitX, unitY, length, speed;
+
+	// charges
+	private final int[] chargeElement;
+	private final float[] chargeT;
+
+	// energy particles
+	private final float[] energyX, energyY, energyLife;
+	private final int[] insideX, insideY; // Poynts where energy particles may be born
+	private final float energySpeed;
+	private final double[] direction = new double[2]; // scratch for step
+
+	// frames
+	private final BufferedImage[] frames = new BufferedImage[2];
+	private final int[][] pixels = new int[2][];
+	private final int[][] drawn = new int[2][]; // pixels last drawn on each frame
+	private final int[] drawnCount = new int[2];
+	private final int frameWidth, frameHeight;
+	private int next; // the frame to draw on next
+	private final AtomicBoolean shown = new AtomicBoolean(true); // the last frame handed out has been shown
+
+	private volatile int originX, originY;
+	private volatile double pointSize = 1;
+	private volatile boolean chargesFlag = true, energyFlag;
+	private ScheduledFuture<?> ticks;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Creates an animation of the specified calculated board whose frames are of the specified size.
+	 */
+	public CurrentAnimation(CircuitBoard board, int width, int height, Listener listener) {
+		this.listener = listener;
+		field = new PoyntingField(board);
+		int boardSize = Math.max(board.getWidth(), board.getHeight());
+
+		// elements and their charges
+		List<Element> elements = new ArrayList<Element>(board.elements());
+		int n = elements.size();
+		startX = new float[n];
+		startY = new float[n];
+		unitX = new float[n];
+		unitY = new float[n];
+		length = new float[n];
+		speed = new float[n];
+		double maxCurrent = 0;
+		for (Element elt : elements)
+			maxCurrent = Math.max(maxCurrent, elt.getCurrent());
+		int charges = 0;
+		for (int e = 0; e < n; e++) {
+			Element elt = elements.get(e);
+			startX[e] = elt.start.x;
+			startY[e] = elt.start.y;
+			unitX[e] = elt.isHorizontal() ? 1 : 0;
+			unitY[e] = elt.isHorizontal() ? 0 : 1;
+			length[e] = elt.size() - 1;
+			boolean forwards = elt.getAssignedDirection() == null || elt.getAssignedDirection() == Dir.getDirection(elt.start, elt.end);
+			speed[e] = (float) ((forwards ? 1 : -1) * (maxCurrent > 0 ? elt.getCurrent() / maxCurrent : 0)
+					* boardSize / CHARGE_CROSSING_TIME);
+			charges += Math.max(1, (int) (length[e] / CHARGE_SPACING));
+		}
+		chargeElement = new int[charges];
+		chargeT = new float[charges];
+		for (int e = 0, c = 0; e < n; e++) {
+			int count = Math.max(1, (int) (length[e] / CHARGE_SPACING));
+			for (int i = 0; i < count; i++, c++) {
+				chargeElement[c] = e;
+				chargeT[c] = length[e] * i / count;
+			}
+		}
+
+		// energy particles
+		List<Poynt> inside = new ArrayList<Poynt>();
+		for (Poynt p : board)
+			if (p.getLoopCount() > 0 && !p.isOnCircuit())
+				inside.add(p);
+		insideX = new int[inside.size()];
+		insideY = new int[inside.size()];
+		for (int i = 0; i < insideX.length; i++) {
+			insideX[i] = inside.get(i).x;
+			insideY[i] = inside.get(i).y;
+		}
+		int particles = insideX.length == 0 ? 0 : Math.min(MAX_ENERGY_PARTICLES, Math.max(1, insideX.length / POINTS_PER_ENERGY_PARTICLE));
+		energyX = new float[particles];
+		energyY = new float[particles];
+		energyLife = new float[particles];
+		for (int i = 0; i < particles; i++)
+			respawn(i);
+		energySpeed = (float) (boardSize / ENERGY_CROSSING_TIME);
+
+		// frames
+		frameWidth = width;
+		frameHeight = height;
+		int side = 2 * Math.max(CHARGE_RADIUS, ENERGY_RADIUS) + 1;
+		for (int f = 0; f < 2; f++) {
+			frames[f] = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			pixels[f] = ((DataBufferInt) frames[f].getRaster().getDataBuffer()).getData();
+			drawn[f] = new int[(charges + particles) * side * side];
+		}
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Sets where the board is drawn: board point (0, 0) at pixel (<tt>originX</tt>,
+	 * <tt>originY</tt>), points <tt>pointSize</tt> pixels apart.
+	 */
+	public void setView(int originX, int originY, double pointSize) {
+		this.originX = originX;
+		this.originY = originY;
+		this.pointSize = pointSize;
+	}
+
+	/**
+	 * Sets which particles are shown: charges along the elements, energy through the interiors, or
+	 * both.
+	 */
+	public void setShowing(boolean charges, boolean energy) {
+		chargesFlag = charges;
+		energyFlag = energy;
+	}
+
+	public synchronized void start() {
+		if (ticks == null)
+			ticks = TIMER.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					tick();
+				}
+			}, 0, 1000000000L / FRAMES_PER_SECOND, TimeUnit.NANOSECONDS);
+	}
+
+	public synchronized void stop() {
+		if (ticks != null) {
+			ticks.cancel(false);
+			ticks = null;
+		}
+	}
+
+	/**
+	 * Tells the animation that the frame last handed to the listener is now showing, so the other
+	 * may be drawn over.
+	 */
+	public void frameShown() {
+		shown.set(true);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void tick() {
+		step();
+		if (shown.compareAndSet(true, false)) {
+			BufferedImage frame = render();
+			listener.frameReady(this, frame);
+		}
+	}
+
+	/**
+	 * Moves every particle on by one fixed step.
+	 */
+	private void step() {
+		float dt = (float) STEP;
+		for (int c = 0; c < chargeT.length; c++) {
+			int e = chargeElement[c];
+			float t = chargeT[c] + speed[e] * dt;
+			if (t >= length[e]) t -= length[e];
+			else if (t < 0) t += length[e];
+			chargeT[c] = t;
+		}
+
+		if (!energyFlag) return;
+		double[] v = direction;
+		float distance = energySpeed * dt;
+		for (int i = 0; i < energyX.length; i++) {
+			energyLife[i] -= dt;
+			// one midpoint step
+			if (energyLife[i] <= 0 || !field.direction(energyX[i], energyY[i], 1, v)) {
+				respawn(i);
+				continue;
+			}
+			double mx = energyX[i] + distance / 2 * v[0], my = energyY[i] + distance / 2 * v[1];
+			if (!field.direction(mx, my, 1, v)) {
+				respawn(i);
+				continue;
+			}
+			energyX[i] += (float) (distance * v[0]);
+			energyY[i] += (float) (distance * v[1]);
+		}
+	}
+
+	private void respawn(int i) {
+		int p = random.nextInt(insideX.length);
+		energyX[i] = insideX[p] + random.nextFloat() - 0.5f;
+		energyY[i] = insideY[p] + random.nextFloat() - 0.5f;
+		energyLife[i] = (float) (MIN_LIFE + random.nextDouble() * (MAX_LIFE - MIN_LIFE));
+	}
+
+	/**
+	 * Draws the particles on the next frame, erasing only what was drawn on it last time.
+	 *
+	 * @return the frame
+	 */
+	private BufferedImage render() {
+		int f = next;
+		next = 1 - next;
+		int[] px = pixels[f], old = drawn[f];
+		for (int k = 0; k < drawnCount[f]; k++)
+			px[old[k]] = 0;
+		drawnCount[f] = 0;
+
+		int ox = originX, oy = originY;
+		double size = pointSize;
+		if (chargesFlag) {
+			int argb = CHARGE_COLOR.getRGB();
+			for (int c = 0; c < chargeT.length; c++) {
+				int e = chargeElement[c];
+				float t = chargeT[c];
+				plot(f, ox + (int) Math.round((startX[e] + t * unitX[e]) * size),
+						oy + (int) Math.round((startY[e] + t * unitY[e]) * size), CHARGE_RADIUS, argb);
+			}
+		}
+		if (energyFlag) {
+			int argb = ENERGY_COLOR.getRGB();
+			for (int i = 0; i < energyX.length; i++)
+				plot(f, ox + (int) Math.round(energyX[i] * size), oy + (int) Math.round(energyY[i] * size),
+						ENERGY_RADIUS, argb);
+		}
+		return frames[f];
+	}
+
+	private void plot(int f, int x, int y, int radius, int argb) {
+		int[] px = pixels[f], list = drawn[f];
+		for (int v = y - radius; v <= y + radius; v++) {
+			if (v < 0 || v >= frameHeight) continue;
+			for (int u = x - radius; u <= x + radius; u++) {
+				if (u < 0 || u >= frameWidth) continue;
+				int k = v * frameWidth + u;
+				if (px[k] == 0)
+					list[drawnCount[f]++] = k;
+				px[k] = argb;
+			}
+		}
+	}
+}
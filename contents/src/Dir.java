@@ -3,50 +3,100 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Point;
+/**
+ * The four compass directions on a <tt>CircuitBoard</tt>. Ordinals run clockwise from <tt>WEST</tt>,
+ * so that every flip, turn, neighbor offset and rightmost-neighbor search is a table lookup and no
+ * <tt>Dir</tt> is ever allocated after class initialization.
+ *
+ * @author Noah Morris
+ */
+public enum Dir {
 
-public class Dir {
+	WEST(-1, 0), NORTH(0, -1), EAST(1, 0), SOUTH(0, 1);
 
 	/*  *************** CLASS CONSTANTS *************** */
 
-	public static final Dir WEST = new Dir(0);
-	public static final Dir NORTH = new Dir(1);
-	public static final Dir EAST = new Dir(2);
-	public static final Dir SOUTH = new Dir(3);
-	
 	public static final int LEFT = -1;
 	public static final int STRAIGHT = 0;
 	public static final int RIGHT = 1;
 
+	/**
+	 * All four directions, indexed by ordinal. Unlike <tt>values()</tt>, this array is not cloned on
+	 * every access; it must never be modified.
+	 */
+	static final Dir[] ALL = values();
+
+	private static final int NO_TURN = Integer.MIN_VALUE;
+
+	/**
+	 * <tt>TURNS[a][b]</tt> is the turn (<tt>LEFT</tt>, <tt>STRAIGHT</tt> or <tt>RIGHT</tt>) taken when
+	 * heading <tt>a</tt> and then heading <tt>b</tt>, or <tt>NO_TURN</tt> for a reversal.
+	 */
+	private static final int[][] TURNS = new int[4][4];
+
+	static {
+		for (Dir d : ALL) {
+			d.flip = ALL[(d.ordinal() + 2) % 4];
+			d.left = ALL[(d.ordinal() + 3) % 4];
+			d.right = ALL[(d.ordinal() + 1) % 4];
+			d.rightmost = new Dir[] { d.right, d, d.left };
+			d.isHorizontal = d.dy == 0;
+			d.signum = d.ordinal() < 2 ? -1 : 1;
+		}
+		for (Dir a : ALL) {
+			TURNS[a.ordinal()][a.left.ordinal()] = LEFT;
+			TURNS[a.ordinal()][a.ordinal()] = STRAIGHT;
+			TURNS[a.ordinal()][a.right.ordinal()] = RIGHT;
+			TURNS[a.ordinal()][a.flip.ordinal()] = NO_TURN;
+		}
+	}
+
 	/*  *************** DATA MEMBERS *************** */
 
-	protected int dir;
+	/**
+	 * The offset to the neighboring point in this direction.
+	 */
+	public final int dx, dy;
+
+	private Dir flip;
+	private Dir left;
+	private Dir right;
+	private Dir[] rightmost; // order in which to look for the rightmost neighbor
+	private boolean isHorizontal;
+	private int signum;
 
 	/*  *************** CONSTRUCTOR *************** */
 
-	public Dir(int direction) {
-		this.dir = direction;
+	private Dir(int dx, int dy) {
+		this.dx = dx;
+		this.dy = dy;
 	}
 
 	/*  *************** STATIC METHODS *************** */
 
-	public static Dir getDirection(Point a, Point b) {
-		if (isHorizontal(a, b)) {
-			if (a.x < b.x)
+	public static Dir getDirection(Poynt a, Poynt b) {
+		return getDirection(a.x, a.y, b.x, b.y);
+	}
+
+	public static Dir getDirection(int ax, int ay, int bx, int by) {
+		if (ay == by) {
+			if (ax < bx)
 				return EAST;
-			else if (a.x > b.x)
+			else if (ax > bx)
 				return WEST;
-			else throw new DirException("Error finding direction from " + a + " to " + b + ".");
-		} else {
-			if (a.y < b.y)
+		} else if (ax == bx) {
+			if (ay < by)
 				return SOUTH;
-			else if (a.y > b.y)
+			else
 				return NORTH;
-			else throw new DirException("Error finding direction from " + a + " to " + b + ".");
-		}
+		} else
+			throw new DirException("Points (" + ax + "," + ay + ") and (" + bx + "," + by
+					+ ") are positioned neither horizontally nor vertically.");
+		throw new DirException("Error finding direction from (" + ax + "," + ay + ") to (" + bx + ","
+				+ by + ").");
 	}
 
-	public static boolean isHorizontal(Point a, Point b) {
+	public static boolean isHorizontal(Poynt a, Poynt b) {
 		boolean v = a.x == b.x;
 		boolean h = a.y == b.y;
 		if (h)
@@ -56,7 +106,7 @@ public class Dir {
 		else throw new DirException("Points " + a + " and " + b + " are positioned neither horizontally nor vertically.");
 	}
 
-	public static boolean isVertical(Point a, Point b) {
+	public static boolean isVertical(Poynt a, Poynt b) {
 		return !isHorizontal(a, b);
 	}
 
@@ -64,67 +114,49 @@ public class Dir {
 		return getTurn(getDirection(p1, p2), getDirection(p2, p3));
 	}
 
-	private static int getTurn(Dir d1, Dir d2) {
-		if (d1.equals(NORTH)) {
-			if (d2.equals(WEST)) return LEFT;
-			else if (d2.equals(NORTH)) return STRAIGHT;
-			else if (d2.equals(EAST)) return RIGHT;
-		} else if (d1.equals(SOUTH)) {
-			if (d2.equals(EAST)) return LEFT;
-			else if (d2.equals(SOUTH)) return STRAIGHT;
-			else if (d2.equals(WEST)) return RIGHT;
-		} else if (d1.equals(WEST)) {
-			if (d2.equals(SOUTH)) return LEFT;
-			else if (d2.equals(WEST)) return STRAIGHT;
-			else if (d2.equals(NORTH)) return RIGHT;
-		} else if (d1.equals(EAST)) {
-			if (d2.equals(NORTH)) return LEFT;
-			else if (d2.equals(EAST)) return STRAIGHT;
-			else if (d2.equals(SOUTH)) return RIGHT;
-		}
-		throw new DirException(d1 + " to " + d2 + " is not a valid turn.");
+	public static int getTurn(Dir d1, Dir d2) {
+		int turn = TURNS[d1.ordinal()][d2.ordinal()];
+		if (turn == NO_TURN)
+			throw new DirException(d1 + " to " + d2 + " is not a valid turn.");
+		return turn;
 	}
 
 	/*  *************** PUBLIC METHODS *************** */
 
-	@Override
-	public String toString() {
-		if (equals(NORTH)) return "NORTH";
-		else if (equals(SOUTH)) return "SOUTH";
-		else if (equals(WEST)) return "WEST";
-		else if (equals(EAST)) return "EAST";
-		else throw new DirException(dir + " is not a valid direction.");
-	}
-
 	public boolean isHorizontal() {
-		return equals(EAST) || equals(WEST);
+		return isHorizontal;
 	}
 
 	public boolean isVertical() {
-		return !isHorizontal();
-	}
-
-	@Override
-	public int hashCode() {
-		return Integer.valueOf(dir).hashCode();
-	}
-
-	@Override
-	public boolean equals(Object other) {
-		if (other instanceof Dir)
-			return ((Dir) other).dir == this.dir;
-		return false;
+		return !isHorizontal;
 	}
 
+	/**
+	 * Returns -1 for <tt>WEST</tt> and <tt>NORTH</tt>, +1 for <tt>EAST</tt> and <tt>SOUTH</tt>.
+	 */
 	public int signum() {
-		return (int) Math.signum(dir - 1.5);
+		return signum;
 	}
 
 	public Dir flip() {
-		return new Dir((dir + 2) % 4);
+		return flip;
 	}
-	
+
 	public Dir turn(int turn) {
-		return new Dir((dir + turn + 4) % 4);
+		switch (turn) {
+		case LEFT: return left;
+		case STRAIGHT: return this;
+		case RIGHT: return right;
+		default: return ALL[(ordinal() + turn % 4 + 4) % 4];
+		}
+	}
+
+	/**
+	 * Returns the directions to try, in order of preference, when following the rightmost path out of
+	 * a point entered heading in this direction: right, straight, then left. The returned array is
+	 * shared and must not be modified.
+	 */
+	Dir[] rightmostOrder() {
+		return rightmost;
 	}
 }
@@ -3,10 +3,9 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Graphics;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 public abstract class Element implements Iterable<Poynt> {
 
@@ -14,10 +13,9 @@ public abstract class Element implements Iterable<Poynt> {
 
 	protected Poynt start;
 	protected Poynt end;
-	private int length;
-	private boolean isHorizontal;
+	private int length; // in cells; the element covers length + 1 Poynts
+	private Dir direction; // from start to end; always EAST or SOUTH
 	private DirTable directions;
-	protected LinkedList<Poynt> poynts;
 	private double current;
 	private Dir assignedDirection;
 
@@ -30,43 +28,26 @@ public abstract class Element implements Iterable<Poynt> {
 		start = Poynt.minimum(s, e);
 		end = start.equals(s) ? e : s;
 		try {
-			isHorizontal = Dir.getDirection(s, e).isHorizontal();
+			direction = Dir.getDirection(start, end);
 		} catch (DirException ex) {
 			throw new IllegalCircuitException("Element must be positioned either horizontally or vertically.");
 		}
 		
-		if (isHorizontal)
-			length = e.x - s.x;
+		if (direction.isHorizontal())
+			length = end.x - start.x;
 		else
-			length = e.y - s.y;
-		assert length >= 0;
+			length = end.y - start.y;
+		assert length > 0;
 		
-		poynts = new LinkedList<Poynt>();
-		poynts.add(start);
-		Poynt prev, next;
-		prev = next = start;
-		start.setIsOnCircuit();
-		start.addLoop();
-		start.addElement(this);
-		while (!next.equals(end)) {
-			try {
-				if (isHorizontal)
-					next = prev.get(Dir.EAST);
-				else
-					next = prev.get(Dir.SOUTH);
-			} catch (IndexOutOfBoundsException ex) {
-				System.out.println("THE ERROR OCCURED DURING THE CONSTRUCTION OF ELEMENT " + this + ".");
-				throw ex;
-			}
-			poynts.add(next);
-			next.setIsOnCircuit();
-			next.addLoop();
-			next.addElement(this);
-			prev.addNeighbor(next);
-			next.addNeighbor(prev);
-			prev = next;
-			assert length == poynts.size();
-			directions = new DirTable();
+		directions = new DirTable();
+		Dir back = direction.flip();
+		for (int i = 0; i <= length; i++) {
+			Poynt p = get(i);
+			p.setIsOnCircuit();
+			p.addLoop();
+			p.addElement(this);
+			if (i > 0) p.addNeighbor(back);
+			if (i < length) p.addNeighbor(direction);
 		}
 	}
 	
@@ -76,14 +57,26 @@ public abstract class Element implements Iterable<Poynt> {
 
 	public abstract char getChar();
 
-	public abstract void draw(Graphics g, int scaleFactor);
-	
 	public abstract boolean isWire();
 
 	/*  *************** PUBLIC METHODS *************** */
 
 	public boolean isHorizontal() {
-		return isHorizontal;
+		return direction.isHorizontal();
+	}
+
+	/**
+	 * Returns the number of Poynts this element covers, endpoints included.
+	 */
+	public int size() {
+		return length + 1;
+	}
+
+	/**
+	 * Returns the <tt>i</tt>th Poynt of this element, counting from <tt>start</tt>.
+	 */
+	public Poynt get(int i) {
+		return start.getBoard().get(start.x + i * direction.dx, start.y + i * direction.dy);
 	}
 
 	public Dir getDirection(Loop l) {
@@ -123,18 +116,63 @@ public abstract class Element implements Iterable<Poynt> {
 
 	@Override
 	public int hashCode() {
-		return poynts.hashCode();
+		return 31 * start.hashCode() + end.hashCode();
 	}
 
 	public Iterator<Poynt> iterator() {
-		return poynts.iterator();
+		return iterate(true);
 	}
 	
 	public Iterator<Poynt> iterateClockwise(Loop loop) {
-		if(directions.get(loop).signum() > 0)
-			return poynts.iterator();
-		else
-			return poynts.descendingIterator();
+		return iterate(directions.get(loop).signum() > 0);
+	}
+
+	private Iterator<Poynt> iterate(final boolean forward) {
+		return new Iterator<Poynt>() {
+			int i = 0;
+
+			public boolean hasNext() {
+				return i <= length;
+			}
+
+			public Poynt next() {
+				if (i > length) throw new NoSuchElementException();
+				return get(forward ? i++ : length - i++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Sets the potential of every Poynt of this element, walking clockwise around the specified loop:
+	 * the first Poynt gets <tt>potential</tt> and each following one <tt>increment</tt> more.
+	 * 
+	 * @return the potential one increment past the last Poynt
+	 */
+	protected double setPotentials(double potential, double increment, Loop loop) {
+		CircuitBoard board = start.getBoard();
+		boolean forward = directions.get(loop).signum() > 0;
+		if (direction.isHorizontal()) {
+			int y = start.y;
+			if (forward)
+				for (int x = start.x; x <= end.x; x++, potential += increment)
+					board.get(x, y).potential = potential;
+			else
+				for (int x = end.x; x >= start.x; x--, potential += increment)
+					board.get(x, y).potential = potential;
+		} else {
+			int x = start.x;
+			if (forward)
+				for (int y = start.y; y <= end.y; y++, potential += increment)
+					board.get(x, y).potential = potential;
+			else
+				for (int y = end.y; y >= start.y; y--, potential += increment)
+					board.get(x, y).potential = potential;
+		}
+		return potential;
 	}
 
 	public boolean hasDirectionAssigned() {
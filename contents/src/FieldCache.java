@@ -0,0 +1,281 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of computed fields, so that a circuit solved once opens instantly from then on,
+ * even after a restart. Entries are named by a hash of the circuit file's contents together with
+ * the solver's settings, so an edited file or a changed solver never picks up stale results.
+ *
+ * <p>Each entry holds a 20-byte header (magic 'CSF1', board width, height, and two reserved ints),
+ * the six field maxima, and then the normalized potential, E<sub>x</sub>, E<sub>y</sub>,
+ * B<sub>z</sub>, S<sub>x</sub> and S<sub>y</sub> arrays, each a column-major block of doubles. Entries
+ * are memory-mapped when read back.
+ *
+ * <p>The cache lives in <tt>~/.circuitsurveyor/cache</tt>, or wherever the
+ * <tt>circuitsurveyor.cache</tt> system property points; setting that property to an empty string
+ * turns the cache off. The entries are kept to 512 MB in all, or as many megabytes as the
+ * <tt>circuitsurveyor.cache.limit</tt> system property says, the least recently used deleted first;
+ * an entry's modification time is set each time it is read, to mark its use. Any failure to read
+ * or write the cache is ignored and the circuit is simply solved again.
+ *
+ * @author Noah Morris
+ */
+public class FieldCache {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int MAGIC = ('C' << 24) | ('S' << 16) | ('F' << 8) | '1';
+	private static final int HEADER_SIZE = 20, NO_OF_MAXIMA = 6, NO_OF_FIELDS = 6;
+	private static final String SUFFIX = ".csf";
+	private static final long DEFAULT_LIMIT = 512L << 20; // bytes
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the cache key for a circuit with the specified text contents. The text is hashed as
+	 * UTF-8, so the same circuit has the same key however it was read.
+	 */
+	public static String key(CharSequence contents) {
+		MessageDigest digest = newDigest();
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer in = CharBuffer.wrap(contents);
+		ByteBuffer out = ByteBuffer.allocate(8192);
+		CoderResult result;
+		do {
+			result = encoder.encode(in, out, true);
+			out.flip();
+			digest.update(out);
+			out.clear();
+		} while (result.isOverflow());
+		encoder.flush(out); // nothing is held back in UTF-8, so this never overflows
+		out.flip();
+		digest.update(out);
+		return finish(digest);
+	}
+
+	/**
+	 * Returns the cache key for a circuit with the specified binary contents. Text circuits are
+	 * keyed by their text, with <tt>key(CharSequence)</tt>, whatever form they were read in.
+	 */
+	public static String key(ByteBuffer contents) {
+		MessageDigest digest = newDigest();
+		digest.update(contents.duplicate());
+		return finish(digest);
+	}
+
+	/**
+	 * Fills in the fields of the specified board from the cache, if it holds an entry for the board.
+	 * The board's currents and perimeter potentials must already have been calculated.
+	 *
+	 * @return whether the fields were found in the cache
+	 */
+	public static boolean load(CircuitBoard board) {
+		File file = getFile(board);
+		if (file == null || !file.isFile()) return false;
+		int width = board.getWidth(), height = board.getHeight();
+		try {
+			FileInputStream in = new FileInputStream(file);
+			ByteBuffer bytes;
+			try {
+				FileChannel channel = in.getChannel();
+				if (channel.size() != HEADER_SIZE + 8L * (NO_OF_MAXIMA + (long) NO_OF_FIELDS * width * height))
+					return false;
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				in.close();
+			}
+			if (bytes.getInt(0) != MAGIC || bytes.getInt(4) != width || bytes.getInt(8) != height)
+				return false;
+
+			bytes.position(HEADER_SIZE);
+			DoubleBuffer doubles = bytes.slice().asDoubleBuffer();
+			Poynt max = board.getMax();
+			max.potential = doubles.get();
+			max.eFieldX = doubles.get();
+			max.eFieldY = doubles.get();
+			max.bFieldZ = doubles.get();
+			max.poyntX = doubles.get();
+			max.poyntY = doubles.get();
+
+			int cells = width * height;
+			int potential = NO_OF_MAXIMA, eFieldX = potential + cells, eFieldY = eFieldX + cells,
+				bFieldZ = eFieldY + cells, poyntX = bFieldZ + cells, poyntY = poyntX + cells;
+			for (int i = 0, k = 0; i < width; i++)
+				for (int j = 0; j < height; j++, k++) {
+					Poynt p = board.get(i, j);
+					p.potential = doubles.get(potential + k);
+					p.eFieldX = doubles.get(eFieldX + k);
+					p.eFieldY = doubles.get(eFieldY + k);
+					p.bFieldZ = doubles.get(bFieldZ + k);
+					p.poyntX = doubles.get(poyntX + k);
+					p.poyntY = doubles.get(poyntY + k);
+					p.mark(Double.NaN);
+				}
+			file.setLastModified(System.currentTimeMillis()); // used now, for trim()
+			return true;
+		} catch (IOException e) {
+			return false;
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the fields of the specified, fully calculated board to the cache.
+	 */
+	public static void store(CircuitBoard board) {
+		File file = getFile(board);
+		if (file == null) return;
+		File temp = null;
+		try {
+			// A temporary file of its own, so boards stored at once never write into each other's
+			temp = File.createTempFile(board.getContentKey(), ".tmp", file.getParentFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			try {
+				write(board, out);
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			trim(file);
+		} catch (IOException e) {
+			// Leave the cache as it was; the board is solved again next time.
+		} catch (SecurityException e) {
+		} finally {
+			if (temp != null) temp.delete(); // if it was not moved into place
+		}
+	}
+
+	/**
+	 * Writes the fields of the specified, fully calculated board to a stream, as a cache entry.
+	 */
+	public static void write(CircuitBoard board, DataOutputStream out) throws IOException {
+		int width = board.getWidth(), height = board.getHeight();
+		out.writeInt(MAGIC);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(0);
+		out.writeInt(0);
+		Poynt max = board.getMax();
+		out.writeDouble(max.potential);
+		out.writeDouble(max.eFieldX);
+		out.writeDouble(max.eFieldY);
+		out.writeDouble(max.bFieldZ);
+		out.writeDouble(max.poyntX);
+		out.writeDouble(max.poyntY);
+		for (int field = 0; field < NO_OF_FIELDS; field++)
+			for (int i = 0; i < width; i++)
+				for (int j = 0; j < height; j++) {
+					Poynt p = board.get(i, j);
+					switch (field) {
+					case 0: out.writeDouble(p.potential); break;
+					case 1: out.writeDouble(p.eFieldX); break;
+					case 2: out.writeDouble(p.eFieldY); break;
+					case 3: out.writeDouble(p.bFieldZ); break;
+					case 4: out.writeDouble(p.poyntX); break;
+					default: out.writeDouble(p.poyntY); break;
+					}
+				}
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private static File getFile(CircuitBoard board) {
+		try {
+			String dirName = System.getProperty("circuitsurveyor.cache");
+			if (dirName == null)
+				dirName = System.getProperty("user.home") + File.separator + ".circuitsurveyor"
+						+ File.separator + "cache";
+			if (dirName.length() == 0 || board.getContentKey() == null) return null;
+			File dir = new File(dirName);
+			if (!dir.isDirectory() && !dir.mkdirs()) return null;
+			return new File(dir, board.getContentKey() + SUFFIX);
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is within its limit, sparing the
+	 * entry just stored.
+	 */
+	private static void trim(File stored) {
+		final File[] entries = stored.getParentFile().listFiles();
+		if (entries == null) return;
+		final long[] used = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		long total = 0;
+		for (int n = 0; n < entries.length; n++) {
+			order[n] = n;
+			if (entries[n].getName().endsWith(SUFFIX)) {
+				used[n] = entries[n].lastModified();
+				total += entries[n].length();
+			}
+		}
+		long limit = getLimit();
+		if (total <= limit) return;
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(used[a], used[b]);
+			}
+		});
+		for (int n = 0; n < order.length && total > limit; n++) {
+			File entry = entries[order[n]];
+			if (!entry.getName().endsWith(SUFFIX) || entry.equals(stored)) continue;
+			long length = entry.length();
+			if (entry.delete()) total -= length;
+		}
+	}
+
+	private static long getLimit() {
+		String megabytes = System.getProperty("circuitsurveyor.cache.limit");
+		if (megabytes == null) return DEFAULT_LIMIT;
+		try {
+			return Long.parseLong(megabytes.trim()) << 20;
+		} catch (NumberFormatException e) {
+			return DEFAULT_LIMIT;
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String finish(MessageDigest digest) {
+		digest.update(CircuitBoard.SOLVER_SETTINGS.getBytes());
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * Samples the fields of a calculated <tt>CircuitBoard</tt> at arbitrary real coordinates, in batches.
+ * The fields are copied once into a primitive array, in physical units, and each sample is
+ * interpolated bilinearly between the four surrounding points. Coordinates are in board points, so
+ * (<i>x</i>, <i>y</i>) = (2, 3) is point (2, 3) exactly and (2.5, 3) is halfway to (3, 3); like the
+ * board, y grows downwards, and so do the y components of the vectors. Samples outside the circuit
+ * or off the board are <tt>NaN</tt>.
+ *
+ * @author Noah Morris
+ */
+public class FieldProbe {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	/**
+	 * The quantities of each sample, in order: potential (V), electric field (N/C), magnetic field
+	 * (mT) and Poynting vector (W/m^2).
+	 */
+	public static final int POTENTIAL = 0, E_X = 1, E_Y = 2, B_Z = 3, S_X = 4, S_Y = 5;
+	public static final int QUANTITIES = 6;
+
+	private static final int PARALLEL_THRESHOLD = 1 << 14; // samples; fewer are probed on the calling thread
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final int width, height;
+	private final double[] fields; // QUANTITIES per point, column-major
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Creates a probe of the specified board.
+	 *
+	 * @throws IllegalStateException if the board is not calculated
+	 */
+	public FieldProbe(CircuitBoard board) throws IllegalStateException {
+		if (!board.isCalculated())
+			throw new IllegalStateException("Only a calculated board can be probed.");
+		width = board.getWidth();
+		height = board.getHeight();
+		fields = new double[width * height * QUANTITIES];
+
+		Poynt max = board.getMax();
+		double potential = max.potential, e = max.eFieldMag(), b = max.bFieldZ, s = max.poyntMag();
+		int k = 0;
+		for (int i = 0; i < width; i++)
+			for (int j = 0; j < height; j++) {
+				Poynt p = board.get(i, j);
+				if (p.getLoopCount() > 0) {
+					fields[k++] = p.potential * potential;
+					fields[k++] = p.eFieldX * e;
+					fields[k++] = p.eFieldY * e;
+					fields[k++] = p.bFieldZ * b;
+					fields[k++] = p.poyntX * s;
+					fields[k++] = p.poyntY * s;
+				} else
+					for (int q = 0; q < QUANTITIES; q++)
+						fields[k++] = Double.NaN;
+			}
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Samples the fields at the first <tt>count</tt> coordinates of <tt>x</tt> and <tt>y</tt>. The
+	 * <tt>QUANTITIES</tt> values of sample <i>k</i> go to <tt>out[k * QUANTITIES]</tt> onwards, in the
+	 * order of <tt>POTENTIAL</tt> to <tt>S_Y</tt>. Large batches are split across the worker pool.
+	 */
+	public void probe(final double[] x, final double[] y, int count, final double[] out) {
+		if (x.length < count || y.length < count || out.length < count * QUANTITIES)
+			throw new IllegalArgumentException("Arrays too short for " + count + " samples.");
+		if (count < PARALLEL_THRESHOLD) {
+			probe(x, y, 0, count, out);
+			return;
+		}
+		Workers.forEachRange(count, new Workers.Range() {
+			public void run(int from, int to) {
+				probe(x, y, from, to, out);
+			}
+		});
+	}
+
+	/**
+	 * Returns the specified quantity at a single point. For more than a few points, use
+	 * <tt>probe</tt>.
+	 */
+	public double valueAt(double x, double y, int quantity) {
+		double[] out = new double[QUANTITIES];
+		probe(new double[] { x }, new double[] { y }, 0, 1, out);
+		return out[quantity];
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void probe(double[] xs, double[] ys, int from, int to, double[] out) {
+		for (int k = from; k < to; k++) {
+			double x = xs[k], y = ys[k];
+			int o = k * QUANTITIES;
+			if (!(x >= 0 && y >= 0 && x <= width - 1 && y <= height - 1)) { // also catches NaN
+				for (int q = 0; q < QUANTITIES; q++)
+					out[o + q] = Double.NaN;
+				continue;
+			}
+
+			int i = Math.min((int) x, Math.max(width - 2, 0)), j = Math.min((int) y, Math.max(height - 2, 0));
+			double fx = x - i, fy = y - j;
+			int i1 = Math.min(i + 1, width - 1), j1 = Math.min(j + 1, height - 1);
+
+			// Corners with no weight are left out, so that points beside the circuit's edge keep
+			// their values
+			for (int q = 0; q < QUANTITIES; q++)
+				out[o + q] = 0;
+			add(out, o, (i * height + j) * QUANTITIES, (1 - fx) * (1 - fy));
+			add(out, o, (i1 * height + j) * QUANTITIES, fx * (1 - fy));
+			add(out, o, (i * height + j1) * QUANTITIES, (1 - fx) * fy);
+			add(out, o, (i1 * height + j1) * QUANTITIES, fx * fy);
+		}
+	}
+
+	private void add(double[] out, int o, int f, double weight) {
+		if (weight == 0) return;
+		for (int q = 0; q < QUANTITIES; q++)
+			out[o + q] += weight * fields[f + q];
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * One field of a calculated <tt>CircuitBoard</tt> at successively halved resolutions, for drawing the
+ * board zoomed out. Level 0 is the board itself; each sample of level <i>L</i> + 1 is the mean of the
+ * (up to) four samples of level <i>L</i> beneath it that lie inside the circuit, or <tt>NaN</tt> if
+ * none do. Levels are built the first time they are asked for.
+ *
+ * @author Noah Morris
+ */
+public class FieldPyramid {
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final CircuitBoard board;
+	private final Colormap colormap;
+	private final int noOfLevels;
+	private final float[][] levels; // levels[0] is unused; the board is read directly
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public FieldPyramid(CircuitBoard board, Colormap colormap) {
+		this.board = board;
+		this.colormap = colormap;
+		int levels = 1;
+		for (int w = board.getWidth(), h = board.getHeight(); w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2)
+			levels++;
+		noOfLevels = levels;
+		this.levels = new float[levels][];
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the coarsest level with at least one sample per pixel when each board point is drawn
+	 * <tt>pointSize</tt> pixels wide.
+	 */
+	public static int levelFor(double pointSize) {
+		int level = 0;
+		while (pointSize < 1) {
+			pointSize *= 2;
+			level++;
+		}
+		return level;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public CircuitBoard getBoard() {
+		return board;
+	}
+
+	public Colormap getColormap() {
+		return colormap;
+	}
+
+	public int getLevels() {
+		return noOfLevels;
+	}
+
+	public int getWidth(int level) {
+		int w = board.getWidth();
+		for (int l = 0; l < level; l++)
+			w = (w + 1) / 2;
+		return w;
+	}
+
+	public int getHeight(int level) {
+		int h = board.getHeight();
+		for (int l = 0; l < level; l++)
+			h = (h + 1) / 2;
+		return h;
+	}
+
+	/**
+	 * Returns the samples of the specified level, 1 or more, column-major, building it first if
+	 * necessary.
+	 */
+	public synchronized float[] getLevel(int level) {
+		if (level < 1 || level >= noOfLevels)
+			throw new IndexOutOfBoundsException("No level " + level + " in a pyramid of " + noOfLevels);
+		if (levels[level] == null) {
+			if (level > 1) getLevel(level - 1);
+			levels[level] = build(level);
+		}
+		return levels[level];
+	}
+
+	/**
+	 * Returns the field's value at the specified point of level 0, or <tt>NaN</tt> if the point is
+	 * outside the circuit.
+	 */
+	public float value(int i, int j) {
+		Poynt p = board.get(i, j);
+		return p.getLoopCount() > 0 ? (float) colormap.value(p) : Float.NaN;
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private float[] build(final int level) {
+		final int width = getWidth(level), height = getHeight(level);
+		final int fineWidth = getWidth(level - 1), fineHeight = getHeight(level - 1);
+		final float[] fine = levels[level - 1];
+		final float[] samples = new float[width * height];
+		Workers.forEachRange(width, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++)
+					for (int j = 0; j < height; j++) {
+						float sum = 0;
+						int count = 0;
+						for (int x = 2 * i; x < Math.min(2 * i + 2, fineWidth); x++)
+							for (int y = 2 * j; y < Math.min(2 * j + 2, fineHeight); y++) {
+								float v = fine == null ? value(x, y) : fine[x * fineHeight + y];
+								if (v == v) { // not NaN
+									sum += v;
+									count++;
+								}
+							}
+						samples[i * height + j] = count > 0 ? sum / count : Float.NaN;
+					}
+			}
+		});
+		return samples;
+	}
+}
@@ -0,0 +1,535 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import javax.imageio.ImageIO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP service on the loopback interface that solves circuits for other local tools, so
+ * they can share one warm JVM. Each request POSTs the text of a circuit file to one of:
+ *
+ * <ul>
+ * <li><tt>/currents</tt> - the current through each element, as text;
+ * <li><tt>/summary</tt> - the size, solve time, field maxima and currents, as text;
+ * <li><tt>/fields</tt> - the normalized field arrays, as a binary <tt>FieldCache</tt> entry.
+ * </ul>
+ *
+ * A <tt>name</tt> query parameter names the circuit in messages. Solved boards are kept by a hash of
+ * their contents, returned in the <tt>X-Circuit-Key</tt> header, and requests for a circuit that is
+ * still being solved wait for that solve rather than starting another. While a board is kept its
+ * fields can be fetched as map tiles, <tt>TILE_SIZE</tt> pixels square, with
+ *
+ * <pre>
+ * GET /tiles/<i>key</i>/<i>field</i>/<i>zoom</i>/<i>x</i>/<i>y</i>.png
+ * </pre>
+ *
+ * where the whole board fits in tile (0, 0) at zoom 0 and each zoom level doubles the scale. Tiles
+ * are drawn when first asked for, and kept as PNGs up to <tt>MAX_TILE_BYTES</tt>. Its fields can
+ * also be sampled by POSTing big-endian pairs of doubles, (<i>x</i>, <i>y</i>) in board points, to
+ * <tt>/probe/<i>key</i></tt>; the answer is <tt>FieldProbe.QUANTITIES</tt> doubles per pair.
+ * Requests are handled on a virtual thread each where the JVM has them, and otherwise on a pool of
+ * ordinary threads.
+ *
+ * @author Noah Morris
+ */
+public class FieldService {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int DEFAULT_PORT = 8177;
+
+	private static final int MAX_BOARDS = 32; // solved boards kept
+	private static final int MAX_REQUEST_SIZE = 16 << 20; // bytes of circuit text
+	private static final int MAX_TILE_BYTES = 64 << 20; // of PNG tiles kept
+	private static final int MAX_ZOOM = 12;
+	private static final String TEXT = "text/plain; charset=UTF-8", BINARY = "application/octet-stream";
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Boards solved or being solved, by content key, least recently asked for first.
+	 */
+	private final Map<String, FutureTask<Solved>> boards = new LinkedHashMap<String, FutureTask<Solved>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Solved>> eldest) {
+			return size() > MAX_BOARDS;
+		}
+	};
+
+	/**
+	 * Encoded tiles, by <tt>key/field/zoom/x/y</tt>, least recently asked for first.
+	 */
+	private final Map<String, byte[]> tiles = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private long tileBytes = 0;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Creates a service listening on the specified port of the loopback interface. It does not
+	 * answer requests until it is started.
+	 */
+	public FieldService(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext("/currents", new Handler() {
+			void respond(HttpExchange exchange, Solved solved, String name) throws IOException {
+				StringWriter text = new StringWriter();
+				PrintWriter out = new PrintWriter(text);
+				BatchSolver.writeCurrents(out, solved.board);
+				out.flush();
+				send(exchange, 200, TEXT, text.toString());
+			}
+		});
+		server.createContext("/summary", new Handler() {
+			void respond(HttpExchange exchange, Solved solved, String name) throws IOException {
+				StringWriter text = new StringWriter();
+				PrintWriter out = new PrintWriter(text);
+				BatchSolver.writeSummary(out, solved.board, name, solved.parseTime, solved.solveTime);
+				out.flush();
+				send(exchange, 200, TEXT, text.toString());
+			}
+		});
+		server.createContext("/fields", new Handler() {
+			void respond(HttpExchange exchange, Solved solved, String name) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", BINARY);
+				exchange.sendResponseHeaders(200, 0); // streamed
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(exchange.getResponseBody(), 1 << 16));
+				try {
+					FieldCache.write(solved.board, out);
+				} finally {
+					out.close();
+				}
+			}
+		});
+		server.createContext("/probe/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!exchange.getRequestMethod().equals("POST")) {
+						exchange.getResponseHeaders().set("Allow", "POST");
+						send(exchange, 405, TEXT, "POST pairs of doubles to /probe/key.\n");
+						return;
+					}
+					sendProbe(exchange, exchange.getRequestURI().getPath().substring("/probe/".length()));
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					send(exchange, 500, TEXT, e + "\n");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/tiles/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!exchange.getRequestMethod().equals("GET")) {
+						exchange.getResponseHeaders().set("Allow", "GET");
+						send(exchange, 405, TEXT, "GET tiles as /tiles/key/field/zoom/x/y.png.\n");
+						return;
+					}
+					sendTile(exchange, exchange.getRequestURI().getPath().substring("/tiles/".length()));
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					send(exchange, 500, TEXT, e + "\n");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops answering requests, waiting up to the specified number of seconds for those under way.
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Returns the specified circuit solved, solving it unless it was solved recently or is being
+	 * solved now, in which case this waits for that solve.
+	 *
+	 * @throws IllegalArgumentException if the circuit cannot be read or solved
+	 */
+	public Solved solve(final CharSequence contents, final String name) throws IllegalArgumentException {
+		final String key = FieldCache.key(contents);
+		FutureTask<Solved> task;
+		boolean solving = false;
+		synchronized (boards) {
+			task = boards.get(key);
+			if (task == null) {
+				task = new FutureTask<Solved>(new Callable<Solved>() {
+					public Solved call() {
+						long start = System.nanoTime();
+						CircuitBoard board = new CircuitBoard(contents, name);
+						long parsed = System.nanoTime();
+						board.calculateCircuit();
+						return new Solved(board, key, (parsed - start) / 1e6, (System.nanoTime() - parsed) / 1e6);
+					}
+				});
+				boards.put(key, task);
+				solving = true;
+			}
+		}
+		if (solving) task.run();
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while solving " + name + ".");
+		} catch (ExecutionException e) {
+			synchronized (boards) { // so the next request tries again
+				if (boards.get(key) == task) boards.remove(key);
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Returns the board with the specified key if it is kept, waiting for it if it is being solved.
+	 *
+	 * @return the board, or null if it is not kept or could not be solved
+	 */
+	public Solved getSolved(String key) {
+		FutureTask<Solved> task;
+		synchronized (boards) {
+			task = boards.get(key);
+		}
+		if (task == null) return null;
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the specified tile of a kept board as a PNG, drawing it unless it was asked for
+	 * recently.
+	 *
+	 * @return the tile, or null if the board is not kept or the tile is off the board
+	 */
+	public byte[] getTile(String key, Colormap colormap, int zoom, int tx, int ty) throws IOException {
+		String tileKey = key + "/" + colormap.name().toLowerCase() + "/" + zoom + "/" + tx + "/" + ty;
+		synchronized (tiles) {
+			byte[] png = tiles.get(tileKey);
+			if (png != null) return png;
+		}
+		Solved solved = getSolved(key);
+		if (solved == null) return null;
+		CircuitBoard board = solved.board;
+		double pointSize = (double) (FieldTiles.TILE_SIZE << zoom) / Math.max(board.getWidth(), board.getHeight());
+		int[] range = solved.getTiles().getTileRange(pointSize);
+		if (tx < range[0] || ty < range[1] || tx > range[2] || ty > range[3]) return null;
+
+		BufferedImage tile = solved.getTiles().drawTile(colormap, pointSize, tx, ty);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(tile, "png", bytes);
+		byte[] png = bytes.toByteArray();
+		synchronized (tiles) {
+			byte[] previous = tiles.put(tileKey, png); // drawn at once by another request, perhaps
+			tileBytes += png.length - (previous != null ? previous.length : 0);
+			for (Iterator<byte[]> i = tiles.values().iterator(); tileBytes > MAX_TILE_BYTES && i.hasNext();) {
+				tileBytes -= i.next().length;
+				i.remove();
+			}
+		}
+		return png;
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Starts the service on the port given as the only argument, or on <tt>DEFAULT_PORT</tt>.
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		int port = DEFAULT_PORT;
+		if (args.length > 0) {
+			try {
+				port = Integer.parseInt(args[0]);
+			} catch (NumberFormatException e) {
+				System.err.println("Usage: java FieldService [port]");
+				System.exit(2);
+			}
+		}
+		FieldService service = new FieldService(port);
+		service.start();
+		System.out.println("Solving circuits at http://" + service.getAddress().getHostString() + ":"
+				+ service.getAddress().getPort() + "/ (currents, summary, fields)");
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Returns an executor that runs each task on a new virtual thread, or on a pool of daemon
+	 * threads where virtual threads are not available.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) { // before Java 21
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "CircuitSurveyor service " + ++count);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a request's body, up to <tt>MAX_REQUEST_SIZE</tt> bytes.
+	 *
+	 * @return the body, or null if it is too long
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		try {
+			for (int n; (n = in.read(buf)) >= 0;) {
+				if (body.size() + n > MAX_REQUEST_SIZE) return null;
+				body.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Answers a request for the tile at the specified path, <tt>key/field/zoom/x/y.png</tt>.
+	 */
+	private void sendTile(HttpExchange exchange, String path) throws IOException {
+		String[] parts = path.split("/");
+		if (parts.length != 5 || !parts[4].endsWith(".png")) {
+			send(exchange, 404, TEXT, "Tiles are at /tiles/key/field/zoom/x/y.png.\n");
+			return;
+		}
+		Colormap colormap;
+		int zoom, tx, ty;
+		try {
+			colormap = Colormap.forName(parts[1]);
+			zoom = Integer.parseInt(parts[2]);
+			tx = Integer.parseInt(parts[3]);
+			ty = Integer.parseInt(parts[4].substring(0, parts[4].length() - 4));
+		} catch (IllegalArgumentException e) { // NumberFormatException among them
+			send(exchange, 400, TEXT, e.getMessage() + "\n");
+			return;
+		}
+		if (zoom < 0 || zoom > MAX_ZOOM) {
+			send(exchange, 400, TEXT, "Zoom levels run from 0 to " + MAX_ZOOM + ".\n");
+			return;
+		}
+		byte[] png = getTile(parts[0], colormap, zoom, tx, ty);
+		if (png == null) {
+			send(exchange, 404, TEXT, "No such tile; the circuit may need POSTing again.\n");
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "image/png");
+		exchange.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable"); // keyed by contents
+		exchange.sendResponseHeaders(200, png.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(png);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Answers a request to sample the fields of the board with the specified key.
+	 */
+	private void sendProbe(HttpExchange exchange, String key) throws IOException {
+		byte[] body = readBody(exchange);
+		if (body == null) {
+			send(exchange, 413, TEXT, "Requests are limited to " + MAX_REQUEST_SIZE + " bytes.\n");
+			return;
+		}
+		if (body.length % 16 != 0) {
+			send(exchange, 400, TEXT, "Send whole pairs of doubles.\n");
+			return;
+		}
+		Solved solved = getSolved(key);
+		if (solved == null) {
+			send(exchange, 404, TEXT, "No such circuit; it may need POSTing again.\n");
+			return;
+		}
+
+		int count = body.length / 16;
+		double[] x = new double[count], y = new double[count];
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		for (int k = 0; k < count; k++) {
+			x[k] = in.readDouble();
+			y[k] = in.readDouble();
+		}
+		double[] samples = new double[count * FieldProbe.QUANTITIES];
+		solved.getProbe().probe(x, y, count, samples);
+
+		exchange.getResponseHeaders().set("Content-Type", BINARY);
+		exchange.sendResponseHeaders(200, samples.length * 8L);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(exchange.getResponseBody(), 1 << 16));
+		try {
+			for (double v : samples)
+				out.writeDouble(v);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the value of the <tt>name</tt> query parameter of a request, or "circuit" if it has
+	 * none.
+	 */
+	private static String circuitName(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null)
+			for (String parameter : query.split("&"))
+				if (parameter.startsWith("name=") && parameter.length() > 5)
+					return URLDecoder.decode(parameter.substring(5), "UTF-8");
+		return "circuit";
+	}
+
+	/*  *************** HELPER CLASSES *************** */
+
+	/**
+	 * A solved board, its key, and how long reading and solving it took.
+	 */
+	public static class Solved {
+		public final CircuitBoard board;
+		public final String key;
+		public final double parseTime, solveTime; // milliseconds
+		private FieldTiles tiles;
+		private FieldProbe probe;
+
+		public Solved(CircuitBoard board, String key, double parseTime, double solveTime) {
+			this.board = board;
+			this.key = key;
+			this.parseTime = parseTime;
+			this.solveTime = solveTime;
+		}
+
+		/**
+		 * Returns the tile source for this board, whose field pyramids are built once per field.
+		 */
+		public synchronized FieldTiles getTiles() {
+			if (tiles == null)
+				tiles = new FieldTiles(board, 0); // the service keeps encoded tiles instead
+			return tiles;
+		}
+
+		public synchronized FieldProbe getProbe() {
+			if (probe == null)
+				probe = new FieldProbe(board);
+			return probe;
+		}
+	}
+
+	/**
+	 * Reads the circuit POSTed to an endpoint, solves it, and answers with the endpoint's view of the
+	 * solved board. Circuits that cannot be read or solved are answered with 400 and the reason.
+	 */
+	private abstract class Handler implements HttpHandler {
+
+		abstract void respond(HttpExchange exchange, Solved solved, String name) throws IOException;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					send(exchange, 405, TEXT, "POST the text of a circuit file.\n");
+					return;
+				}
+				byte[] body = readBody(exchange);
+				if (body == null) {
+					send(exchange, 413, TEXT, "Circuits are limited to " + MAX_REQUEST_SIZE + " bytes.\n");
+					return;
+				}
+				String name = circuitName(exchange);
+				Solved solved;
+				try {
+					solved = solve(new String(body, "UTF-8"), name);
+				} catch (IllegalArgumentException e) { // IllegalCircuitException among them
+					send(exchange, 400, TEXT, e.getMessage() + "\n");
+					return;
+				} catch (DirException e) {
+					send(exchange, 400, TEXT, e.getMessage() + "\n");
+					return;
+				}
+				exchange.getResponseHeaders().set("X-Circuit-Key", solved.key);
+				respond(exchange, solved, name);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				send(exchange, 500, TEXT, e + "\n");
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * Totals, means and variances of the electric and magnetic energy densities and of the Poynting
+ * vector's magnitude over rectangles of a calculated <tt>CircuitBoard</tt>. Summed-area tables of
+ * each quantity and of its square are built once, so any rectangle is answered in constant time.
+ * The tables hold each quantity less its mean over the board, so that the sums stay small and a
+ * region's variance keeps its precision when it is small beside the mean. Only points inside the
+ * circuit are counted.
+ *
+ * @author Noah Morris
+ */
+public class FieldStatistics {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	/**
+	 * The quantities summed: electric energy density (J/m^3), magnetic energy density (J/m^3) and
+	 * the magnitude of the Poynting vector (W/m^2).
+	 */
+	public static final int ELECTRIC_ENERGY = 0, MAGNETIC_ENERGY = 1, POYNTING = 2;
+	public static final int QUANTITIES = 3;
+
+	private static final double EPSILON_NAUGHT = 8.854187817e-12, // F/m
+								MU_NAUGHT = 4 * Math.PI * 1e-7; // H/m
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final int width, height;
+	private final double cellArea; // square meters per point
+	private final int[] counts; // (width + 1) x (height + 1), column-major; points inside the circuit
+	private final double[] means; // by quantity, over the board
+	private final double[][] sums, squares; // by quantity, laid out as counts; less the means
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Builds the tables for the specified board.
+	 *
+	 * @throws IllegalStateException if the board is not calculated
+	 */
+	public FieldStatistics(CircuitBoard board) throws IllegalStateException {
+		if (!board.isCalculated())
+			throw new IllegalStateException("Only a calculated board has field statistics.");
+		width = board.getWidth();
+		height = board.getHeight();
+		cellArea = board.getSpacing() * board.getSpacing();
+
+		int stride = height + 1;
+		counts = new int[(width + 1) * stride];
+		sums = new double[QUANTITIES][(width + 1) * stride];
+		squares = new double[QUANTITIES][(width + 1) * stride];
+
+		Poynt max = board.getMax();
+		double e = max.eFieldMag(), b = max.bFieldZ / 1000, s = max.poyntMag(); // b from mT to T
+		double[] values = new double[QUANTITIES];
+		means = new double[QUANTITIES];
+		int noOfPoints = 0;
+		for (int i = 0; i < width; i++)
+			for (int j = 0; j < height; j++) {
+				Poynt p = board.get(i, j);
+				if (p.getLoopCount() > 0) {
+					values(p, e, b, s, values);
+					for (int q = 0; q < QUANTITIES; q++)
+						means[q] += values[q];
+					noOfPoints++;
+				}
+			}
+		for (int q = 0; q < QUANTITIES; q++)
+			means[q] = noOfPoints > 0 ? means[q] / noOfPoints : 0;
+
+		for (int i = 0; i < width; i++)
+			for (int j = 0; j < height; j++) {
+				Poynt p = board.get(i, j);
+				boolean inside = p.getLoopCount() > 0;
+				if (inside) {
+					values(p, e, b, s, values);
+					for (int q = 0; q < QUANTITIES; q++)
+						values[q] -= means[q];
+				}
+
+				// Each entry holds the sum over every point above and to the left of it
+				int k = (i + 1) * stride + j + 1, left = k - stride, up = k - 1, corner = left - 1;
+				counts[k] = (inside ? 1 : 0) + counts[left] + counts[up] - counts[corner];
+				for (int q = 0; q < QUANTITIES; q++) {
+					double v = inside ? values[q] : 0;
+					double[] sum = sums[q], square = squares[q];
+					sum[k] = v + sum[left] + sum[up] - sum[corner];
+					square[k] = v * v + square[left] + square[up] - square[corner];
+				}
+			}
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Returns the statistics of the rectangle of points with the specified corners, which are
+	 * included and may be given in either order. The rectangle is clipped to the board.
+	 */
+	public Region query(int x0, int y0, int x1, int y1) {
+		int left = Math.max(Math.min(x0, x1), 0), right = Math.min(Math.max(x0, x1), width - 1);
+		int top = Math.max(Math.min(y0, y1), 0), bottom = Math.min(Math.max(y0, y1), height - 1);
+		if (left > right || top > bottom)
+			return new Region(0, 0, -1, -1, 0, new double[QUANTITIES], new double[QUANTITIES], means, cellArea);
+
+		int stride = height + 1;
+		int a = left * stride + top, b = (right + 1) * stride + top, c = left * stride + bottom + 1,
+				d = (right + 1) * stride + bottom + 1;
+		double[] sum = new double[QUANTITIES], square = new double[QUANTITIES];
+		for (int q = 0; q < QUANTITIES; q++) {
+			sum[q] = sums[q][d] - sums[q][b] - sums[q][c] + sums[q][a];
+			square[q] = squares[q][d] - squares[q][b] - squares[q][c] + squares[q][a];
+		}
+		return new Region(left, top, right, bottom, counts[d] - counts[b] - counts[c] + counts[a], sum, square,
+				means, cellArea);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Puts the quantities at the specified point, in physical units, in <tt>values</tt>. The
+	 * electric field, magnetic field and Poynting vector are scaled by <tt>e</tt>, <tt>b</tt> and
+	 * <tt>s</tt>.
+	 */
+	private static void values(Poynt p, double e, double b, double s, double[] values) {
+		double eMag = p.eFieldMag() * e, bZ = p.bFieldZ * b;
+		values[ELECTRIC_ENERGY] = EPSILON_NAUGHT / 2 * eMag * eMag;
+		values[MAGNETIC_ENERGY] = bZ * bZ / (2 * MU_NAUGHT);
+		values[POYNTING] = p.poyntMag() * s;
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * The statistics of one rectangle of points.
+	 */
+	public static class Region {
+		public final int left, top, right, bottom; // the points included, after clipping
+		private final int points;
+		private final double[] sum, square; // less the board's means
+		private final double[] means;
+		private final double cellArea;
+
+		private Region(int left, int top, int right, int bottom, int points, double[] sum, double[] square,
+				double[] means, double cellArea) {
+			this.left = left;
+			this.top = top;
+			this.right = right;
+			this.bottom = bottom;
+			this.points = points;
+			this.sum = sum;
+			this.square = square;
+			this.means = means;
+			this.cellArea = cellArea;
+		}
+
+		/**
+		 * Returns the number of points of the rectangle inside the circuit.
+		 */
+		public int getPoints() {
+			return points;
+		}
+
+		/**
+		 * Returns the area of the points inside the circuit, in square meters.
+		 */
+		public double getArea() {
+			return points * cellArea;
+		}
+
+		/**
+		 * Returns the integral of the specified quantity over the rectangle, per meter of depth: in
+		 * joules per meter for the energy densities.
+		 */
+		public double getTotal(int quantity) {
+			return (sum[quantity] + points * means[quantity]) * cellArea;
+		}
+
+		/**
+		 * Returns the mean of the specified quantity over the points inside the circuit, or
+		 * <tt>NaN</tt> if there are none.
+		 */
+		public double getMean(int quantity) {
+			return points > 0 ? sum[quantity] / points + means[quantity] : Double.NaN;
+		}
+
+		/**
+		 * Returns the variance of the specified quantity over the points inside the circuit, or
+		 * <tt>NaN</tt> if there are none.
+		 */
+		public double getVariance(int quantity) {
+			if (points == 0) return Double.NaN;
+			double offset = sum[quantity] / points; // the region's mean less the board's
+			return Math.max(square[quantity] / points - offset * offset, 0); // against rounding at 0
+		}
+
+		public double getStandardDeviation(int quantity) {
+			return Math.sqrt(getVariance(quantity));
+		}
+	}
+}
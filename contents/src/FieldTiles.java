@@ -0,0 +1,183 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Square gradient tiles of a calculated <tt>CircuitBoard</tt>, drawn on the <tt>Workers</tt> pool and
+ * kept in a least-recently-used cache. Tile (<i>tx</i>, <i>ty</i>) at a given point size covers the
+ * pixels from (<i>tx</i>, <i>ty</i>) x <tt>TILE_SIZE</tt> onwards, measured from the pixel of board
+ * point (0, 0), so only the tiles a view actually shows ever need drawing.
+ *
+ * @author Noah Morris
+ */
+public class FieldTiles {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int TILE_SIZE = 256;
+	public static final int DEFAULT_CAPACITY = 192; // 48 MB of tiles
+
+	/*  *************** INNER INTERFACES *************** */
+
+	/**
+	 * Told when a requested tile has been drawn. Called on the worker thread that drew it.
+	 */
+	public interface Listener {
+		void tileReady(FieldTiles tiles, Colormap colormap, double pointSize, int tx, int ty, BufferedImage tile);
+	}
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final CircuitBoard board;
+	private final Map<Colormap, FieldPyramid> pyramids = new EnumMap<Colormap, FieldPyramid>(Colormap.class);
+	private final Map<Key, BufferedImage> cache;
+	private final Set<Key> pending = new HashSet<Key>();
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Creates a tile source for the specified calculated board that keeps at most
+	 * <tt>capacity</tt> tiles.
+	 */
+	public FieldTiles(CircuitBoard board, final int capacity) {
+		this.board = board;
+		cache = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the tile containing the specified pixel, measured from the pixel of board point (0, 0).
+	 */
+	public static int tileOf(int pixel) {
+		return pixel >= 0 ? pixel / TILE_SIZE : -((-pixel - 1) / TILE_SIZE) - 1;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public CircuitBoard getBoard() {
+		return board;
+	}
+
+	public synchronized FieldPyramid getPyramid(Colormap colormap) {
+		FieldPyramid pyramid = pyramids.get(colormap);
+		if (pyramid == null) {
+			pyramid = new FieldPyramid(board, colormap);
+			pyramids.put(colormap, pyramid);
+		}
+		return pyramid;
+	}
+
+	/**
+	 * Returns the range of tiles, <tt>{ first tx, first ty, last tx, last ty }</tt>, that the board
+	 * covers when each point is drawn <tt>pointSize</tt> pixels wide.
+	 */
+	public int[] getTileRange(double pointSize) {
+		double half = pointSize >= 1 ? Math.floor((pointSize - 1) / 2) : 0;
+		int right = (int) Math.ceil(board.getWidth() * pointSize); // one past the last pixel
+		int bottom = (int) Math.ceil(board.getHeight() * pointSize);
+		return new int[] { tileOf((int) -half), tileOf((int) -half), tileOf(right - 1), tileOf(bottom - 1) };
+	}
+
+	/**
+	 * Returns the specified tile, drawing and caching it on the calling thread if it is not already
+	 * cached.
+	 */
+	public BufferedImage getTile(Colormap colormap, double pointSize, int tx, int ty) {
+		Key key = new Key(colormap, pointSize, tx, ty);
+		synchronized (this) {
+			BufferedImage tile = cache.get(key);
+			if (tile != null) return tile;
+		}
+		BufferedImage tile = drawTile(colormap, pointSize, tx, ty);
+		synchronized (this) {
+			cache.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Returns the specified tile if it is in the cache. Otherwise returns null, has the tile drawn
+	 * on the worker pool, and hands it to the listener when it is ready.
+	 */
+	public BufferedImage getTile(final Colormap colormap, final double pointSize, final int tx, final int ty,
+			final Listener listener) {
+		final Key key = new Key(colormap, pointSize, tx, ty);
+		synchronized (this) {
+			BufferedImage tile = cache.get(key);
+			if (tile != null || !pending.add(key))
+				return tile;
+		}
+		Workers.pool().execute(new Runnable() {
+			public void run() {
+				BufferedImage tile;
+				try {
+					tile = drawTile(colormap, pointSize, tx, ty);
+					synchronized (FieldTiles.this) {
+						cache.put(key, tile);
+					}
+				} finally {
+					synchronized (FieldTiles.this) {
+						pending.remove(key);
+					}
+				}
+				listener.tileReady(FieldTiles.this, colormap, pointSize, tx, ty, tile);
+			}
+		});
+		return null;
+	}
+
+	/**
+	 * Draws the specified tile on the calling thread, without caching it.
+	 */
+	public BufferedImage drawTile(Colormap colormap, double pointSize, int tx, int ty) {
+		BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		GradientRenderer.renderView(getPyramid(colormap), tile, 0, 0, TILE_SIZE, TILE_SIZE,
+				tx * TILE_SIZE, ty * TILE_SIZE, pointSize);
+		return tile;
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	private static class Key {
+		private final Colormap colormap;
+		private final double pointSize;
+		private final int tx, ty;
+
+		public Key(Colormap colormap, double pointSize, int tx, int ty) {
+			this.colormap = colormap;
+			this.pointSize = pointSize;
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return k.colormap == colormap && k.pointSize == pointSize && k.tx == tx && k.ty == ty;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(pointSize);
+			return ((colormap.ordinal() * 31 + (int) (bits ^ (bits >>> 32))) * 31 + tx) * 31 + ty;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The flow lines (equipotentials) of a <tt>CircuitBoard</tt> within each loop. Every loop and level
+ * is traced as a separate task on the <tt>Workers</tt> pool.
+ *
+ * @author Noah Morris
+ */
+public class FlowLines extends ScaledPath {
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	private FlowLines(Path2D.Float path) {
+		super(path);
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Traces the flow lines of the specified loops of a calculated board, each loop divided into a
+	 * number of regions in proportion to its current, up to <tt>maxNoOfRegions</tt> for a loop
+	 * carrying <tt>maximumCurrent</tt>.
+	 */
+	public static FlowLines trace(Collection<Loop> boardLoops, double maximumCurrent, int maxNoOfRegions) {
+		final List<Loop> loops = new ArrayList<Loop>();
+		final List<Double> levels = new ArrayList<Double>();
+		for (Loop loop : boardLoops) {
+			loop.setPotentialExtremes();
+			int noOfRegions = (int) (Math.abs(loop.getCurrent()) * maxNoOfRegions / maximumCurrent + 0.5);
+			for (double level : loop.getFlowLineLevels(noOfRegions)) {
+				loops.add(loop);
+				levels.add(level);
+			}
+		}
+
+		final Path2D.Float[] paths = new Path2D.Float[loops.size()];
+		Workers.forEachRange(paths.length, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					paths[i] = new Path2D.Float();
+					trace(loops.get(i), levels.get(i), paths[i]);
+				}
+			}
+		});
+
+		Path2D.Float path = new Path2D.Float();
+		for (Path2D.Float p : paths)
+			path.append(p, false);
+		return new FlowLines(path);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Appends the flow lines of a loop at the specified potential to the path, in board coordinates.
+	 * Marks which lines are already traced in a set of its own rather than on the Poynts, so any
+	 * number of levels and loops can be traced at once.
+	 */
+	private static void trace(Loop loop, double level, Path2D path) {
+		Set<Poynt> traced = new HashSet<Poynt>();
+		Iterator<Poynt> perimeter = loop.getPerimeter().iterator();
+		Poynt[] p = { perimeter.next(), null };
+		double[] point = new double[2];
+		while (perimeter.hasNext()) {
+			p[1] = p[0];
+			p[0] = perimeter.next();
+			if ((p[1].potential - level) * (p[0].potential - level) <= 0) {
+				if (!traced.contains(p[0].potential < p[1].potential ? p[0] : p[1])) {
+					Poynt[] q = { p[0], p[1] };
+					interpolate(q, level, point);
+					path.moveTo(point[0], point[1]);
+					while (getNewPoynts(loop, q, level)) {
+						interpolate(q, level, point);
+						path.lineTo(point[0], point[1]);
+					}
+					traced.add(q[0].potential < q[1].potential ? q[0] : q[1]);
+				}
+			}
+		}
+	}
+
+	private static boolean getNewPoynts(Loop loop, Poynt[] p, double level) {
+		Dir left = Dir.getDirection(p[0], p[1]).turn(Dir.LEFT);
+		Poynt s0, s1;
+		
+		try {
+			s0 = p[0].get(left);
+			s1 = p[1].get(left);
+		} catch (IndexOutOfBoundsException e) {
+			return false;
+		}
+		
+		if(!loop.contains(s0) || !loop.contains(s1))
+			return false;
+		
+		// Straight ahead is (s0, s1); the left side is (p[0], s0); the right side is (s1, p[1])
+		if ((s1.potential - level) * (s0.potential - level) <= 0) {
+			p[0] = s0;
+			p[1] = s1;
+		} else if ((s0.potential - level) * (p[0].potential - level) <= 0) {
+			p[1] = s0;
+		} else if ((p[1].potential - level) * (s1.potential - level) <= 0) {
+			p[0] = s1;
+		} else
+			throw new IndexOutOfBoundsException("Problem drawing flow lines at (" + p[0] + ", " + p[1] + ")");
+
+		return true;
+	}
+
+	/**
+	 * Finds where between two neighboring Poynts the potential crosses the level, in board
+	 * coordinates.
+	 */
+	private static void interpolate(Poynt[] p, double level, double[] point) {
+		double diff = p[1].potential == p[0].potential ? 0.5 // along an equipotential; halfway will do
+				: (level - p[0].potential) / (p[1].potential - p[0].potential);
+		Dir dir = Dir.getDirection(p[0], p[1]);
+		double x = p[0].x, y = p[0].y;
+		if (dir.isHorizontal())
+			x += diff * dir.dx;
+		else
+			y += diff * dir.dy;
+		point[0] = x;
+		point[1] = y;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Renders a field of a calculated <tt>CircuitBoard</tt> as a gradient by writing packed ARGB pixels
+ * straight into an image's raster. Colors come from the <tt>Colormap</tt>'s lookup table, and the
+ * board's rows are split across the <tt>Workers</tt> pool; each board row covers its own band of
+ * pixel rows, so the workers never write to the same pixels.
+ *
+ * @author Noah Morris
+ */
+public class GradientRenderer {
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Clears the specified image and draws the gradient of the specified field on it. The image must
+	 * be of type <tt>TYPE_INT_ARGB</tt> or <tt>TYPE_INT_RGB</tt>.
+	 *
+	 * @param board a calculated board
+	 * @param image the image to draw on
+	 * @param offsetX the x-coordinate in the image of board point (0, 0)
+	 * @param offsetY the y-coordinate in the image of board point (0, 0)
+	 * @param scaleFactor the board's scale factor; each point is drawn as a square of
+	 *            <tt>scaleFactor + 1</tt> pixels
+	 * @param colormap the field to draw
+	 */
+	public static void render(final CircuitBoard board, BufferedImage image, final int offsetX,
+			final int offsetY, final int scaleFactor, final Colormap colormap) {
+
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferInt)
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+			throw new IllegalArgumentException("Gradients can only be rendered onto integer-packed images.");
+		final int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+		final int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		final int width = image.getWidth(), height = image.getHeight();
+		final int cell = scaleFactor + 1;
+		final int boardWidth = board.getWidth(), boardHeight = board.getHeight();
+
+		Workers.forEachRange(boardHeight, new Workers.Range() {
+			public void run(int fromRow, int toRow) {
+
+				// Clear the band of pixel rows belonging to these board rows
+				int top = fromRow == 0 ? 0 : rowTop(fromRow);
+				int bottom = toRow == boardHeight ? height : rowTop(toRow);
+				for (int y = Math.max(top, 0); y < Math.min(bottom, height); y++)
+					Arrays.fill(pixels, y * stride, y * stride + width, 0);
+
+				for (int j = fromRow; j < toRow; j++) {
+					int y0 = Math.max(rowTop(j), 0), y1 = Math.min(rowTop(j) + cell, height);
+					if (y0 >= y1) continue;
+					for (int i = 0; i < boardWidth; i++) {
+						Poynt p = board.get(i, j);
+						if (p.getLoopCount() == 0) continue;
+						int x0 = offsetX + i * cell - scaleFactor / 2;
+						int x1 = Math.min(x0 + cell, width);
+						x0 = Math.max(x0, 0);
+						if (x0 >= x1) continue;
+						int argb = colormap.argb(colormap.value(p));
+						for (int y = y0; y < y1; y++)
+							Arrays.fill(pixels, y * stride + x0, y * stride + x1, argb);
+					}
+				}
+			}
+
+			private int rowTop(int j) {
+				return offsetY + j * cell - scaleFactor / 2;
+			}
+		});
+	}
+
+	/**
+	 * Draws the gradient of a field, at any zoom, on a rectangle of the specified image, replacing
+	 * whatever was there. Pixels outside the circuit are made transparent. When points are drawn less
+	 * than a pixel wide, the field is read from the coarser level of the pyramid that gives about one
+	 * sample per pixel. The image must be of type <tt>TYPE_INT_ARGB</tt> or <tt>TYPE_INT_RGB</tt>.
+	 *
+	 * @param pyramid the field to draw
+	 * @param image the image to draw on
+	 * @param x0 the left edge of the rectangle in the image
+	 * @param y0 the top edge of the rectangle in the image
+	 * @param width the width of the rectangle
+	 * @param height the height of the rectangle
+	 * @param worldX the x-coordinate of pixel (x0, y0) relative to the pixel of board point (0, 0)
+	 * @param worldY the y-coordinate of pixel (x0, y0) relative to the pixel of board point (0, 0)
+	 * @param pointSize the width of a board point in pixels
+	 */
+	public static void renderView(final FieldPyramid pyramid, BufferedImage image, final int x0,
+			final int y0, final int width, int height, int worldX, int worldY, double pointSize) {
+
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferInt)
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+			throw new IllegalArgumentException("Gradients can only be rendered onto integer-packed images.");
+		final int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+		final int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+
+		final int level = FieldPyramid.levelFor(pointSize);
+		final int levelWidth = pyramid.getWidth(level), levelHeight = pyramid.getHeight(level);
+		final float[] samples = level == 0 ? null : pyramid.getLevel(level);
+		final Colormap colormap = pyramid.getColormap();
+		double cell = pointSize * (1 << level);
+		double center = level == 0 ? Math.floor((pointSize - 1) / 2) : 0; // as in BoardRenderer.toPixel
+
+		// Find the sample under each column and row once; -1 if off the board
+		final int[] columns = sampleIndices(worldX, width, cell, center, levelWidth);
+		final int[] rows = sampleIndices(worldY, height, cell, center, levelHeight);
+
+		Workers.forEachRange(height, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int row = (y0 + y) * stride + x0, j = rows[y];
+					int lastI = Integer.MIN_VALUE, argb = 0;
+					for (int x = 0; x < width; x++) {
+						int i = columns[x];
+						if (i != lastI) { // neighboring pixels usually share a sample
+							lastI = i;
+							if (i < 0 || j < 0)
+								argb = 0;
+							else {
+								float v = samples == null ? pyramid.value(i, j) : samples[i * levelHeight + j];
+								argb = v == v ? colormap.argb(v) : 0;
+							}
+						}
+						pixels[row + x] = argb;
+					}
+				}
+			}
+		});
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private static int[] sampleIndices(int world, int length, double cell, double center, int samples) {
+		int[] indices = new int[length];
+		for (int k = 0; k < length; k++) {
+			int index = (int) Math.floor((world + k + center) / cell);
+			indices[k] = index >= 0 && index < samples ? index : -1;
+		}
+		return indices;
+	}
+}
@@ -3,10 +3,15 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
+import java.util.Collections;
+import java.util.List;
+
 @SuppressWarnings("serial")
 public class IllegalCircuitException extends IllegalArgumentException {
+	private static final int MAX_LISTED = 20; // errors spelled out in the message of a combined exception
 	private int lineNo;
 	private String line;
+	private List<IllegalCircuitException> errors;
 	public IllegalCircuitException() {
 		super();
 		lineNo = -1;
@@ -19,11 +24,28 @@ public class IllegalCircuitException extends IllegalArgumentException {
 		super(message);
 		setLine(lineNo, line);
 	}
+	public IllegalCircuitException(List<IllegalCircuitException> errors) {
+		super(errors.size() + " errors found.");
+		lineNo = -1;
+		this.errors = errors;
+	}
 	@Override
 	public String getMessage() {
+		if (errors != null) {
+			StringBuilder sb = new StringBuilder(super.getMessage());
+			for (int i = 0; i < errors.size() && i < MAX_LISTED; i++)
+				sb.append("\n").append(errors.get(i).getMessage());
+			if (errors.size() > MAX_LISTED)
+				sb.append("\n... and ").append(errors.size() - MAX_LISTED).append(" more.");
+			return sb.toString();
+		}
 		if (lineNo < 0) return super.getMessage();
 		else return ("Error in line " + lineNo + ": " + line + "\n" + super.getMessage());
 	}
+	public List<IllegalCircuitException> getErrors() {
+		if (errors == null) return Collections.singletonList(this);
+		return Collections.unmodifiableList(errors);
+	}
 	public void setLine(int lineNo, String line) {
 		this.lineNo = lineNo;
 		this.line = line;
@@ -0,0 +1,261 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contour lines of one field of a calculated <tt>CircuitBoard</tt> at a set of levels, found by
+ * marching squares over the grid of Poynts. Each square of four neighboring Poynts inside the circuit
+ * contributes the segments where a level crosses its sides; the segments are then joined end to end
+ * into polylines. Strips of rows are marched, and levels joined, in parallel on the <tt>Workers</tt>
+ * pool.
+ *
+ * @author Noah Morris
+ */
+public class Isolines extends ScaledPath {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int DEFAULT_NO_OF_LEVELS = 10;
+
+	private static final int TOP = 0, RIGHT = 1, BOTTOM = 2, LEFT = 3;
+
+	/**
+	 * The sides a level crosses in each case of marching squares, in pairs, indexed by which corners
+	 * are at or above the level: 1 = top left, 2 = top right, 4 = bottom right, 8 = bottom left. The
+	 * saddles, 5 and 10, are given here as if the center of the square were below the level.
+	 */
+	private static final int[][] SIDES = {
+		{},
+		{ LEFT, TOP },
+		{ TOP, RIGHT },
+		{ LEFT, RIGHT },
+		{ RIGHT, BOTTOM },
+		{ LEFT, TOP, RIGHT, BOTTOM },
+		{ TOP, BOTTOM },
+		{ LEFT, BOTTOM },
+		{ BOTTOM, LEFT },
+		{ TOP, BOTTOM },
+		{ TOP, RIGHT, BOTTOM, LEFT },
+		{ RIGHT, BOTTOM },
+		{ LEFT, RIGHT },
+		{ TOP, RIGHT },
+		{ LEFT, TOP },
+		{}
+	};
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	private Isolines(Path2D.Float path) {
+		super(path);
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the specified number of levels, evenly spaced strictly between 0 and 1.
+	 */
+	public static double[] evenLevels(int count) {
+		double[] levels = new double[count];
+		for (int i = 0; i < count; i++)
+			levels[i] = (i + 1.0) / (count + 1);
+		return levels;
+	}
+
+	/**
+	 * Reads levels as either a whole number of evenly spaced levels or a list of levels between 0 and
+	 * 1, separated by commas or spaces.
+	 *
+	 * @throws NumberFormatException if the text is neither
+	 */
+	public static double[] parseLevels(String text) throws NumberFormatException {
+		String[] words = text.trim().split("[,\\s]+");
+		if (words.length == 1 && words[0].matches("\\d+"))
+			return evenLevels(Integer.parseInt(words[0]));
+		double[] levels = new double[words.length];
+		for (int i = 0; i < words.length; i++) {
+			levels[i] = Double.parseDouble(words[i]);
+			if (!(levels[i] >= 0 && levels[i] <= 1))
+				throw new NumberFormatException("Level " + words[i] + " is not between 0 and 1.");
+		}
+		return levels;
+	}
+
+	/**
+	 * Finds the contours of the specified field of a calculated board at the specified levels, which
+	 * are of the field's normalized magnitude.
+	 */
+	public static Isolines trace(CircuitBoard board, Colormap field, double[] levels) {
+		final int width = board.getWidth(), height = board.getHeight();
+		final float[] values = new float[width * height]; // column-major, like the board
+		for (int i = 0, k = 0; i < width; i++)
+			for (int j = 0; j < height; j++, k++) {
+				Poynt p = board.get(i, j);
+				values[k] = p.getLoopCount() > 0 ? (float) field.value(p) : Float.NaN;
+			}
+
+		// march strips of rows of squares
+		final double[] lv = levels.clone();
+		final int noOfStrips = Math.max(1, Math.min(height - 1, Workers.THREADS * 4));
+		final Segments[][] segments = new Segments[noOfStrips][lv.length];
+		Workers.forEachRange(noOfStrips, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int s = from; s < to; s++) {
+					int firstRow = (int) ((long) (height - 1) * s / noOfStrips);
+					int lastRow = (int) ((long) (height - 1) * (s + 1) / noOfStrips);
+					for (int l = 0; l < lv.length; l++)
+						segments[s][l] = march(values, width, height, firstRow, lastRow, (float) lv[l]);
+				}
+			}
+		});
+
+		// join each level's segments
+		final Path2D.Float[] paths = new Path2D.Float[lv.length];
+		Workers.forEachRange(lv.length, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int l = from; l < to; l++) {
+					List<Segments> strips = new ArrayList<Segments>(noOfStrips);
+					for (int s = 0; s < noOfStrips; s++)
+						strips.add(segments[s][l]);
+					paths[l] = join(strips, values, height, (float) lv[l]);
+				}
+			}
+		});
+
+		Path2D.Float path = new Path2D.Float();
+		for (Path2D.Float p : paths)
+			path.append(p, false);
+		return new Isolines(path);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Returns the segments at the specified level in the rows of squares from <tt>firstRow</tt>
+	 * (inclusive) to <tt>lastRow</tt> (exclusive). Each end of a segment is named by the side of a
+	 * square it lies on, as numbered by <tt>side</tt>.
+	 */
+	private static Segments march(float[] values, int width, int height, int firstRow, int lastRow, float level) {
+		Segments segments = new Segments();
+		for (int j = firstRow; j < lastRow; j++)
+			for (int i = 0; i < width - 1; i++) {
+				int k = i * height + j;
+				float a = values[k], b = values[k + height], c = values[k + height + 1], d = values[k + 1];
+				if (a != a || b != b || c != c || d != d) continue; // a corner is outside the circuit
+
+				int index = (a >= level ? 1 : 0) | (b >= level ? 2 : 0) | (c >= level ? 4 : 0) | (d >= level ? 8 : 0);
+				int[] sides = SIDES[index];
+				if ((index == 5 || index == 10) && (a + b + c + d) / 4 >= level)
+					sides = SIDES[15 - index]; // the saddle's center is above, so its other pairing
+				for (int n = 0; n < sides.length; n += 2)
+					segments.add(side(i, j, height, sides[n]), side(i, j, height, sides[n + 1]));
+			}
+		return segments;
+	}
+
+	/**
+	 * Returns the number of the specified side of the square whose top left corner is (i, j). Every
+	 * horizontal and vertical step between neighboring Poynts has its own number, shared by the two
+	 * squares on either side of it.
+	 */
+	private static long side(int i, int j, int height, int side) {
+		switch (side) {
+			case TOP: return ((long) i * height + j) * 2;
+			case RIGHT: return ((long) (i + 1) * height + j) * 2 + 1;
+			case BOTTOM: return ((long) i * height + j + 1) * 2;
+			default: return ((long) i * height + j) * 2 + 1;
+		}
+	}
+
+	/**
+	 * Joins segments that share an end into polylines, and adds them to a new path.
+	 */
+	private static Path2D.Float join(List<Segments> strips, float[] values, int height, float level) {
+		int count = 0;
+		for (Segments s : strips)
+			count += s.size;
+		long[] ends = new long[2 * count]; // segment n runs from ends[2n] to ends[2n + 1]
+		int n = 0;
+		for (Segments s : strips) {
+			System.arraycopy(s.ends, 0, ends, n, 2 * s.size);
+			n += 2 * s.size;
+		}
+
+		// link each end to the other segment's end on the same side, if any
+		int[] link = new int[ends.length];
+		Map<Long, Integer> open = new HashMap<Long, Integer>(ends.length);
+		for (int e = 0; e < ends.length; e++) {
+			Integer other = open.remove(ends[e]);
+			if (other != null) {
+				link[e] = other;
+				link[other] = e;
+			} else {
+				link[e] = -1;
+				open.put(ends[e], e);
+			}
+		}
+
+		Path2D.Float path = new Path2D.Float();
+		boolean[] done = new boolean[count];
+		float[] point = new float[2];
+		for (int s = 0; s < count; s++) {
+			if (done[s]) continue;
+			// back up to the start of the polyline, or all the way round a closed one
+			int start = 2 * s;
+			while (link[start] >= 0 && link[start] / 2 != s)
+				start = link[start] ^ 1;
+			boolean closed = link[start] >= 0;
+			if (closed) start = 2 * s;
+
+			locate(ends[start], values, height, level, point);
+			path.moveTo(point[0], point[1]);
+			for (int e = start;;) {
+				done[e / 2] = true;
+				int end = e ^ 1;
+				locate(ends[end], values, height, level, point);
+				path.lineTo(point[0], point[1]);
+				if (link[end] < 0 || done[link[end] / 2]) break;
+				e = link[end];
+			}
+			if (closed) path.closePath();
+		}
+		return path;
+	}
+
+	/**
+	 * Finds where the level crosses the specified side, in board coordinates.
+	 */
+	private static void locate(long side, float[] values, int height, float level, float[] point) {
+		int k = (int) (side / 2);
+		int i = k / height, j = k % height;
+		int next = (side & 1) == 0 ? k + height : k + 1;
+		float t = (level - values[k]) / (values[next] - values[k]);
+		point[0] = (side & 1) == 0 ? i + t : i;
+		point[1] = (side & 1) == 0 ? j : j + t;
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * A growing list of segments, each a pair of side numbers.
+	 */
+	private static class Segments {
+		private long[] ends = new long[64];
+		private int size;
+
+		public void add(long from, long to) {
+			if (2 * size + 2 > ends.length)
+				ends = Arrays.copyOf(ends, 2 * ends.length);
+			ends[2 * size] = from;
+			ends[2 * size + 1] = to;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import javax.swing.JComponent;
+
+/**
+ * Shows a stack of rasterized layers as one component. The visible layers are composited, bottom
+ * first, into a single back buffer, which is all that is drawn to the screen; the buffer is only
+ * recomposited where a layer has changed, been shown or been hidden. The back buffer is a
+ * <tt>VolatileImage</tt> where the display supports one.
+ *
+ * <p>Layers are in device pixels, so on a high-resolution display they are drawn without being
+ * scaled up: a layer pixel is <tt>getPixelScale()</tt> component pixels across. The back buffer is
+ * then an ordinary image, since volatile images are scaled by the display themselves.
+ *
+ * <p>A layer may be null, in which case it takes no memory and is skipped. Whoever draws on a layer
+ * must call <tt>layerChanged</tt> afterwards.
+ *
+ * @author Noah Morris
+ */
+@SuppressWarnings("serial")
+public class LayerCanvas extends JComponent {
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final BufferedImage[] layers;
+	private final boolean[] visible;
+
+	private VolatileImage volatileBuffer;
+	private BufferedImage bufferedBuffer; // used when volatile images are unavailable
+	private boolean allDirty = true;
+	private final Rectangle dirty = new Rectangle(0, 0, -1, -1); // empty if nothing is dirty
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public LayerCanvas(int noOfLayers, Dimension size) {
+		layers = new BufferedImage[noOfLayers];
+		visible = new boolean[noOfLayers];
+		setPreferredSize(size);
+		setOpaque(true);
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Returns the number of layer pixels across a component pixel on the current display.
+	 */
+	public double getPixelScale() {
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		return gc != null ? gc.getDefaultTransform().getScaleX() : 1;
+	}
+
+	/**
+	 * Returns the size in layer pixels of the area the component covers.
+	 */
+	public Dimension getLayerSize() {
+		double scale = getPixelScale();
+		return new Dimension((int) Math.ceil(getWidth() * scale), (int) Math.ceil(getHeight() * scale));
+	}
+
+	/**
+	 * Returns the layer pixel under the specified point of the component, such as that of a mouse
+	 * event.
+	 */
+	public Point toLayer(Point p) {
+		double scale = getPixelScale();
+		return scale == 1 ? p : new Point((int) (p.x * scale), (int) (p.y * scale));
+	}
+
+	public BufferedImage getLayer(int layer) {
+		return layers[layer];
+	}
+
+	/**
+	 * Replaces the image of the specified layer, which may be null to clear it.
+	 */
+	public void setLayer(int layer, BufferedImage img) {
+		if (layers[layer] == img) return;
+		boolean shown = visible[layer] && (layers[layer] != null || img != null);
+		layers[layer] = img;
+		if (shown) invalidateAll();
+	}
+
+	public boolean isLayerVisible(int layer) {
+		return visible[layer];
+	}
+
+	public void setLayerVisible(int layer, boolean visible) {
+		if (this.visible[layer] == visible) return;
+		this.visible[layer] = visible;
+		if (layers[layer] != null) invalidateAll();
+	}
+
+	/**
+	 * Recomposites and repaints after the whole of the specified layer has been drawn on.
+	 */
+	public void layerChanged(int layer) {
+		if (visible[layer] && layers[layer] != null) invalidateAll();
+	}
+
+	/**
+	 * Recomposites and repaints the specified area, in layer pixels, after it has been drawn on in
+	 * the specified layer.
+	 */
+	public void layerChanged(int layer, Rectangle area) {
+		if (!visible[layer] || layers[layer] == null || area.isEmpty()) return;
+		dirty.add(area);
+		double scale = getPixelScale();
+		if (scale == 1)
+			repaint(area);
+		else {
+			int x = (int) Math.floor(area.x / scale), y = (int) Math.floor(area.y / scale);
+			repaint(x, y, (int) Math.ceil((area.x + area.width) / scale) - x,
+					(int) Math.ceil((area.y + area.height) / scale) - y);
+		}
+	}
+
+	/*  *************** INHERITED METHODS *************** */
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		double scale = getPixelScale();
+		Dimension size = getLayerSize();
+		if (size.width <= 0 || size.height <= 0) return;
+		do {
+			Image buffer = validateBuffer(size.width, size.height, scale == 1);
+			if (allDirty)
+				composite(buffer, 0, 0, size.width, size.height);
+			else if (!dirty.isEmpty())
+				composite(buffer, dirty.x, dirty.y, dirty.width, dirty.height);
+			allDirty = false;
+			dirty.setBounds(0, 0, -1, -1);
+			if (scale == 1)
+				g.drawImage(buffer, 0, 0, null);
+			else { // one layer pixel to each device pixel
+				Graphics2D g2 = (Graphics2D) g.create();
+				g2.scale(1 / scale, 1 / scale);
+				g2.drawImage(buffer, 0, 0, null);
+				g2.dispose();
+			}
+		} while (volatileBuffer != null && volatileBuffer.contentsLost());
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void invalidateAll() {
+		allDirty = true;
+		repaint();
+	}
+
+	/**
+	 * Returns a back buffer of the specified size whose contents are intact unless
+	 * <tt>allDirty</tt> has been set, volatile only if <tt>volatileAllowed</tt>.
+	 */
+	private Image validateBuffer(int width, int height, boolean volatileAllowed) {
+		if (volatileBuffer != null) {
+			if (volatileAllowed && volatileBuffer.getWidth() == width && volatileBuffer.getHeight() == height) {
+				int status = volatileBuffer.validate(getGraphicsConfiguration());
+				if (status == VolatileImage.IMAGE_OK)
+					return volatileBuffer;
+				if (status == VolatileImage.IMAGE_RESTORED) {
+					allDirty = true;
+					return volatileBuffer;
+				}
+			}
+			volatileBuffer.flush();
+			volatileBuffer = null;
+		} else if (bufferedBuffer != null && bufferedBuffer.getWidth() == width
+				&& bufferedBuffer.getHeight() == height)
+			return bufferedBuffer;
+
+		allDirty = true;
+		bufferedBuffer = null;
+		volatileBuffer = volatileAllowed ? createVolatileImage(width, height) : null;
+		if (volatileBuffer != null) {
+			volatileBuffer.validate(getGraphicsConfiguration());
+			return volatileBuffer;
+		}
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		bufferedBuffer = gc != null ? gc.createCompatibleImage(width, height)
+				: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		return bufferedBuffer;
+	}
+
+	private void composite(Image buffer, int x, int y, int width, int height) {
+		Graphics2D g = (Graphics2D) buffer.getGraphics();
+		g.clipRect(x, y, width, height);
+		g.setColor(getBackground());
+		g.fillRect(x, y, width, height);
+		for (int layer = 0; layer < layers.length; layer++)
+			if (visible[layer] && layers[layer] != null)
+				g.drawImage(layers[layer], 0, 0, null);
+		g.dispose();
+	}
+}
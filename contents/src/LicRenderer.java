@@ -0,0 +1,196 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+/**
+ * Draws the direction of the Poynting vector of a calculated <tt>CircuitBoard</tt> as a texture, by
+ * line integral convolution: white noise is averaged along the streamline through each texel, which
+ * smears it into streaks that follow the flow.
+ *
+ * <p>Uses fast LIC: the average is kept as a running sum while sliding along a streamline, so one
+ * streamline gives the values of every texel it passes for little more than the cost of one, and
+ * each texel is seeded only if no earlier streamline has passed through it. The texture is split
+ * into tiles drawn in parallel on the <tt>Workers</tt> pool; each tile traces its own streamlines,
+ * which may wander out of it to read the noise but only leave values on its own texels.
+ *
+ * @author Noah Morris
+ */
+public class LicRenderer {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int MAX_TEXELS = 1 << 21; // texture size limit, about 8 MB
+
+	private static final int KERNEL = 12; // texels averaged on either side
+	private static final int EXTRA = 24; // further texels along each streamline given values from it
+	private static final int TILE_SIZE = 64;
+	private static final long NOISE_SEED = 1;
+	private static final double CONTRAST = 2.5; // standard deviations either side of the mean shown
+	private static final int MAX_ALPHA = 208;
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the texels per board point at which to draw the texture of the specified board to
+	 * match drawings at the specified scale factor, within <tt>MAX_TEXELS</tt>.
+	 */
+	public static int resolutionFor(CircuitBoard board, int scaleFactor) {
+		int resolution = scaleFactor + 1;
+		while (resolution > 1 && (long) board.getWidth() * board.getHeight() * resolution * resolution > MAX_TEXELS)
+			resolution--;
+		return resolution;
+	}
+
+	/**
+	 * Draws the texture of the specified board at <tt>resolution</tt> texels per board point, in
+	 * the specified color. Texel (<i>u</i>, <i>v</i>) covers board coordinates from
+	 * (<i>u</i>, <i>v</i>) / <tt>resolution</tt> - 0.5 onwards, so that board point (<i>i</i>,
+	 * <i>j</i>) lies at the center of its texels. Texels outside the circuit are transparent.
+	 */
+	public static BufferedImage render(CircuitBoard board, final int resolution, Color color) {
+		final PoyntingField field = new PoyntingField(board);
+		final int width = board.getWidth() * resolution, height = board.getHeight() * resolution;
+
+		final float[] noise = new float[width * height]; // row-major, like the image
+		Random random = new Random(NOISE_SEED);
+		for (int k = 0; k < noise.length; k++)
+			noise[k] = random.nextFloat();
+
+		final float[] texture = new float[width * height]; // NaN outside the circuit
+		final int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE, tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+		Workers.forEachRange(tilesAcross * tilesDown, new Workers.Range() {
+			public void run(int from, int to) {
+				for (int t = from; t < to; t++)
+					convolveTile(field, resolution, noise, width, height, texture, t % tilesAcross * TILE_SIZE,
+							t / tilesAcross * TILE_SIZE);
+			}
+		});
+
+		// stretch the contrast about the mean, since averaging flattens the noise
+		double sum = 0, sumOfSquares = 0;
+		int count = 0;
+		for (float v : texture)
+			if (v == v) {
+				sum += v;
+				sumOfSquares += v * v;
+				count++;
+			}
+		double mean = count > 0 ? sum / count : 0.5;
+		double deviation = count > 0 ? Math.sqrt(Math.max(sumOfSquares / count - mean * mean, 1e-12)) : 1;
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int rgb = color.getRGB() & 0xffffff;
+		for (int k = 0; k < pixels.length; k++) {
+			float v = texture[k];
+			if (v != v) continue; // outside; leave transparent
+			double shade = 0.5 + (v - mean) / (2 * CONTRAST * deviation);
+			int alpha = (int) (Math.max(0, Math.min(1, shade)) * MAX_ALPHA);
+			pixels[k] = alpha << 24 | rgb;
+		}
+		return image;
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Fills in the tile of the texture whose top left texel is (<tt>u0</tt>, <tt>v0</tt>).
+	 */
+	private static void convolveTile(PoyntingField field, int resolution, float[] noise, int width, int height,
+			float[] texture, int u0, int v0) {
+		int u1 = Math.min(u0 + TILE_SIZE, width), v1 = Math.min(v0 + TILE_SIZE, height);
+		int tileWidth = u1 - u0;
+		float[] sums = new float[tileWidth * (v1 - v0)];
+		int[] hits = new int[sums.length];
+
+		int reach = KERNEL + EXTRA;
+		float[] values = new float[2 * reach + 1]; // noise along the streamline, centered on the seed
+		int[] texels = new int[2 * reach + 1];
+		double[] direction = new double[2];
+
+		for (int v = v0; v < v1; v++)
+			for (int u = u0; u < u1; u++) {
+				int local = (v - v0) * tileWidth + u - u0;
+				if (hits[local] > 0) continue;
+				double x = (u + 0.5) / resolution - 0.5, y = (v + 0.5) / resolution - 0.5; // board coordinates
+				if (!field.direction(x, y, 1, direction)) {
+					texture[v * width + u] = Float.NaN;
+					hits[local] = -1;
+					continue;
+				}
+
+				// trace the streamline both ways from the texel's center
+				texels[reach] = v * width + u;
+				values[reach] = noise[texels[reach]];
+				int ahead = trace(field, resolution, width, height, noise, x, y, 1, reach, values, texels);
+				int behind = trace(field, resolution, width, height, noise, x, y, -1, reach, values, texels);
+
+				// slide the kernel along it, leaving the average on every texel of this tile passed
+				int first = -Math.min(EXTRA, behind), last = Math.min(EXTRA, ahead);
+				float sum = 0;
+				int n = 0;
+				for (int i = Math.max(first - KERNEL, -behind); i <= Math.min(first + KERNEL, ahead); i++) {
+					sum += values[reach + i];
+					n++;
+				}
+				for (int k = first;; k++) {
+					int texel = texels[reach + k];
+					int tu = texel % width, tv = texel / width;
+					if (tu >= u0 && tu < u1 && tv >= v0 && tv < v1) {
+						int l = (tv - v0) * tileWidth + tu - u0;
+						if (hits[l] >= 0) {
+							sums[l] += sum / n;
+							hits[l]++;
+						}
+					}
+					if (k == last) break;
+					if (k + KERNEL + 1 <= ahead) {
+						sum += values[reach + k + KERNEL + 1];
+						n++;
+					}
+					if (k - KERNEL >= -behind) {
+						sum -= values[reach + k - KERNEL];
+						n--;
+					}
+				}
+			}
+
+		for (int v = v0; v < v1; v++)
+			for (int u = u0; u < u1; u++) {
+				int local = (v - v0) * tileWidth + u - u0;
+				if (hits[local] > 0)
+					texture[v * width + u] = sums[local] / hits[local];
+			}
+	}
+
+	/**
+	 * Steps along the streamline from board coordinates (<tt>x</tt>, <tt>y</tt>), one texel at a
+	 * time by the midpoint method, forwards (<tt>sign</tt> 1) or backwards (-1), recording the
+	 * texels passed and their noise at <tt>reach</tt> + <tt>sign</tt> x step.
+	 *
+	 * @return the number of steps taken, at most <tt>reach</tt>
+	 */
+	private static int trace(PoyntingField field, int resolution, int width, int height, float[] noise, double x,
+			double y, int sign, int reach, float[] values, int[] texels) {
+		double step = 1.0 / resolution; // one texel, in board coordinates
+		double[] k1 = new double[2], k2 = new double[2];
+		field.direction(x, y, sign, k1); // the seed is known to be inside
+		for (int s = 1; s <= reach; s++) {
+			if (!field.direction(x + step / 2 * k1[0], y + step / 2 * k1[1], sign, k2)) return s - 1;
+			x += step * k2[0];
+			y += step * k2[1];
+			int u = (int) Math.floor((x + 0.5) * resolution), v = (int) Math.floor((y + 0.5) * resolution);
+			if (u < 0 || v < 0 || u >= width || v >= height || !field.direction(x, y, sign, k1)) return s - 1;
+			int texel = v * width + u;
+			texels[reach + sign * s] = texel;
+			values[reach + sign * s] = noise[texel];
+		}
+		return reach;
+	}
+}
@@ -3,9 +3,6 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Graphics;
-import java.awt.Point;
-import java.awt.geom.Point2D.Double;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -67,8 +64,8 @@ public class Loop {
 	public void fillCurrent() {
 		for (Element elt : loop)
 			if (elt.getDirection(this).equals(Dir.NORTH))
-				for (Poynt p : elt)
-					for (Poynt q = p.get(Dir.EAST); !q.isOnCircuit(); q = q.get(Dir.EAST)) {
+				for (int i = 0; i < elt.size(); i++)
+					for (Poynt q = elt.get(i).get(Dir.EAST); !q.isOnCircuit(); q = q.get(Dir.EAST)) {
 						q.current = current;
 						poynts.add(q);
 						q.addLoop();
@@ -126,88 +123,18 @@ public class Loop {
 		index = i;
 	}
 
-	public void drawFlowLines(Graphics g, int noOfRegions, int scaleFactor) {
-
-		for (double level = minV; level < maxV - 0.001; level += (maxV - minV) / noOfRegions) {
-			if (level == minV)
-				continue;
-			Iterator<Poynt> perimeter = getPerimeter().iterator();
-			Poynt[] p = { perimeter.next(), null };
-			while (perimeter.hasNext()) {
-				p[1] = p[0];
-				p[0] = perimeter.next();
-				if ((p[1].potential - level) * (p[0].potential - level) <= 0) {
-					if (!(p[0].potential < p[1].potential ? p[0] : p[1]).isMarked(level)) {
-						List<Point> list = new ArrayList<Point>();
-						Poynt[] q = { p[0], p[1] };
-						list.add(interpolate(q, level, scaleFactor));
-						while (getNewPoynts(q, level))
-							list.add(interpolate(q, level, scaleFactor));
-						(q[0].potential < q[1].potential ? q[0] : q[1]).mark(level);
-
-						// Draw the flow line!
-						Point prevPoint = list.get(0);
-						for (Point point : list) {
-							g.drawLine(prevPoint.x, prevPoint.y, point.x, point.y);
-							prevPoint = point;
-						}
-					}
-				}
-			}
-		}
-	}
-	
-	private boolean getNewPoynts(Poynt[] p, double level) {
-		Dir dir = Dir.getDirection(p[0], p[1]);
-		Poynt[] left = new Poynt[2], straight = new Poynt[2], right = new Poynt[2];
-		left[0] = p[0];
-		right[1] = p[1];
-		
-		try {
-			straight[0] = left[1] = p[0].get(dir.turn(Dir.LEFT));
-			straight[1] = right[0] = p[1].get(dir.turn(Dir.LEFT));
-		} catch (IndexOutOfBoundsException e) {
-			return false;
-		}
-		
-		if(!contains(straight[0]) || !contains(straight[1]))
-			return false;
-		
-		if ((straight[1].potential - level) * (straight[0].potential - level) <= 0) {
-			p[0] = straight[0];
-			p[1] = straight[1];
-		} else if ((left[1].potential - level) * (left[0].potential - level) <= 0) {
-			p[0] = left[0];
-			p[1] = left[1];
-		} else if ((right[1].potential - level) * (right[0].potential - level) <= 0) {
-			p[0] = right[0];
-			p[1] = right[1];
-		} else
-			throw new IndexOutOfBoundsException("Problem drawing flow lines at (" + p[0] + ", " + p[1] + ")");
-
-		return true;
-	}
-
-	private Point interpolate(Poynt[] p, double level, int scaleFactor) {
-		double diff = (level - p[0].potential) / (p[1].potential - p[0].potential);
-		Dir dir = Dir.getDirection(p[0], p[1]);
-		Double pt;
-		if (dir.equals(Dir.EAST))
-			pt = new Double(p[0].x + diff, p[0].y);
-		else if (dir.equals(Dir.SOUTH))
-			pt = new Double(p[0].x, p[0].y + diff);
-		else if (dir.equals(Dir.WEST))
-			pt = new Double(p[0].x - diff, p[0].y);
-		else if (dir.equals(Dir.NORTH))
-			pt = new Double(p[0].x, p[0].y - diff);
-		else throw new DirException(dir + " is not a direction.");
-		return toPixel(pt, scaleFactor);
-	}
-	
-	private Point toPixel(Double pt, int scaleFactor) {
-		int x = (int) (pt.x * (scaleFactor + 1)); 
-		int y = (int) (pt.y * (scaleFactor + 1)); 
-		return new Point(x, y);
-	}
-
-}
\ No newline at end of file
+	/**
+	 * Returns the potentials, between this loop's extremes, at which its flow lines are traced when
+	 * the loop is divided into the specified number of regions.
+	 */
+	public double[] getFlowLineLevels(int noOfRegions) {
+		List<Double> levels = new ArrayList<Double>();
+		for (double level = minV; level < maxV - 0.001; level += (maxV - minV) / noOfRegions)
+			if (level != minV)
+				levels.add(level);
+		double[] result = new double[levels.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = levels.get(i);
+		return result;
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a page of vector graphics as a one-page PDF document, one page unit to a point. The page's
+ * content is compressed as it is written, setting only what has changed of the graphics state
+ * between one path and the next. Text is filled in as glyph outlines, so no fonts are
+ * needed. Images are compressed and written once each, after the content, along with the page's
+ * resources; an image with any transparency gets a soft mask.
+ *
+ * @author Noah Morris
+ */
+public class PdfWriter extends VectorWriter {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int CATALOG = 1, PAGES = 2, PAGE = 3, CONTENTS = 4, RESOURCES = 5;
+	private static final String ASCII = "ISO-8859-1";
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final Counter stream;
+	private final List<Long> offsets = new ArrayList<Long>(); // of each object, by number
+	private OutputStream content; // the stream being written, compressed
+	private Deflater deflater; // its compressor, ended with the stream
+	private long contentStart; // offset of its first byte
+	private int contentLength; // the object its length is written to
+	private final StringBuilder line = new StringBuilder(); // each operation is built here before it is written
+	private final Map<BufferedImage, Integer> images = new IdentityHashMap<BufferedImage, Integer>(); // -> name, /Im<n>
+	private final List<BufferedImage> imageList = new ArrayList<BufferedImage>();
+	private final List<Boolean> smoothList = new ArrayList<Boolean>();
+	private final TreeSet<Integer> alphas = new TreeSet<Integer>(); // graphics states needed, by alpha
+
+	// the graphics state as last set, starting from the defaults
+	private int strokeRGB, fillRGB, alpha = 255, cap = BasicStroke.CAP_BUTT, join = BasicStroke.JOIN_MITER;
+	private float lineWidth = 1, miterLimit = 10, dashPhase;
+	private float[] dash;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Starts a page of the specified size, in points, on the stream.
+	 */
+	public PdfWriter(OutputStream stream, double width, double height) throws IOException {
+		this.stream = new Counter(stream);
+		offsets.add(0L); // object 0 is always free
+		write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+		writeObject(CATALOG, "<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+		writeObject(PAGES, "<< /Type /Pages /Kids [" + PAGE + " 0 R] /Count 1 >>");
+		writeObject(PAGE, "<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + number(width) + " "
+				+ number(height) + "] /Contents " + CONTENTS + " 0 R /Resources " + RESOURCES + " 0 R >>");
+		while (offsets.size() <= RESOURCES)
+			offsets.add(null); // the contents come next, and the resources last
+		beginStream(CONTENTS, "");
+		// page coordinates run down from the top left
+		write(content, "1 0 0 -1 0 " + number(height) + " cm\n");
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	@Override
+	public void stroke(Shape shape, Color color, BasicStroke stroke) {
+		line.setLength(0);
+		appendAlpha(color.getAlpha());
+		if ((color.getRGB() & 0xffffff) != strokeRGB) {
+			strokeRGB = color.getRGB() & 0xffffff;
+			appendColor(color);
+			line.append(" RG\n");
+		}
+		if (stroke.getLineWidth() != lineWidth) {
+			lineWidth = stroke.getLineWidth();
+			line.append(number(lineWidth)).append(" w\n");
+		}
+		if (stroke.getEndCap() != cap) {
+			cap = stroke.getEndCap(); // numbered as PDF numbers them
+			line.append(cap).append(" J\n");
+		}
+		if (stroke.getLineJoin() != join) {
+			join = stroke.getLineJoin();
+			line.append(join).append(" j\n");
+		}
+		if (stroke.getMiterLimit() != miterLimit) {
+			miterLimit = stroke.getMiterLimit();
+			line.append(number(miterLimit)).append(" M\n");
+		}
+		if (!Arrays.equals(stroke.getDashArray(), dash) || stroke.getDashPhase() != dashPhase) {
+			dash = stroke.getDashArray();
+			dashPhase = stroke.getDashPhase();
+			line.append('[');
+			for (int i = 0; dash != null && i < dash.length; i++)
+				line.append(i > 0 ? " " : "").append(number(dash[i]));
+			line.append("] ").append(number(dashPhase)).append(" d\n");
+		}
+		appendPath(line, shape);
+		line.append("S\n");
+		writeContent();
+	}
+
+	@Override
+	public void fill(Shape shape, Color color) {
+		line.setLength(0);
+		appendAlpha(color.getAlpha());
+		if ((color.getRGB() & 0xffffff) != fillRGB) {
+			fillRGB = color.getRGB() & 0xffffff;
+			appendColor(color);
+			line.append(" rg\n");
+		}
+		appendPath(line, shape);
+		line.append(shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD ? "f*\n" : "f\n");
+		writeContent();
+	}
+
+	@Override
+	public void image(BufferedImage image, AffineTransform transform, boolean smooth) {
+		Integer name = images.get(image);
+		if (name == null) {
+			name = imageList.size() + 1;
+			images.put(image, name);
+			imageList.add(image);
+			smoothList.add(smooth);
+		}
+		// image space is the unit square, its first row at the top
+		AffineTransform at = new AffineTransform(transform);
+		at.translate(0, image.getHeight());
+		at.scale(image.getWidth(), -image.getHeight());
+		line.setLength(0);
+		appendAlpha(255);
+		line.append("q ").append(number(at.getScaleX())).append(' ').append(number(at.getShearY())).append(' ')
+				.append(number(at.getShearX())).append(' ').append(number(at.getScaleY())).append(' ')
+				.append(number(at.getTranslateX())).append(' ').append(number(at.getTranslateY()))
+				.append(" cm /Im").append(name).append(" Do Q\n");
+		writeContent();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		checkError();
+		endStream();
+
+		// the images, then the resources naming them
+		StringBuilder xObjects = new StringBuilder();
+		for (int n = 0; n < imageList.size(); n++)
+			xObjects.append(" /Im").append(n + 1).append(' ').append(writeImage(imageList.get(n), smoothList.get(n)))
+					.append(" 0 R");
+		StringBuilder states = new StringBuilder();
+		for (int alpha : alphas) {
+			int object = offsets.size();
+			String a = number(alpha / 255.0);
+			writeObject(object, "<< /Type /ExtGState /ca " + a + " /CA " + a + " >>");
+			states.append(" /A").append(alpha).append(' ').append(object).append(" 0 R");
+		}
+		writeObject(RESOURCES, "<< /ProcSet [/PDF /ImageB /ImageC]"
+				+ (xObjects.length() > 0 ? " /XObject <<" + xObjects + " >>" : "")
+				+ (states.length() > 0 ? " /ExtGState <<" + states + " >>" : "") + " >>");
+
+		// cross-reference table and trailer
+		long xref = stream.count;
+		StringBuilder table = new StringBuilder("xref\n0 " + offsets.size() + "\n0000000000 65535 f \n");
+		for (int n = 1; n < offsets.size(); n++)
+			table.append(String.format("%010d 00000 n \n", offsets.get(n)));
+		table.append("trailer\n<< /Size ").append(offsets.size()).append(" /Root ").append(CATALOG)
+				.append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+		write(table.toString());
+		stream.flush();
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private void appendAlpha(int a) {
+		if (a == alpha) return;
+		alpha = a;
+		alphas.add(a);
+		line.append("/A").append(a).append(" gs\n");
+	}
+
+	private void appendColor(Color color) {
+		line.append(number(color.getRed() / 255.0)).append(' ').append(number(color.getGreen() / 255.0)).append(' ')
+				.append(number(color.getBlue() / 255.0));
+	}
+
+	@Override
+	protected void moveTo(StringBuilder builder, float x, float y) {
+		builder.append(number(x)).append(' ').append(number(y)).append(" m\n");
+	}
+
+	@Override
+	protected void lineTo(StringBuilder builder, float x, float y) {
+		builder.append(number(x)).append(' ').append(number(y)).append(" l\n");
+	}
+
+	@Override
+	protected void curveTo(StringBuilder builder, float x1, float y1, float x2, float y2, float x3, float y3) {
+		builder.append(number(x1)).append(' ').append(number(y1)).append(' ').append(number(x2)).append(' ')
+				.append(number(y2)).append(' ').append(number(x3)).append(' ').append(number(y3)).append(" c\n");
+	}
+
+	@Override
+	protected void closePath(StringBuilder builder) {
+		builder.append("h\n");
+	}
+
+	private void writeContent() {
+		try {
+			write(content, line.toString());
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Writes an image and, if it has any transparency, its soft mask.
+	 *
+	 * @return the image's object number
+	 */
+	private int writeImage(BufferedImage image, boolean smooth) throws IOException {
+		int width = image.getWidth(), height = image.getHeight();
+		int[] row = new int[width];
+		boolean opaque = true;
+		for (int y = 0; y < height && opaque; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int argb : row)
+				if (argb >>> 24 != 255) {
+					opaque = false;
+					break;
+				}
+		}
+		String common = "/Type /XObject /Subtype /Image /Width " + width + " /Height " + height
+				+ " /BitsPerComponent 8" + (smooth ? " /Interpolate true" : "");
+
+		int mask = 0;
+		byte[] bytes = new byte[3 * width];
+		if (!opaque) {
+			mask = offsets.size();
+			beginStream(mask, " " + common + " /ColorSpace /DeviceGray");
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, row, 0, width);
+				for (int x = 0; x < width; x++)
+					bytes[x] = (byte) (row[x] >>> 24);
+				content.write(bytes, 0, width);
+			}
+			endStream();
+		}
+
+		int object = offsets.size();
+		beginStream(object, " " + common + " /ColorSpace /DeviceRGB" + (mask > 0 ? " /SMask " + mask + " 0 R" : ""));
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0, b = 0; x < width; x++) {
+				bytes[b++] = (byte) (row[x] >> 16);
+				bytes[b++] = (byte) (row[x] >> 8);
+				bytes[b++] = (byte) row[x];
+			}
+			content.write(bytes);
+		}
+		endStream();
+		return object;
+	}
+
+	private void writeObject(int object, String body) throws IOException {
+		startObject(object);
+		write(body + "\nendobj\n");
+	}
+
+	private void startObject(int object) throws IOException {
+		while (offsets.size() <= object)
+			offsets.add(null);
+		offsets.set(object, stream.count);
+		write(object + " 0 obj\n");
+	}
+
+	/**
+	 * Starts a compressed stream object, whose dictionary holds the specified entries as well as its
+	 * filter and length. The length is written after the stream, as an object of its own.
+	 */
+	private void beginStream(int object, String entries) throws IOException {
+		startObject(object);
+		contentLength = offsets.size();
+		offsets.add(null);
+		write("<< /Length " + contentLength + " 0 R /Filter /FlateDecode" + entries + " >>\nstream\n");
+		contentStart = stream.count;
+		deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		content = new DeflaterOutputStream(new FilterOutputStream(stream) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush(); // leave the document's stream open
+			}
+		}, deflater, 8192);
+	}
+
+	/**
+	 * Ends the stream begun by <tt>beginStream</tt>, and writes its length.
+	 */
+	private void endStream() throws IOException {
+		try {
+			content.close();
+		} finally {
+			deflater.end(); // not ended by the stream, since it was passed in
+		}
+		long length = stream.count - contentStart;
+		write("\nendstream\nendobj\n");
+		writeObject(contentLength, Long.toString(length));
+	}
+
+	private void write(String text) throws IOException {
+		write(stream, text);
+	}
+
+	private static void write(OutputStream out, String text) throws IOException {
+		out.write(text.getBytes(ASCII));
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * Counts the bytes written, for the cross-reference table.
+	 */
+	private static class Counter extends FilterOutputStream {
+		private long count;
+
+		public Counter(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -3,17 +3,20 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
-@SuppressWarnings("serial")
-public class Poynt extends Point {
+/**
+ * A point of a <tt>CircuitBoard</tt>, holding the fields found there. Poynts are equal when they
+ * are at the same place.
+ */
+public class Poynt {
 
 	/*  *************** DATA MEMBERS *************** */
 	
+	public final int x, y;
 	protected double current; // in amperes; positive = clockwise
 	protected double potential; // in volts
 	protected double eFieldX; // in newtons/coulomb
@@ -23,7 +26,7 @@ public class Poynt extends Point {
 	protected double poyntY;
 
 	private boolean isOnCircuit;
-	private double scratch; // for general mark-up; gets used in building circuit and in drawing flow-lines
+	private double scratch; // for general mark-up; gets used in building circuit
 	private double loopCount;
 	private boolean[] neighbors;
 	private int neighborCount;
@@ -33,12 +36,8 @@ public class Poynt extends Point {
 	/*  *************** CONSTRUCTOR *************** */
 
 	public Poynt(int x, int y, CircuitBoard board) {
-		this(new Point(x, y), board);
-	}
-
-	public Poynt(Point p, CircuitBoard board) {
-		x = p.x;
-		y = p.y;
+		this.x = x;
+		this.y = y;
 		potential = java.lang.Double.NEGATIVE_INFINITY;
 		current = 0.0;
 		loopCount = 0;
@@ -61,26 +60,22 @@ public class Poynt extends Point {
 	}
 	
 	public void addNeighbor(Poynt p) {
+		addNeighbor(Dir.getDirection(this, p));
+	}
+	
+	public void addNeighbor(Dir direction) {
 		if (neighbors == null) neighbors = new boolean[] {false, false, false, false};
-		neighbors[Dir.getDirection(this, p).dir] = true;
+		neighbors[direction.ordinal()] = true;
 		neighborCount++;
 		if (neighborCount > 2) board.addNode(this);
 	}
 	
-	public void addNeighbor(Dir direction) {
-		
-	}
-
 	public double getLoopCount() {
 		return loopCount;
 	}
 	
 	public Poynt get(Dir direction) {
-		if (direction.equals(Dir.SOUTH)) return board.get(x, y + 1);
-		else if (direction.equals(Dir.EAST)) return board.get(x + 1, y);
-		else if (direction.equals(Dir.NORTH)) return board.get(x, y - 1);
-		else if (direction.equals(Dir.WEST)) return board.get(x - 1, y);
-		else throw new DirException(direction + " is not a valid direction.");
+		return board.get(x + direction.dx, y + direction.dy);
 	}
 	
 	public static Poynt minimum(Poynt... poynts) {
@@ -103,31 +98,20 @@ public class Poynt extends Point {
 		Collection<Poynt> set = new ArrayList<Poynt>(neighborCount);
 		for (int i = 0; i < 3; i++)
 			if (neighbors[i])
-				set.add(getNeighbor(new Dir(i)));
+				set.add(getNeighbor(Dir.ALL[i]));
 		return set;
 	}
 
 	public Poynt getRightmostNeighbor(Dir direction) {
-		Poynt p = null;
-		if (direction.equals(Dir.NORTH)) {
-			p = getNeighbor(Dir.EAST);
-			if (p == null) p = getNeighbor(Dir.NORTH);
-			if (p == null) p = getNeighbor(Dir.WEST);
-		} else if (direction.equals(Dir.SOUTH)) {
-			p = getNeighbor(Dir.WEST);
-			if (p == null) p = getNeighbor(Dir.SOUTH);
-			if (p == null) p = getNeighbor(Dir.EAST);
-		} else if (direction.equals(Dir.WEST)) {
-			p = getNeighbor(Dir.NORTH);
-			if (p == null) p = getNeighbor(Dir.WEST);
-			if (p == null) p = getNeighbor(Dir.SOUTH);
-		} else if (direction.equals(Dir.EAST)) {
-			p = getNeighbor(Dir.SOUTH);
-			if (p == null) p = getNeighbor(Dir.EAST);
-			if (p == null) p = getNeighbor(Dir.NORTH);
-		}
-		if (p == null) throw new IllegalCircuitException("Error at point " + this + ": Dead end.");
-		return p;
+		return get(getRightmostDirection(direction));
+	}
+
+	public Dir getRightmostDirection(Dir direction) {
+		Dir[] order = direction.rightmostOrder();
+		for (int i = 0; i < order.length; i++)
+			if (hasNeighbor(order[i]))
+				return order[i];
+		throw new IllegalCircuitException("Error at point " + this + ": Dead end.");
 	}
 
 	public Poynt getNeighbor(Dir direction) {
@@ -138,7 +122,7 @@ public class Poynt extends Point {
 	
 	public boolean hasNeighbor(Dir direction) {
 		if (neighbors == null) return false;
-		return neighbors[direction.dir];
+		return neighbors[direction.ordinal()];
 	}
 	
 	public void addElement(Element elt) {
@@ -150,10 +134,8 @@ public class Poynt extends Point {
 		return elements;
 	}
 	
-	public Point toPixel(int scaleFactor) {
-		int x = this.x * (scaleFactor + 1) - scaleFactor / 2;
-		int y = this.y * (scaleFactor + 1) - scaleFactor / 2;
-		return new Point(x, y);
+	public CircuitBoard getBoard() {
+		return board;
 	}
 	
 	public double mark(double d) {
@@ -176,4 +158,37 @@ public class Poynt extends Point {
 	public boolean bFieldDir() {
 		return bFieldZ > 0;
 	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/*  *************** INHERITED METHODS *************** */
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Poynt)) return false;
+		Poynt p = (Poynt) o;
+		return x == p.x && y == p.y;
+	}
+
+	/**
+	 * Returns the hash code <tt>java.awt.Point</tt> would, so hashed collections of Poynts keep their
+	 * order.
+	 */
+	@Override
+	public int hashCode() {
+		long bits = java.lang.Double.doubleToLongBits(x);
+		bits ^= java.lang.Double.doubleToLongBits(y) * 31;
+		return (int) bits ^ (int) (bits >> 32);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getName() + "[x=" + x + ",y=" + y + "]";
+	}
 }
\ No newline at end of file
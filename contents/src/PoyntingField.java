@@ -0,0 +1,69 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * The direction of the Poynting vector of a calculated <tt>CircuitBoard</tt> at any point inside the
+ * circuit, interpolated bilinearly between Poynts. Holds its own copy of the field, so it can be
+ * read from any number of threads.
+ *
+ * @author Noah Morris
+ */
+public class PoyntingField {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final double MIN_MAGNITUDE = 1e-4; // of the normalized Poynting vector, below which there is no direction
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final int width, height; // of the board
+	private final float[] vx, vy; // column-major, like the board; NaN outside the circuit and on it
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public PoyntingField(CircuitBoard board) {
+		width = board.getWidth();
+		height = board.getHeight();
+		vx = new float[width * height];
+		vy = new float[width * height];
+		for (int i = 0, k = 0; i < width; i++)
+			for (int j = 0; j < height; j++, k++) {
+				Poynt p = board.get(i, j);
+				boolean inside = p.getLoopCount() > 0 && !p.isOnCircuit();
+				vx[k] = inside ? (float) p.poyntX : Float.NaN;
+				vy[k] = inside ? (float) p.poyntY : Float.NaN;
+			}
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Finds the unit direction of the flow at the specified board coordinates, reversed if
+	 * <tt>sign</tt> is negative, interpolated bilinearly from the four Poynts around it.
+	 *
+	 * @return false if any of those Poynts is outside the circuit or the flow there is too weak
+	 */
+	public boolean direction(double x, double y, int sign, double[] v) {
+		if (!(x >= 0 && y >= 0 && x < width - 1 && y < height - 1)) return false;
+		int i = (int) x, j = (int) y;
+		double s = x - i, t = y - j;
+		int k = i * height + j;
+		double u = (1 - s) * ((1 - t) * vx[k] + t * vx[k + 1]) + s * ((1 - t) * vx[k + height] + t * vx[k + height + 1]);
+		double w = (1 - s) * ((1 - t) * vy[k] + t * vy[k + 1]) + s * ((1 - t) * vy[k + height] + t * vy[k + height + 1]);
+		double magnitude = Math.hypot(u, w);
+		if (!(magnitude > MIN_MAGNITUDE)) return false; // also catches NaN
+		v[0] = sign * u / magnitude;
+		v[1] = sign * w / magnitude;
+		return true;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * The power crossing line segments drawn on a calculated <tt>CircuitBoard</tt>: the integral of the
+ * Poynting vector, interpolated bilinearly between points, along the segment's normal. Running sums
+ * of <i>S<sub>x</sub></i> down every column and <i>S<sub>y</sub></i> along every row are taken once,
+ * so a segment along a row or column costs the same however long it is; any other segment costs one
+ * step per cell it crosses, and is exact for the same interpolated field.
+ *
+ * <p>Coordinates are in board points, with y growing downwards. Power crossing a segment is positive
+ * when it flows to the right of the direction of travel as seen on screen, so a loop traced
+ * clockwise on screen gives the power flowing into the region it encloses. Off the board and outside
+ * the circuit the field is taken to be zero.
+ *
+ * @author Noah Morris
+ */
+public class PoyntingFlux {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int PARALLEL_THRESHOLD = 256; // segments; fewer are integrated on the calling thread
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final int width, height;
+	private final double spacing; // meters between points
+	private final double[] sx, sy; // column-major, in W/m^2
+	private final double[] columnSums; // column-major; the integral of sx from the top of the column to each point
+	private final double[] rowSums; // row-major; the integral of sy from the left of the row to each point
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Takes the running sums of the specified board's Poynting vector.
+	 *
+	 * @throws IllegalStateException if the board is not calculated
+	 */
+	public PoyntingFlux(CircuitBoard board) throws IllegalStateException {
+		if (!board.isCalculated())
+			throw new IllegalStateException("Only a calculated board has a Poynting flux.");
+		width = board.getWidth();
+		height = board.getHeight();
+		spacing = board.getSpacing();
+		sx = new double[width * height];
+		sy = new double[width * height];
+
+		double s = board.getMax().poyntMag();
+		for (int i = 0, k = 0; i < width; i++)
+			for (int j = 0; j < height; j++, k++) {
+				Poynt p = board.get(i, j);
+				if (p.getLoopCount() > 0) {
+					sx[k] = p.poyntX * s;
+					sy[k] = p.poyntY * s;
+				}
+			}
+
+		// Trapezoids, which are exact for the field as interpolated along rows and columns
+		columnSums = new double[width * height];
+		for (int i = 0; i < width; i++) {
+			int k = i * height;
+			for (int j = 1; j < height; j++)
+				columnSums[k + j] = columnSums[k + j - 1] + (sx[k + j - 1] + sx[k + j]) / 2;
+		}
+		rowSums = new double[width * height];
+		for (int j = 0; j < height; j++) {
+			int k = j * width;
+			for (int i = 1; i < width; i++)
+				rowSums[k + i] = rowSums[k + i - 1] + (sy[(i - 1) * height + j] + sy[i * height + j]) / 2;
+		}
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Returns the power, in watts per meter of depth, crossing the segment from (<tt>x0</tt>,
+	 * <tt>y0</tt>) to (<tt>x1</tt>, <tt>y1</tt>).
+	 */
+	public double across(double x0, double y0, double x1, double y1) {
+		if (y0 == y1) {
+			if (!(y0 >= 0 && y0 <= height - 1)) return 0;
+			return (rowIntegral(y0, clamp(x1, width)) - rowIntegral(y0, clamp(x0, width))) * spacing;
+		}
+		if (x0 == x1) {
+			if (!(x0 >= 0 && x0 <= width - 1)) return 0;
+			return -(columnIntegral(x0, clamp(y1, height)) - columnIntegral(x0, clamp(y0, height))) * spacing;
+		}
+		return diagonal(x0, y0, x1, y1) * spacing;
+	}
+
+	/**
+	 * Returns the power, in watts per meter of depth, crossing the polyline through the first
+	 * <tt>count</tt> points of <tt>x</tt> and <tt>y</tt>. To enclose a region, repeat the first point
+	 * at the end.
+	 */
+	public double across(double[] x, double[] y, int count) {
+		double power = 0;
+		for (int k = 1; k < count; k++)
+			power += across(x[k - 1], y[k - 1], x[k], y[k]);
+		return power;
+	}
+
+	/**
+	 * Puts the power crossing each of the first <tt>count</tt> segments, from (<tt>x0[k]</tt>,
+	 * <tt>y0[k]</tt>) to (<tt>x1[k]</tt>, <tt>y1[k]</tt>), in <tt>out[k]</tt>. Large batches are split
+	 * across the worker pool.
+	 */
+	public void across(final double[] x0, final double[] y0, final double[] x1, final double[] y1, int count,
+			final double[] out) {
+		Workers.Range range = new Workers.Range() {
+			public void run(int from, int to) {
+				for (int k = from; k < to; k++)
+					out[k] = across(x0[k], y0[k], x1[k], y1[k]);
+			}
+		};
+		if (count < PARALLEL_THRESHOLD)
+			range.run(0, count);
+		else
+			Workers.forEachRange(count, range);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Returns the integral of sx down column <tt>x</tt>, interpolated between the columns either side
+	 * of it, from the top of the board to <tt>y</tt>.
+	 */
+	private double columnIntegral(double x, double y) {
+		int i = cell(x, width);
+		double fx = x - i;
+		double sum = (1 - fx) * partial(columnSums, i * height, sx, i * height, 1, y, height);
+		if (fx > 0)
+			sum += fx * partial(columnSums, (i + 1) * height, sx, (i + 1) * height, 1, y, height);
+		return sum;
+	}
+
+	/**
+	 * Returns the integral of sy along row <tt>y</tt>, interpolated between the rows either side of
+	 * it, from the left of the board to <tt>x</tt>.
+	 */
+	private double rowIntegral(double y, double x) {
+		int j = cell(y, height);
+		double fy = y - j;
+		double sum = (1 - fy) * partial(rowSums, j * width, sy, j, height, x, width);
+		if (fy > 0)
+			sum += fy * partial(rowSums, (j + 1) * width, sy, j + 1, height, x, width);
+		return sum;
+	}
+
+	/**
+	 * Returns a running sum, which starts at <tt>sums[sumStart]</tt>, up to the real position
+	 * <tt>t</tt> between two of its points. The field it sums is read from <tt>fieldStart</tt> onwards,
+	 * <tt>fieldStep</tt> apart.
+	 */
+	private static double partial(double[] sums, int sumStart, double[] field, int fieldStart, int fieldStep,
+			double t, int length) {
+		int k = cell(t, length);
+		double u = t - k;
+		if (u == 0) return sums[sumStart + k];
+		double a = field[fieldStart + k * fieldStep], b = field[fieldStart + (k + 1) * fieldStep];
+		return sums[sumStart + k] + u * a + u * u / 2 * (b - a);
+	}
+
+	/**
+	 * Returns the flux, in board points, across a segment that runs along neither a row nor a
+	 * column. The segment is clipped to the board and split where it crosses a row or column; the
+	 * interpolated field is quadratic along each piece, so Simpson's rule integrates it exactly.
+	 */
+	private double diagonal(double x0, double y0, double x1, double y1) {
+		double dx = x1 - x0, dy = y1 - y0;
+
+		// Clip to the board (Liang-Barsky)
+		double t0 = 0, t1 = 1;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x0, width - 1 - x0, y0, height - 1 - y0 };
+		for (int k = 0; k < 4; k++) {
+			if (p[k] == 0) {
+				if (q[k] < 0) return 0;
+			} else {
+				double r = q[k] / p[k];
+				if (p[k] < 0) t0 = Math.max(t0, r);
+				else t1 = Math.min(t1, r);
+			}
+		}
+		if (!(t0 < t1)) return 0;
+
+		// Step from one row or column crossing to the next
+		double nextX = nextCrossing(x0, dx, t0), nextY = nextCrossing(y0, dy, t0);
+		double sum = 0, t = t0, g = normal(x0 + t * dx, y0 + t * dy, dx, dy);
+		while (t < t1) {
+			double next = Math.min(Math.min(nextX, nextY), t1);
+			double mid = (t + next) / 2;
+			double gNext = normal(x0 + next * dx, y0 + next * dy, dx, dy);
+			sum += (next - t) / 6 * (g + 4 * normal(x0 + mid * dx, y0 + mid * dy, dx, dy) + gNext);
+			if (next == nextX) nextX = nextCrossing(x0, dx, next);
+			if (next == nextY) nextY = nextCrossing(y0, dy, next);
+			t = next;
+			g = gNext;
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the first t after <tt>t</tt> at which <tt>a + t * da</tt> is a whole number.
+	 */
+	private static double nextCrossing(double a, double da, double t) {
+		if (da == 0) return Double.POSITIVE_INFINITY;
+		double at = a + t * da;
+		double whole = da > 0 ? Math.floor(at) + 1 : Math.ceil(at) - 1;
+		double next = (whole - a) / da;
+		return next > t ? next : (whole + Math.signum(da) - a) / da; // rounded back onto t
+	}
+
+	/**
+	 * Returns the interpolated Poynting vector at (<tt>x</tt>, <tt>y</tt>) dotted with the normal
+	 * (-<tt>dy</tt>, <tt>dx</tt>).
+	 */
+	private double normal(double x, double y, double dx, double dy) {
+		x = clamp(x, width); // against rounding at the ends of a clipped segment
+		y = clamp(y, height);
+		int i = cell(x, width), j = cell(y, height);
+		double fx = x - i, fy = y - j;
+		int i1 = Math.min(i + 1, width - 1), j1 = Math.min(j + 1, height - 1);
+		int k00 = i * height + j, k10 = i1 * height + j, k01 = i * height + j1, k11 = i1 * height + j1;
+		double w00 = (1 - fx) * (1 - fy), w10 = fx * (1 - fy), w01 = (1 - fx) * fy, w11 = fx * fy;
+		double vx = w00 * sx[k00] + w10 * sx[k10] + w01 * sx[k01] + w11 * sx[k11];
+		double vy = w00 * sy[k00] + w10 * sy[k10] + w01 * sy[k01] + w11 * sy[k11];
+		return -vx * dy + vy * dx;
+	}
+
+	/**
+	 * Returns the whole part of a position along a side of the specified length, such that the
+	 * position lies between it and the next point.
+	 */
+	private static int cell(double t, int length) {
+		return Math.max(Math.min((int) t, length - 2), 0);
+	}
+
+	private static double clamp(double t, int length) {
+		return Math.max(0, Math.min(t, length - 1));
+	}
+}
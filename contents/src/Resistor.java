@@ -3,10 +3,6 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Graphics;
-import java.awt.Point;
-import java.util.Iterator;
-
 /**
  * @author Noah Morris
  */
@@ -41,36 +37,12 @@ public class Resistor extends NotWire {
 		int sign = getAssignedDirection().equals(getDirection(loop)) ? -1 : 1;
 		double voltageChange = value * getCurrent() * sign;
 		double newVoltage = oldVoltage + voltageChange;
-		double increment = voltageChange / (poynts.size() - 1);
-		for (Iterator<Poynt> it = iterateClockwise(loop); it.hasNext();) {
-			it.next().potential = oldVoltage;
-			oldVoltage += increment;
-		}
+		double increment = voltageChange / (size() - 1);
+		oldVoltage = setPotentials(oldVoltage, increment, loop);
 		voltage = Math.abs(newVoltage - oldVoltage);
 		return newVoltage;
 	}
 
-	@Override
-	public void draw(Graphics g, int sF) {
-
-		Point s = start.toPixel(sF);
-		s.translate(sF / 2, sF / 2);
-
-		for (int i = 0; i < poynts.size() - 1; i++)
-			if (isHorizontal()) {
-				int sign = i % 2 == 0 ? 1 : -1;
-				int x = s.x + i * (sF + 1), y = s.y;
-				g.drawLine(x, y, x + sF / 2 + 1, y + sign * sF);
-				g.drawLine(x + sF / 2 + 1, y + sign * sF, x + sF + 1, y);
-
-			} else {
-				int sign = i % 2 == 0 ? 1 : -1;
-				int x = s.x, y = s.y + i * (sF + 1);
-				g.drawLine(x, y, x + sign * sF, y + sF / 2 + 1);
-				g.drawLine(x + sign * sF, y + sF / 2 + 1, x, y + sF + 1);
-			}
-	}
-
 	/*  *************** PUBLIC METHODS *************** */
 
 	public double getResistance() {
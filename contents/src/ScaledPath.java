@@ -0,0 +1,64 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+
+/**
+ * Lines over a <tt>CircuitBoard</tt> as one path in board coordinates, so that they can be drawn at
+ * any scale without being worked out again. The path last drawn is kept transformed, so redrawing
+ * at the same scale, wherever the view is, costs only the stroking.
+ *
+ * @author Noah Morris
+ */
+public class ScaledPath {
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final Path2D.Float path;
+	private Shape scaled; // path as last drawn
+	private double scaledBy;
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	public ScaledPath(Path2D.Float path) {
+		this.path = path;
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Returns the lines in board coordinates.
+	 */
+	public Shape getPath() {
+		return path;
+	}
+
+	/**
+	 * Draws the lines with board point (<i>i</i>, <i>j</i>) at (<i>i</i>, <i>j</i>) x
+	 * <tt>scale</tt> in the graphics' own coordinates. The graphics may be translated and scaled but
+	 * not rotated; the lines are stroked in device pixels, so they stay thin however far the view
+	 * is zoomed in.
+	 */
+	public void draw(Graphics2D g, double scale) {
+		AffineTransform transform = g.getTransform();
+		double totalScale = scale * transform.getScaleX();
+		g.setTransform(AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+		g.draw(scaled(totalScale));
+		g.setTransform(transform);
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	private synchronized Shape scaled(double scale) {
+		if (scaled == null || scaledBy != scale) {
+			scaled = AffineTransform.getScaleInstance(scale, scale).createTransformedShape(path);
+			scaledBy = scale;
+		}
+		return scaled;
+	}
+}
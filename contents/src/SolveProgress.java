@@ -0,0 +1,37 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+/**
+ * Receives progress reports from a <tt>CircuitBoard</tt> while it is being calculated, and can ask
+ * for the calculation to stop. Reports come from the calculating thread.
+ *
+ * @author Noah Morris
+ */
+public interface SolveProgress {
+
+	/**
+	 * Called as the calculation advances.
+	 *
+	 * @param phase a short description of the current phase, e.g. "Relaxing potential"
+	 * @param iteration the current iteration within the phase, or 0 if the phase does not iterate
+	 * @param error the largest change made by the latest iteration, or 0 if the phase does not
+	 *            iterate
+	 */
+	void update(String phase, int iteration, double error);
+
+	/**
+	 * Called when the board holds a preview solved at 1/<tt>factor</tt> resolution. For the duration
+	 * of the call the board's fields are found and normalized, so it can be drawn as though it were
+	 * calculated; afterwards the calculation carries on from where it was.
+	 */
+	void preview(int factor);
+
+	/**
+	 * Returns whether the calculation should stop. If so, it throws a
+	 * <tt>java.util.concurrent.CancellationException</tt> at the next opportunity; calculating the
+	 * board again later starts the relaxation over.
+	 */
+	boolean isCancelled();
+}
@@ -0,0 +1,330 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lines of energy flow of a calculated <tt>CircuitBoard</tt>: curves everywhere tangent to the
+ * Poynting vector, each with an arrowhead at its middle. Lines are started from seeds spread evenly
+ * over the inside of the circuit and integrated both ways through the bilinearly interpolated
+ * Poynting direction by fourth-order Runge-Kutta, the step halved or doubled to keep the error
+ * small. The board is divided into cells half the spacing wide, each claimed by the first line
+ * through it; a line stops on entering a cell claimed by another, or on coming round to its own, so
+ * lines stay about evenly spaced.
+ *
+ * <p>The seeds are traced in batches on the <tt>Workers</tt> pool, each line of a batch stopping only
+ * at cells claimed by earlier batches. The batch's lines are then cut short and claim their cells in
+ * order of seed, so where two lines meet the earlier seed keeps its line, and a board gives the same
+ * streamlines on every run.
+ *
+ * @author Noah Morris
+ */
+public class Streamlines extends ScaledPath {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final int MIN_SPACING = 3, LINES_ACROSS = 32; // board points between lines
+	private static final double TOLERANCE = 0.01, // board points of error allowed per step
+			MIN_STEP = 0.05;
+	private static final int MAX_STEPS = 20000;
+	private static final int RECENT_CELLS = 8; // a line may wander back into cells this recently claimed
+	private static final int BATCH = 64; // seeds; fixed, so the lines do not depend on the number of processors
+	private static final double ARROW_ANGLE = Math.toRadians(25);
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	private Streamlines(Path2D.Float path) {
+		super(path);
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the default spacing, in board points, between streamlines of the specified board.
+	 */
+	public static double defaultSpacing(CircuitBoard board) {
+		return Math.max(MIN_SPACING, Math.min(board.getWidth(), board.getHeight()) / (double) LINES_ACROSS);
+	}
+
+	/**
+	 * Traces streamlines of the specified calculated board about <tt>spacing</tt> board points
+	 * apart.
+	 */
+	public static Streamlines trace(CircuitBoard board, double spacing) {
+		final Grid grid = new Grid(board, spacing);
+		final List<double[]> seeds = grid.seeds();
+		final Line[] lines = new Line[BATCH];
+		final ConcurrentLinkedQueue<Tracer> idle = new ConcurrentLinkedQueue<Tracer>();
+		Path2D.Float path = new Path2D.Float();
+		for (int start = 0; start < seeds.size(); start += BATCH) {
+			final int first = start;
+			int count = Math.min(BATCH, seeds.size() - start);
+			Workers.forEachRange(count, new Workers.Range() {
+				public void run(int from, int to) {
+					Tracer t = idle.poll();
+					if (t == null) t = new Tracer(grid);
+					for (int n = from; n < to; n++)
+						lines[n] = t.trace(first + n + 1, seeds.get(first + n));
+					idle.add(t);
+				}
+			});
+			for (int n = 0; n < count; n++) {
+				Path2D.Float p = lines[n] != null ? grid.commit(lines[n]) : null;
+				if (p != null)
+					path.append(p, false);
+			}
+		}
+		return new Streamlines(path);
+	}
+
+	/*  *************** HELPER CLASSES *************** */
+
+	/**
+	 * The sampled field and the cells claimed by the lines of one tracing.
+	 */
+	private static class Grid {
+		private final PoyntingField field;
+		private final int width, height; // of the board
+		private final double spacing, cellSize, maxStep;
+		private final int columns, rows; // of cells
+		private final int[] cells; // the line claiming each cell, or 0; changed only between batches
+
+		public Grid(CircuitBoard board, double spacing) {
+			field = new PoyntingField(board);
+			width = field.getWidth();
+			height = field.getHeight();
+			this.spacing = spacing;
+			cellSize = spacing / 2;
+			maxStep = cellSize;
+			columns = (int) Math.ceil(width / cellSize);
+			rows = (int) Math.ceil(height / cellSize);
+			cells = new int[columns * rows];
+		}
+
+		/**
+		 * Returns the seeds, one in the middle of every other cell, where there is any flow.
+		 */
+		public List<double[]> seeds() {
+			List<double[]> seeds = new ArrayList<double[]>();
+			double[] v = new double[2];
+			for (double x = spacing / 2; x < width - 1; x += spacing)
+				for (double y = spacing / 2; y < height - 1; y += spacing)
+					if (field.direction(x, y, 1, v))
+						seeds.add(new double[] { x, y });
+			return seeds;
+		}
+
+		/**
+		 * Cuts the traced line short where it meets a line committed before it, claims its cells, and
+		 * returns its path, or null if what is left is too short to show.
+		 */
+		public Path2D.Float commit(Line line) {
+			if (cells[line.seedCell] != 0) return null;
+			cells[line.seedCell] = line.id;
+			int forward = claim(line, 0, line.forward);
+			boolean closed = line.closed && forward == line.forward;
+			int backward = closed ? line.forward : claim(line, line.forward, line.cells.length);
+
+			// The backward points reversed, the seed, then the forward points
+			int count = backward - line.forward + 1 + forward;
+			float[] points = new float[2 * count];
+			int k = 0;
+			for (int n = backward - 1; n >= line.forward; n--, k += 2) {
+				points[k] = line.points[2 * n];
+				points[k + 1] = line.points[2 * n + 1];
+			}
+			points[k++] = line.seedX;
+			points[k++] = line.seedY;
+			System.arraycopy(line.points, 0, points, k, 2 * forward);
+
+			double length = 0;
+			for (k = 2; k < points.length; k += 2)
+				length += Math.hypot(points[k] - points[k - 2], points[k + 1] - points[k - 1]);
+			if (length < spacing) return null;
+
+			Path2D.Float path = new Path2D.Float();
+			path.moveTo(points[0], points[1]);
+			for (k = 2; k < points.length; k += 2)
+				path.lineTo(points[k], points[k + 1]);
+			if (closed) path.closePath();
+			addArrowhead(path, points);
+			return path;
+		}
+
+		/**
+		 * Claims the cells of points <tt>from</tt> to <tt>to</tt> of the line, which run outwards from
+		 * its seed, up to the first cell claimed by another line.
+		 *
+		 * @return the end of the points kept
+		 */
+		private int claim(Line line, int from, int to) {
+			int lastCell = line.seedCell;
+			for (int n = from; n < to; n++) {
+				int cell = line.cells[n];
+				if (cell != lastCell) {
+					if (cells[cell] == 0)
+						cells[cell] = line.id;
+					else if (cells[cell] != line.id)
+						return n;
+					lastCell = cell;
+				}
+			}
+			return to;
+		}
+
+		private int cell(double x, double y) {
+			return Math.min((int) (x / cellSize), columns - 1) * rows + Math.min((int) (y / cellSize), rows - 1);
+		}
+
+		/**
+		 * Adds an arrowhead pointing along the line at its middle point.
+		 */
+		private void addArrowhead(Path2D path, float[] points) {
+			int count = points.length / 2, m = count / 2;
+			int before = 2 * Math.max(m - 1, 0), after = 2 * Math.min(m + 1, count - 1);
+			double angle = Math.atan2(points[after + 1] - points[before + 1], points[after] - points[before]);
+			double size = spacing / 3, x = points[2 * m], y = points[2 * m + 1];
+			path.moveTo(x - size * Math.cos(angle - ARROW_ANGLE), y - size * Math.sin(angle - ARROW_ANGLE));
+			path.lineTo(x, y);
+			path.lineTo(x - size * Math.cos(angle + ARROW_ANGLE), y - size * Math.sin(angle + ARROW_ANGLE));
+		}
+	}
+
+	/**
+	 * A line traced from one seed, before it is committed: the forward points, then the backward
+	 * ones, each with its cell.
+	 */
+	private static class Line {
+		public final int id, seedCell, forward; // forward: the number of forward points
+		public final float seedX, seedY;
+		public final float[] points; // x, y of each point
+		public final int[] cells;
+		public final boolean closed; // whether the forward points come round to the seed
+
+		public Line(int id, double[] seed, int seedCell, float[] points, int[] cells, int forward, boolean closed) {
+			this.id = id;
+			this.seedCell = seedCell;
+			this.forward = forward;
+			this.seedX = (float) seed[0];
+			this.seedY = (float) seed[1];
+			this.points = points;
+			this.cells = cells;
+			this.closed = closed;
+		}
+	}
+
+	/**
+	 * Traces lines on one thread at a time, reusing its buffers from one line to the next.
+	 */
+	private static class Tracer {
+		private final Grid grid;
+		private final int[] ownLine, ownOrder; // the line last to claim each cell for itself, and when
+		private final double[] k1 = new double[2], k2 = new double[2], k3 = new double[2], k4 = new double[2];
+		private final double[] whole = new double[2], half = new double[2];
+		private float[] points = new float[2 * 256];
+		private int[] cells = new int[256];
+		private int count; // of points
+
+		public Tracer(Grid grid) {
+			this.grid = grid;
+			ownLine = new int[grid.cells.length];
+			ownOrder = new int[grid.cells.length];
+		}
+
+		/**
+		 * Traces the line through the specified seed, or returns null if its cell is already claimed.
+		 */
+		public Line trace(int line, double[] seed) {
+			int seedCell = grid.cell(seed[0], seed[1]);
+			if (grid.cells[seedCell] != 0) return null;
+			count = 0;
+			boolean closed = integrate(line, seed, 1);
+			int forward = count;
+			integrate(line, seed, -1); // even if closed, in case the loop is cut short on commit
+			return new Line(line, seed, seedCell, Arrays.copyOf(points, 2 * count), Arrays.copyOf(cells, count),
+					forward, closed);
+		}
+
+		/**
+		 * Follows the flow from the seed, forwards (<tt>sign</tt> 1) or backwards (-1), adding the
+		 * points passed.
+		 *
+		 * @return whether the line came round to its own seed
+		 */
+		private boolean integrate(int line, double[] seed, int sign) {
+			double x = seed[0], y = seed[1], h = Math.min(0.5, grid.maxStep);
+			int lastCell = grid.cell(x, y), order = 0;
+			if (sign > 0) {
+				ownLine[lastCell] = line;
+				ownOrder[lastCell] = 0;
+			}
+			for (int steps = 0; steps < MAX_STEPS; steps++) {
+				// one step of h against two of h / 2
+				if (!rk4(x, y, h, sign, whole)) return false;
+				if (!rk4(x, y, h / 2, sign, half) || !rk4(half[0], half[1], h / 2, sign, half)) return false;
+				double error = Math.hypot(whole[0] - half[0], whole[1] - half[1]);
+				if (error > TOLERANCE && h > MIN_STEP) {
+					h = Math.max(h / 2, MIN_STEP);
+					continue;
+				}
+				x = half[0];
+				y = half[1];
+				if (error < TOLERANCE / 8)
+					h = Math.min(2 * h, grid.maxStep);
+
+				int cell = grid.cell(x, y);
+				if (cell != lastCell) {
+					order += sign;
+					if (ownLine[cell] == line) { // back in a cell of its own
+						int when = ownOrder[cell];
+						int apart = Integer.signum(when) == -sign ? Math.abs(order) + Math.abs(when) : Math.abs(order - when);
+						if (apart > RECENT_CELLS) {
+							add(x, y, cell);
+							return when == 0;
+						}
+					} else if (grid.cells[cell] != 0)
+						return false; // a line of an earlier batch is here
+					else {
+						ownLine[cell] = line;
+						ownOrder[cell] = order;
+					}
+					lastCell = cell;
+				}
+				add(x, y, cell);
+			}
+			return false;
+		}
+
+		/**
+		 * Takes one Runge-Kutta step of the specified length along the flow.
+		 *
+		 * @return false if the step leaves the circuit or the flow dies away
+		 */
+		private boolean rk4(double x, double y, double h, int sign, double[] result) {
+			PoyntingField field = grid.field;
+			if (!field.direction(x, y, sign, k1)) return false;
+			if (!field.direction(x + h / 2 * k1[0], y + h / 2 * k1[1], sign, k2)) return false;
+			if (!field.direction(x + h / 2 * k2[0], y + h / 2 * k2[1], sign, k3)) return false;
+			if (!field.direction(x + h * k3[0], y + h * k3[1], sign, k4)) return false;
+			result[0] = x + h / 6 * (k1[0] + 2 * k2[0] + 2 * k3[0] + k4[0]);
+			result[1] = y + h / 6 * (k1[1] + 2 * k2[1] + 2 * k3[1] + k4[1]);
+			return true;
+		}
+
+		private void add(double x, double y, int cell) {
+			if (count == cells.length) {
+				points = Arrays.copyOf(points, 4 * count);
+				cells = Arrays.copyOf(cells, 2 * count);
+			}
+			points[2 * count] = (float) x;
+			points[2 * count + 1] = (float) y;
+			cells[count++] = cell;
+		}
+	}
+}
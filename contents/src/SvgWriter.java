@@ -0,0 +1,247 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes a page of vector graphics as an SVG document. Each distinct style of line or fill is
+ * declared once, as a class, rather than on every path. Text is written as text, in the nearest
+ * generic family to its font, and images as PNGs embedded once each and drawn with <tt>use</tt>.
+ *
+ * @author Noah Morris
+ */
+public class SvgWriter extends VectorWriter {
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final OutputStream stream;
+	private final Writer out;
+	private final StringBuilder line = new StringBuilder(); // each element is built here before it is written
+	private final StringBuilder style = new StringBuilder();
+	private final Map<String, String> classes = new HashMap<String, String>(); // style -> class
+	private final Map<BufferedImage, String> images = new IdentityHashMap<BufferedImage, String>();
+
+	/*  *************** CONSTRUCTOR *************** */
+
+	/**
+	 * Starts a page of the specified size on the stream.
+	 */
+	public SvgWriter(OutputStream stream, double width, double height) throws IOException {
+		this.stream = stream;
+		out = new OutputStreamWriter(stream, "UTF-8");
+		line.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		line.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
+		line.append(" width=\"").append(number(width)).append("\" height=\"").append(number(height));
+		line.append("\" viewBox=\"0 0 ").append(number(width)).append(' ').append(number(height)).append("\">\n");
+		out.write(line.toString());
+	}
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	@Override
+	public void stroke(Shape shape, Color color, BasicStroke stroke) {
+		style.setLength(0);
+		style.append("fill:none;stroke:");
+		appendColor(style, color);
+		if (color.getAlpha() < 255)
+			style.append(";stroke-opacity:").append(number(color.getAlpha() / 255.0));
+		style.append(";stroke-width:").append(number(stroke.getLineWidth()));
+		if (stroke.getEndCap() != BasicStroke.CAP_BUTT)
+			style.append(";stroke-linecap:").append(stroke.getEndCap() == BasicStroke.CAP_ROUND ? "round" : "square");
+		if (stroke.getLineJoin() != BasicStroke.JOIN_MITER)
+			style.append(";stroke-linejoin:").append(stroke.getLineJoin() == BasicStroke.JOIN_ROUND ? "round" : "bevel");
+		else if (stroke.getMiterLimit() != 4)
+			style.append(";stroke-miterlimit:").append(number(stroke.getMiterLimit()));
+		float[] dash = stroke.getDashArray();
+		if (dash != null) {
+			style.append(";stroke-dasharray:");
+			for (int i = 0; i < dash.length; i++)
+				style.append(i > 0 ? "," : "").append(number(dash[i]));
+			if (stroke.getDashPhase() != 0)
+				style.append(";stroke-dashoffset:").append(number(stroke.getDashPhase()));
+		}
+		path(shape);
+	}
+
+	@Override
+	public void fill(Shape shape, Color color) {
+		style.setLength(0);
+		style.append("fill:");
+		appendColor(style, color);
+		if (color.getAlpha() < 255)
+			style.append(";fill-opacity:").append(number(color.getAlpha() / 255.0));
+		if (shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD)
+			style.append(";fill-rule:evenodd");
+		path(shape);
+	}
+
+	@Override
+	public void text(String text, Font font, AffineTransform transform, Color color) {
+		line.setLength(0);
+		line.append("<text transform=\"");
+		appendMatrix(transform);
+		line.append("\" font-family=\"").append(fontFamily(font)).append("\" font-size=\"").append(number(font.getSize2D()));
+		line.append('"');
+		if (font.isBold()) line.append(" font-weight=\"bold\"");
+		if (font.isItalic()) line.append(" font-style=\"italic\"");
+		line.append(" fill=\"");
+		appendColor(line, color);
+		line.append('"');
+		if (color.getAlpha() < 255)
+			line.append(" fill-opacity=\"").append(number(color.getAlpha() / 255.0)).append('"');
+		line.append('>');
+		appendEscaped(text);
+		line.append("</text>\n");
+		write();
+	}
+
+	@Override
+	public void image(BufferedImage image, AffineTransform transform, boolean smooth) {
+		String id = images.get(image);
+		try {
+			if (id == null) {
+				id = "image" + (images.size() + 1);
+				images.put(image, id);
+				out.write("<defs><image id=\"" + id + "\" width=\"" + image.getWidth() + "\" height=\""
+						+ image.getHeight() + "\" xlink:href=\"data:image/png;base64,");
+				out.flush();
+				// straight onto the stream, through an encoder that must not close it
+				OutputStream encoder = Base64.getEncoder().wrap(new FilterOutputStream(stream) {
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len); // the stream, not the writer
+					}
+
+					@Override
+					public void close() throws IOException {
+						flush();
+					}
+				});
+				ImageIO.write(image, "png", encoder);
+				encoder.close();
+				out.write("\"/></defs>\n");
+			}
+		} catch (IOException e) {
+			failed(e);
+			return;
+		}
+		line.setLength(0);
+		line.append("<use xlink:href=\"#").append(id).append("\" transform=\"");
+		appendMatrix(transform);
+		line.append('"');
+		if (!smooth) line.append(" style=\"image-rendering:pixelated\"");
+		line.append("/>\n");
+		write();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		checkError();
+		out.write("</svg>\n");
+		out.flush();
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Writes a path in the style just built, declaring the style first if it is new.
+	 */
+	private void path(Shape shape) {
+		String key = style.toString(), name = classes.get(key);
+		line.setLength(0);
+		if (name == null) {
+			name = "s" + (classes.size() + 1);
+			classes.put(key, name);
+			line.append("<style>.").append(name).append('{').append(key).append("}</style>\n");
+		}
+		line.append("<path class=\"").append(name).append("\" d=\"");
+		appendPath(line, shape);
+		line.append("\"/>\n");
+		write();
+	}
+
+	private void write() {
+		try {
+			out.write(line.toString());
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	@Override
+	protected void moveTo(StringBuilder builder, float x, float y) {
+		builder.append('M').append(number(x)).append(' ').append(number(y));
+	}
+
+	@Override
+	protected void lineTo(StringBuilder builder, float x, float y) {
+		builder.append('L').append(number(x)).append(' ').append(number(y));
+	}
+
+	@Override
+	protected void curveTo(StringBuilder builder, float x1, float y1, float x2, float y2, float x3, float y3) {
+		builder.append('C').append(number(x1)).append(' ').append(number(y1)).append(' ').append(number(x2)).append(' ')
+				.append(number(y2)).append(' ').append(number(x3)).append(' ').append(number(y3));
+	}
+
+	@Override
+	protected void closePath(StringBuilder builder) {
+		builder.append('Z');
+	}
+
+	private static void appendColor(StringBuilder builder, Color color) {
+		builder.append('#');
+		String hex = Integer.toHexString(color.getRGB() & 0xffffff | 0x1000000);
+		builder.append(hex, 1, hex.length());
+	}
+
+	private void appendMatrix(AffineTransform t) {
+		line.append("matrix(").append(number(t.getScaleX())).append(' ').append(number(t.getShearY())).append(' ')
+				.append(number(t.getShearX())).append(' ').append(number(t.getScaleY())).append(' ')
+				.append(number(t.getTranslateX())).append(' ').append(number(t.getTranslateY())).append(')');
+	}
+
+	private void appendEscaped(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '<') line.append("&lt;");
+			else if (c == '>') line.append("&gt;");
+			else if (c == '&') line.append("&amp;");
+			else line.append(c);
+		}
+	}
+
+	/**
+	 * Returns the font's family, followed by the generic family nearest it.
+	 */
+	private static String fontFamily(Font font) {
+		String family = font.getFamily();
+		if (family.equals(Font.SERIF))
+			return "serif";
+		else if (family.equals(Font.MONOSPACED) || family.equals(Font.DIALOG_INPUT))
+			return "monospace";
+		else if (family.equals(Font.SANS_SERIF) || family.equals(Font.DIALOG))
+			return "sans-serif";
+		String generic = family.toLowerCase().contains("mono") ? "monospace" : "sans-serif";
+		return "'" + family.replace("'", "") + "', " + generic;
+	}
+
+}
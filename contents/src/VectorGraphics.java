@@ -0,0 +1,542 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * A <tt>Graphics2D</tt> that hands everything drawn on it to a <tt>VectorWriter</tt> in page
+ * coordinates rather than rasterizing it, so whatever draws itself on a <tt>Graphics</tt> can be
+ * exported at any resolution.
+ *
+ * <p>Paints other than <tt>Color</tt> are drawn in the last color set, and composites other than
+ * <tt>AlphaComposite</tt> are ignored, as are XOR mode and <tt>copyArea</tt>. Clips are kept, so
+ * they can be read back, but are not applied.
+ *
+ * @author Noah Morris
+ */
+public class VectorGraphics extends Graphics2D {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	private static final BufferedImage SCRATCH = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB); // for font metrics
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private final VectorWriter writer;
+	private AffineTransform transform;
+	private Color color = Color.BLACK, background = Color.WHITE;
+	private Stroke stroke = new BasicStroke();
+	private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+	private Composite composite = AlphaComposite.SrcOver;
+	private Shape clip; // in page coordinates; null if unclipped
+	private final RenderingHints hints;
+
+	/*  *************** CONSTRUCTORS *************** */
+
+	/**
+	 * Creates graphics drawing on the specified writer, with user coordinates the same as the page's.
+	 */
+	public VectorGraphics(VectorWriter writer) {
+		this.writer = writer;
+		transform = new AffineTransform();
+		hints = new RenderingHints(null);
+	}
+
+	private VectorGraphics(VectorGraphics g) {
+		writer = g.writer;
+		transform = new AffineTransform(g.transform);
+		color = g.color;
+		background = g.background;
+		stroke = g.stroke;
+		font = g.font;
+		composite = g.composite;
+		clip = g.clip;
+		hints = (RenderingHints) g.hints.clone();
+	}
+
+	/*  *************** DRAWING *************** */
+
+	@Override
+	public void draw(Shape s) {
+		if (stroke instanceof BasicStroke) {
+			BasicStroke bs = (BasicStroke) stroke;
+			float scale = (float) Math.sqrt(Math.abs(transform.getDeterminant()));
+			float[] dash = bs.getDashArray();
+			if (dash != null) {
+				dash = dash.clone();
+				for (int i = 0; i < dash.length; i++)
+					dash[i] *= scale;
+			}
+			BasicStroke scaled = new BasicStroke(bs.getLineWidth() * scale, bs.getEndCap(), bs.getLineJoin(),
+					bs.getMiterLimit(), dash, bs.getDashPhase() * scale);
+			writer.stroke(transform.createTransformedShape(s), drawingColor(), scaled);
+		} else
+			fill(stroke.createStrokedShape(s));
+	}
+
+	@Override
+	public void fill(Shape s) {
+		writer.fill(transform.createTransformedShape(s), drawingColor());
+	}
+
+	@Override
+	public void drawString(String str, float x, float y) {
+		if (str.length() == 0) return;
+		AffineTransform at = new AffineTransform(transform);
+		at.translate(x, y);
+		writer.text(str, font, at, drawingColor());
+	}
+
+	@Override
+	public void drawString(String str, int x, int y) {
+		drawString(str, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+		fill(new TextLayout(iterator, getFontRenderContext()).getOutline(AffineTransform.getTranslateInstance(x, y)));
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+		drawString(iterator, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		fill(g.getOutline(x, y));
+	}
+
+	@Override
+	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+		BufferedImage image = toBufferedImage(img);
+		if (image == null) return false;
+		AffineTransform at = new AffineTransform(transform);
+		if (xform != null) at.concatenate(xform);
+		Object interpolation = hints.get(RenderingHints.KEY_INTERPOLATION);
+		writer.image(image, at, interpolation != null && interpolation != RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+		return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+		int w = img.getWidth(null), h = img.getHeight(null);
+		if (w <= 0 || h <= 0) return false;
+		AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+		at.scale((double) width / w, (double) height / h);
+		return drawImage(img, at, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+		return drawImage(img, x, y, img.getWidth(null), img.getHeight(null), bgcolor, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+		fillBackground(bgcolor, x, y, width, height);
+		return drawImage(img, x, y, width, height, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			ImageObserver observer) {
+		BufferedImage image = toBufferedImage(img);
+		if (image == null) return false;
+		int x = Math.max(Math.min(sx1, sx2), 0), y = Math.max(Math.min(sy1, sy2), 0);
+		int w = Math.min(Math.max(sx1, sx2), image.getWidth()) - x, h = Math.min(Math.max(sy1, sy2), image.getHeight()) - y;
+		if (w <= 0 || h <= 0) return true;
+		AffineTransform at = AffineTransform.getTranslateInstance(dx1, dy1);
+		at.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+		at.translate(x - sx1, y - sy1);
+		return drawImage(image.getSubimage(x, y, w, h), at, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			Color bgcolor, ImageObserver observer) {
+		fillBackground(bgcolor, Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1));
+		return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+	}
+
+	@Override
+	public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+		drawImage(op != null ? op.filter(img, null) : img, x, y, null);
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		BufferedImage image = img instanceof BufferedImage ? (BufferedImage) img
+				: new BufferedImage(img.getColorModel(), img.copyData(null), img.getColorModel().isAlphaPremultiplied(), null);
+		drawImage(image, xform, null);
+	}
+
+	@Override
+	public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+		drawRenderedImage(img.createDefaultRendering(), xform);
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		draw(new Line2D.Float(x1, y1, x2, y2));
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		fill(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void clearRect(int x, int y, int width, int height) {
+		fillBackground(background, x, y, width, height);
+	}
+
+	@Override
+	public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		draw(new Ellipse2D.Float(x, y, width, height));
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		fill(new Ellipse2D.Float(x, y, width, height));
+	}
+
+	@Override
+	public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+	}
+
+	@Override
+	public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+	}
+
+	@Override
+	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+		if (nPoints < 2) return;
+		Path2D.Float path = new Path2D.Float();
+		path.moveTo(xPoints[0], yPoints[0]);
+		for (int i = 1; i < nPoints; i++)
+			path.lineTo(xPoints[i], yPoints[i]);
+		draw(path);
+	}
+
+	@Override
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		draw(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		fill(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+		// nothing drawn can be read back
+	}
+
+	@Override
+	public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+		if (onStroke) s = stroke.createStrokedShape(s);
+		return transform.createTransformedShape(s).intersects(rect);
+	}
+
+	/*  *************** STATE *************** */
+
+	@Override
+	public Graphics create() {
+		return new VectorGraphics(this);
+	}
+
+	@Override
+	public void dispose() {
+		// the writer is finished by whoever created it
+	}
+
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		Graphics2D g = SCRATCH.createGraphics();
+		GraphicsConfiguration gc = g.getDeviceConfiguration();
+		g.dispose();
+		return gc;
+	}
+
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		Object antialiasing = hints.get(RenderingHints.KEY_TEXT_ANTIALIASING);
+		Object fractional = hints.get(RenderingHints.KEY_FRACTIONALMETRICS);
+		return new FontRenderContext(new AffineTransform(transform),
+				antialiasing == null ? RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT : antialiasing,
+				fractional == null ? RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT : fractional);
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font f) {
+		Graphics2D g = SCRATCH.createGraphics();
+		FontMetrics metrics = g.getFontMetrics(f);
+		g.dispose();
+		return metrics;
+	}
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public void setColor(Color c) {
+		if (c != null) color = c;
+	}
+
+	@Override
+	public Paint getPaint() {
+		return color;
+	}
+
+	@Override
+	public void setPaint(Paint paint) {
+		if (paint instanceof Color) color = (Color) paint;
+	}
+
+	@Override
+	public Color getBackground() {
+		return background;
+	}
+
+	@Override
+	public void setBackground(Color color) {
+		background = color;
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	@Override
+	public void setFont(Font font) {
+		if (font != null) this.font = font;
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public void setStroke(Stroke s) {
+		stroke = s;
+	}
+
+	@Override
+	public Composite getComposite() {
+		return composite;
+	}
+
+	@Override
+	public void setComposite(Composite comp) {
+		composite = comp;
+	}
+
+	@Override
+	public void setPaintMode() {
+		// always
+	}
+
+	@Override
+	public void setXORMode(Color c1) {
+		// unsupported; drawing carries on in paint mode
+	}
+
+	@Override
+	public Object getRenderingHint(RenderingHints.Key hintKey) {
+		return hints.get(hintKey);
+	}
+
+	@Override
+	public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+		hints.put(hintKey, hintValue);
+	}
+
+	@Override
+	public void setRenderingHints(Map<?, ?> hints) {
+		this.hints.clear();
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public void addRenderingHints(Map<?, ?> hints) {
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return (RenderingHints) hints.clone();
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	@Override
+	public void setTransform(AffineTransform tx) {
+		transform = new AffineTransform(tx);
+	}
+
+	@Override
+	public void transform(AffineTransform tx) {
+		transform.concatenate(tx);
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		transform.translate(x, y);
+	}
+
+	@Override
+	public void translate(double tx, double ty) {
+		transform.translate(tx, ty);
+	}
+
+	@Override
+	public void rotate(double theta) {
+		transform.rotate(theta);
+	}
+
+	@Override
+	public void rotate(double theta, double x, double y) {
+		transform.rotate(theta, x, y);
+	}
+
+	@Override
+	public void scale(double sx, double sy) {
+		transform.scale(sx, sy);
+	}
+
+	@Override
+	public void shear(double shx, double shy) {
+		transform.shear(shx, shy);
+	}
+
+	@Override
+	public Shape getClip() {
+		if (clip == null) return null;
+		try {
+			return transform.createInverse().createTransformedShape(clip);
+		} catch (NoninvertibleTransformException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		Shape userClip = getClip();
+		return userClip != null ? userClip.getBounds() : null;
+	}
+
+	@Override
+	public void setClip(Shape clip) {
+		this.clip = clip != null ? transform.createTransformedShape(clip) : null;
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		setClip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void clip(Shape s) {
+		if (s == null) {
+			clip = null;
+			return;
+		}
+		Area area = new Area(transform.createTransformedShape(s));
+		if (clip != null) area.intersect(new Area(clip));
+		clip = area;
+	}
+
+	@Override
+	public void clipRect(int x, int y, int width, int height) {
+		clip(new Rectangle(x, y, width, height));
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Returns the color to draw in, with the alpha of the composite, if any, folded into it.
+	 */
+	private Color drawingColor() {
+		if (!(composite instanceof AlphaComposite)) return color;
+		float alpha = ((AlphaComposite) composite).getAlpha();
+		if (alpha >= 1) return color;
+		return new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.round(color.getAlpha() * alpha));
+	}
+
+	private void fillBackground(Color bgcolor, int x, int y, int width, int height) {
+		if (bgcolor == null) return;
+		writer.fill(transform.createTransformedShape(new Rectangle(x, y, width, height)), bgcolor);
+	}
+
+	private static BufferedImage toBufferedImage(Image img) {
+		if (img instanceof BufferedImage) return (BufferedImage) img;
+		int w = img.getWidth(null), h = img.getHeight(null);
+		if (w <= 0 || h <= 0) return null;
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes a page of vector graphics straight to a stream, as it is drawn. Everything is given in page
+ * coordinates, with the origin at the top left and <i>y</i> increasing downwards. Curves are written
+ * as curves; lines traced in many short steps are simplified, so they take little space.
+ *
+ * <p>Writers are drawn on through a <tt>VectorGraphics</tt>, whose methods cannot throw
+ * <tt>IOException</tt>; the first one met is kept and thrown by <tt>finish</tt>.
+ *
+ * @author Noah Morris
+ */
+public abstract class VectorWriter {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final double TOLERANCE = 0.05; // page units a simplified line may stray from the original
+
+	protected static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+
+	/*  *************** DATA MEMBERS *************** */
+
+	private IOException error;
+
+	/*  *************** PUBLIC METHODS *************** */
+
+	/**
+	 * Strokes the outline of a shape, in page coordinates, with a stroke already scaled to the page.
+	 */
+	public abstract void stroke(Shape shape, Color color, BasicStroke stroke);
+
+	/**
+	 * Fills a shape, in page coordinates.
+	 */
+	public abstract void fill(Shape shape, Color color);
+
+	/**
+	 * Draws text with its baseline starting at the origin of the specified transform to the page.
+	 * The text is filled in as the outlines of its glyphs, unless a writer can do better.
+	 */
+	public void text(String text, Font font, AffineTransform transform, Color color) {
+		Shape outline = font.createGlyphVector(FONT_RENDER_CONTEXT, text).getOutline();
+		fill(transform.createTransformedShape(outline), color);
+	}
+
+	/**
+	 * Draws an image with its pixel (<i>x</i>, <i>y</i>) covering the unit square at (<i>x</i>,
+	 * <i>y</i>) mapped by the specified transform to the page, smoothed between pixels or not. An
+	 * image drawn more than once is only written once.
+	 */
+	public abstract void image(BufferedImage image, AffineTransform transform, boolean smooth);
+
+	/**
+	 * Completes the page. The stream is flushed but not closed.
+	 *
+	 * @throws IOException if writing any part of the page failed
+	 */
+	public abstract void finish() throws IOException;
+
+	/*  *************** PROTECTED METHODS *************** */
+
+	/**
+	 * Records a failure to write, to be thrown by <tt>finish</tt>.
+	 */
+	protected void failed(IOException e) {
+		if (error == null) error = e;
+	}
+
+	/**
+	 * Throws the first failure to write, if there was one.
+	 */
+	protected void checkError() throws IOException {
+		if (error != null) throw error;
+	}
+
+	/**
+	 * Returns a coordinate written to two decimal places, without trailing zeros.
+	 */
+	protected static String number(double x) {
+		long hundredths = Math.round(x * 100);
+		if (hundredths % 100 == 0) return Long.toString(hundredths / 100);
+		String sign = hundredths < 0 ? "-" : "";
+		hundredths = Math.abs(hundredths);
+		long fraction = hundredths % 100;
+		return sign + hundredths / 100 + (fraction % 10 == 0 ? "." + fraction / 10 : fraction < 10 ? ".0" + fraction : "." + fraction);
+	}
+
+	/**
+	 * Appends the outline of a shape to the builder, through the methods below. Curves are kept as
+	 * curves, but every run of straight segments is simplified first.
+	 */
+	protected void appendPath(StringBuilder builder, Shape shape) {
+		float[] run = new float[64], coords = new float[6]; // the run of lines so far, from its start
+		int n = 0; // coordinates in the run
+		for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+			int type = it.currentSegment(coords);
+			if (type == PathIterator.SEG_LINETO && n > 0) {
+				if (n + 2 > run.length)
+					run = Arrays.copyOf(run, 2 * run.length);
+				run[n++] = coords[0];
+				run[n++] = coords[1];
+				continue;
+			}
+			float x = n > 0 ? run[n - 2] : 0, y = n > 0 ? run[n - 1] : 0; // where the segment starts
+			n = appendLines(builder, run, n);
+			switch (type) {
+				case PathIterator.SEG_MOVETO:
+					moveTo(builder, coords[0], coords[1]);
+					break;
+				case PathIterator.SEG_LINETO: // only after a curve
+					lineTo(builder, coords[0], coords[1]);
+					break;
+				case PathIterator.SEG_QUADTO: // as a cubic
+					curveTo(builder, x + 2 * (coords[0] - x) / 3, y + 2 * (coords[1] - y) / 3,
+							coords[2] + 2 * (coords[0] - coords[2]) / 3, coords[3] + 2 * (coords[1] - coords[3]) / 3,
+							coords[2], coords[3]);
+					break;
+				case PathIterator.SEG_CUBICTO:
+					curveTo(builder, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]);
+					break;
+				case PathIterator.SEG_CLOSE:
+					closePath(builder);
+					continue;
+			}
+			// every segment but a close may start a run of lines
+			int last = type == PathIterator.SEG_QUADTO ? 2 : type == PathIterator.SEG_CUBICTO ? 4 : 0;
+			run[0] = coords[last];
+			run[1] = coords[last + 1];
+			n = 2;
+		}
+		appendLines(builder, run, n);
+	}
+
+	protected abstract void moveTo(StringBuilder builder, float x, float y);
+
+	protected abstract void lineTo(StringBuilder builder, float x, float y);
+
+	protected abstract void curveTo(StringBuilder builder, float x1, float y1, float x2, float y2, float x3, float y3);
+
+	protected abstract void closePath(StringBuilder builder);
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Appends the lines of a run, after its first point, simplified.
+	 *
+	 * @return 0, the length of the run now
+	 */
+	private int appendLines(StringBuilder builder, float[] run, int n) {
+		if (n < 4) return 0;
+		float[] corners = simplify(run, n / 2);
+		for (int i = 2; i < corners.length; i += 2)
+			lineTo(builder, corners[i], corners[i + 1]);
+		return 0;
+	}
+
+	/**
+	 * Returns the corners of the polyline through the first <tt>count</tt> of the specified points
+	 * without those that lie within <tt>TOLERANCE</tt> of the line between their neighbors, by the
+	 * Douglas-Peucker method.
+	 */
+	private static float[] simplify(float[] points, int count) {
+		if (count <= 2) return Arrays.copyOf(points, 2 * count);
+		boolean[] keep = new boolean[count];
+		keep[0] = keep[count - 1] = true;
+		int[] stack = new int[2 * count];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while (top > 0) {
+			int last = stack[--top], first = stack[--top];
+			double x0 = points[2 * first], y0 = points[2 * first + 1];
+			double dx = points[2 * last] - x0, dy = points[2 * last + 1] - y0, length = Math.hypot(dx, dy);
+			int farthest = -1;
+			double greatest = TOLERANCE;
+			for (int i = first + 1; i < last; i++) {
+				double px = points[2 * i] - x0, py = points[2 * i + 1] - y0;
+				double distance = length > 0 ? Math.abs(px * dy - py * dx) / length : Math.hypot(px, py);
+				if (distance > greatest) {
+					greatest = distance;
+					farthest = i;
+				}
+			}
+			if (farthest < 0) continue;
+			keep[farthest] = true;
+			stack[top++] = first;
+			stack[top++] = farthest;
+			stack[top++] = farthest;
+			stack[top++] = last;
+		}
+
+		int kept = 0;
+		for (boolean k : keep)
+			if (k) kept++;
+		float[] corners = new float[2 * kept];
+		for (int i = 0, c = 0; i < count; i++)
+			if (keep[i]) {
+				corners[c++] = points[2 * i];
+				corners[c++] = points[2 * i + 1];
+			}
+		return corners;
+	}
+}
@@ -3,9 +3,6 @@
  * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
  */
 
-import java.awt.Graphics;
-import java.awt.Point;
-
 /**
  * Class representing a wire circuit element.
  * 
@@ -42,19 +39,10 @@ public class Wire extends Element {
 
 	@Override
 	public double setVoltages(double oldVoltage, Loop loop) {
-		for (Poynt p : poynts)
-			p.potential = oldVoltage;
+		for (int i = 0; i < size(); i++)
+			get(i).potential = oldVoltage;
 		return oldVoltage;
 	}
-
-	@Override
-	public void draw(Graphics g, int sF) {
-		Point s = start.toPixel(sF);
-		s.translate(sF / 2, sF / 2);
-		Point e = end.toPixel(sF);
-		e.translate(sF / 2, sF / 2);
-		g.drawLine(s.x, s.y, e.x, e.y);
-	}
 	
 	@Override
 	public boolean isWire() {
@@ -79,7 +67,7 @@ public class Wire extends Element {
 	 * @param end The other endpoint of the <tt>Wire</tt> whose code is to be determined.
 	 * @return A unique code identifier serving as the "name" of the <tt>Wire</tt>.
 	 */
-	public static String getWireCode(Point start, Point end) {
+	public static String getWireCode(Poynt start, Poynt end) {
 		String a = start.toString();
 		String b = end.toString();
 		if (start.x < end.x)
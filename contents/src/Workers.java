@@ -0,0 +1,134 @@
+/*
+ * CircuitSurveyor is released to the public under the terms of the GNU General public license, version
+ * 3. There is no warranty. For the full terms, see the LICENSE.txt file included in this distribution.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A shared pool of daemon worker threads, one per processor, for splitting rendering and analysis
+ * work across cores.
+ *
+ * @author Noah Morris
+ */
+public class Workers {
+
+	/*  *************** CLASS CONSTANTS *************** */
+
+	public static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private int count = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Worker(r, "CircuitSurveyor worker " + ++count);
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/*  *************** INNER INTERFACES *************** */
+
+	/**
+	 * A piece of work over a range of indices.
+	 */
+	public interface Range {
+		/**
+		 * Does the work for indices <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive).
+		 */
+		void run(int from, int to);
+	}
+
+	/*  *************** STATIC METHODS *************** */
+
+	/**
+	 * Returns the shared pool.
+	 */
+	public static ExecutorService pool() {
+		return POOL;
+	}
+
+	/**
+	 * Splits the indices 0 to <tt>count</tt> into contiguous ranges, runs them on the pool, and waits
+	 * for all of them to finish. Small jobs, and jobs started from a worker thread, are run on the
+	 * calling thread. If any range fails, the ranges not yet started are skipped and the failure is
+	 * rethrown once the others have finished, so nothing is still writing to the caller's arrays.
+	 *
+	 * @throws CancellationException if the calling thread is interrupted while waiting; the work is
+	 *             then only partly done, and the interrupt flag is set again
+	 */
+	public static void forEachRange(int count, final Range range) throws CancellationException {
+		int chunks = Math.min(count, THREADS * 4);
+		if (chunks <= 1 || THREADS == 1 || Thread.currentThread() instanceof Worker) {
+			if (count > 0) range.run(0, count);
+			return;
+		}
+		final AtomicBoolean stopped = new AtomicBoolean();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			final int from = (int) ((long) count * i / chunks);
+			final int to = (int) ((long) count * (i + 1) / chunks);
+			futures.add(POOL.submit(new Callable<Object>() {
+				public Object call() {
+					if (!stopped.get()) range.run(from, to);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Object> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			stopped.set(true);
+			for (Future<Object> f : futures)
+				f.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for the workers.");
+		} catch (ExecutionException e) {
+			stopped.set(true);
+			awaitAll(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/*  *************** PRIVATE METHODS *************** */
+
+	/**
+	 * Waits for every one of the futures to finish, ignoring how. If interrupted, stops waiting and
+	 * sets the interrupt flag again.
+	 */
+	private static void awaitAll(List<Future<Object>> futures) {
+		for (Future<Object> f : futures)
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+	/*  *************** HELPER CLASS *************** */
+
+	/**
+	 * A thread of the shared pool. Work split up from one of these runs inline rather than waiting
+	 * on the pool it is itself occupying.
+	 */
+	private static class Worker extends Thread {
+		public Worker(Runnable r, String name) {
+			super(r, name);
+		}
+	}
+}